@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.Layout;
+import org.apache.sling.extensions.logback.internal.util.LoggerSpecificEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+/**
+ * Measures {@link LogWriter#createAppender(ch.qos.logback.core.Context, ch.qos.logback.core.encoder.Encoder)}
+ * for size and time based rolling. Appenders are recreated for every writer upon each
+ * reconfiguration. Each thread writes to its own file in a temporary directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppenderCreationBenchmark {
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * Size based and time based rotation
+     */
+    @Param({"10MB", "'.'yyyy-MM-dd"})
+    public String rotation;
+
+    private LoggerContext context;
+
+    private Layout<ILoggingEvent> layout;
+
+    private File dir;
+
+    private LogWriter writer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        context = new LoggerContext();
+        layout = BenchmarkSupport.createConfig(context, BenchmarkSupport.NATIVE_PATTERN,
+                Logger.ROOT_LOGGER_NAME).createLayout();
+
+        dir = File.createTempFile("sling-logback-bench", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        File file = new File(dir, "bench-" + THREAD_COUNTER.incrementAndGet() + ".log");
+        writer = new LogWriter("bench", file.getAbsolutePath(), 5, rotation);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public Appender<ILoggingEvent> createAppender() {
+        Appender<ILoggingEvent> appender = writer.createAppender(context, new LoggerSpecificEncoder(layout));
+        appender.stop();
+        return appender;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Measures dispatch of log calls to whiteboard appenders attached by the
+ * {@link AppenderTracker}. The appenders only count the events so the benchmark
+ * covers the logger level check and appender iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppenderTrackerBenchmark {
+    private static final int LOGGER_COUNT = 64;
+
+    /**
+     * Number of whiteboard appenders. Each one is attached to its own category
+     */
+    @Param({"1", "10"})
+    public int appenderCount;
+
+    private AppenderTracker tracker;
+
+    private Logger[] loggers;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        Logger next(Logger[] loggers) {
+            return loggers[index++ & (LOGGER_COUNT - 1)];
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        LoggerContext context = new LoggerContext();
+        Map<ServiceReference, Object> services = BenchmarkSupport.newServiceMap();
+        tracker = new AppenderTracker(BenchmarkSupport.createBundleContext(services), context);
+
+        for (int i = 0; i < appenderCount; i++) {
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("loggers", new String[]{category(i) + ":INFO"});
+            ServiceReference ref = BenchmarkSupport.createServiceReference(props);
+            services.put(ref, new CountingAppender());
+            tracker.addingService(ref);
+        }
+
+        loggers = new Logger[LOGGER_COUNT];
+        for (int i = 0; i < LOGGER_COUNT; i++) {
+            loggers[i] = context.getLogger(category(i % appenderCount) + ".Service" + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracker.close();
+    }
+
+    @Benchmark
+    public void info(Cursor cursor) {
+        cursor.next(loggers).info("Processed request {} in {} ms", "/content/page.html", 42);
+    }
+
+    @Benchmark
+    public void debugDisabled(Cursor cursor) {
+        cursor.next(loggers).debug("Processed request {} in {} ms", "/content/page.html", 42);
+    }
+
+    private static String category(int i) {
+        return "org.apache.sling.bench.a" + i;
+    }
+
+    private static class CountingAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal;
+
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Fakes and factory methods shared by the benchmarks. The OSGi fakes implement just
+ * enough of the contract for the trackers to be driven directly by the benchmark
+ */
+final class BenchmarkSupport {
+    static final String LEGACY_PATTERN = "{0,date,dd.MM.yyyy HH:mm:ss.SSS} *{4}* [{2}] {3} {5}";
+
+    static final String NATIVE_PATTERN = LogConfigManager.LOG_PATTERN_DEFAULT;
+
+    private BenchmarkSupport() {
+    }
+
+    static String getPattern(String patternType) {
+        if ("legacy".equals(patternType)) {
+            return LEGACY_PATTERN;
+        } else if ("native".equals(patternType)) {
+            return NATIVE_PATTERN;
+        }
+        throw new IllegalArgumentException("Unknown pattern type " + patternType);
+    }
+
+    static LogConfig createConfig(LoggerContext context, String pattern, String... categories) {
+        Set<String> cats = new HashSet<String>();
+        Collections.addAll(cats, categories);
+        return new LogConfig(new LogConfig.LogWriterProvider() {
+            public LogWriter getLogWriter(String writerName) {
+                return null;
+            }
+        }, pattern, cats, Level.INFO, null, null, context);
+    }
+
+    /**
+     * Creates a BundleContext which serves the services registered in the passed map
+     */
+    static BundleContext createBundleContext(final Map<ServiceReference, Object> services) {
+        return (BundleContext) Proxy.newProxyInstance(BenchmarkSupport.class.getClassLoader(),
+                new Class<?>[]{BundleContext.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("getService".equals(name)) {
+                    return services.get(args[0]);
+                } else if ("ungetService".equals(name)) {
+                    return Boolean.TRUE;
+                } else if ("createFilter".equals(name)) {
+                    return FrameworkUtil.createFilter((String) args[0]);
+                } else if ("getServiceReferences".equals(name)
+                        || "getAllServiceReferences".equals(name)
+                        || "getProperty".equals(name)
+                        || "addServiceListener".equals(name)
+                        || "removeServiceListener".equals(name)) {
+                    //Trackers are fed directly by the benchmarks
+                    return null;
+                }
+                return handleObjectMethod(proxy, method, args);
+            }
+        });
+    }
+
+    static ServiceReference createServiceReference(final Map<String, Object> properties) {
+        return (ServiceReference) Proxy.newProxyInstance(BenchmarkSupport.class.getClassLoader(),
+                new Class<?>[]{ServiceReference.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("getProperty".equals(name)) {
+                    return properties.get(args[0]);
+                } else if ("getPropertyKeys".equals(name)) {
+                    return properties.keySet().toArray(new String[properties.size()]);
+                } else if ("compareTo".equals(name)) {
+                    return System.identityHashCode(proxy) - System.identityHashCode(args[0]);
+                }
+                return handleObjectMethod(proxy, method, args);
+            }
+        });
+    }
+
+    static Map<ServiceReference, Object> newServiceMap() {
+        return new ConcurrentHashMap<ServiceReference, Object>();
+    }
+
+    private static Object handleObjectMethod(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        } else if ("equals".equals(name)) {
+            return proxy == args[0];
+        } else if ("toString".equals(name)) {
+            return "Fake" + proxy.getClass().getInterfaces()[0].getSimpleName() + "@"
+                    + Integer.toHexString(System.identityHashCode(proxy));
+        }
+        throw new UnsupportedOperationException(method.getName());
+    }
+
+    /**
+     * Discards all data so that the benchmarks measure the encoding and not the disk
+     */
+    static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
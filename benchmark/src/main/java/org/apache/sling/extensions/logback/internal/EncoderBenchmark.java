@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.apache.sling.extensions.logback.internal.util.LoggerSpecificEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+/**
+ * Measures {@link LoggerSpecificEncoder#doEncode(ILoggingEvent)} which lays out and
+ * writes every event of an OSGi configured writer. The output is discarded.
+ * <p>
+ * Events are created upfront so the allocation reported by <code>-prof gc</code>
+ * is the one of the encoder. As events cache their formatted message this does not
+ * include the cost of formatting the message arguments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark {
+    private static final int EVENT_COUNT = 1024;
+
+    @Param({"legacy", "native"})
+    public String patternType;
+
+    /**
+     * Number of categories configured for the writer. Each event is routed to the
+     * layout of its category
+     */
+    @Param({"1", "20"})
+    public int categoryCount;
+
+    private LoggerSpecificEncoder encoder;
+
+    private ILoggingEvent[] events;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        ILoggingEvent next(ILoggingEvent[] events) {
+            return events[index++ & (EVENT_COUNT - 1)];
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        LoggerContext context = new LoggerContext();
+        String pattern = BenchmarkSupport.getPattern(patternType);
+
+        LayoutRegistry registry = new LayoutRegistry();
+        encoder = new LoggerSpecificEncoder(
+                registry.getLayout(BenchmarkSupport.createConfig(context, pattern, Logger.ROOT_LOGGER_NAME)));
+        encoder.setContext(context);
+        for (int i = 0; i < categoryCount; i++) {
+            LogConfig config = BenchmarkSupport.createConfig(context, pattern, category(i));
+            encoder.addLogConfig(config, registry.getLayout(config));
+        }
+        encoder.init(new BenchmarkSupport.NullOutputStream());
+
+        events = new ILoggingEvent[EVENT_COUNT];
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            ch.qos.logback.classic.Logger logger = context.getLogger(category(i % categoryCount) + ".Service" + i);
+            LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO,
+                    "Processed request {} in {} ms", null, new Object[]{"/content/page" + i + ".html", i});
+            event.prepareForDeferredProcessing();
+            events[i] = event;
+        }
+    }
+
+    @Benchmark
+    public void doEncode(Cursor cursor) throws IOException {
+        encoder.doEncode(cursor.next(events));
+    }
+
+    private static String category(int i) {
+        return "org.apache.sling.bench.c" + i;
+    }
+}
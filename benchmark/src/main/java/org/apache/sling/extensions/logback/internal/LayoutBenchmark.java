@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Layout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+/**
+ * Measures {@link LogConfig#createLayout()} which compiles a new layout. Legacy
+ * MessageFormat patterns are translated before being compiled. Upon reconfiguration
+ * layouts are obtained from the {@link LayoutRegistry} which only creates one for
+ * patterns not seen before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+
+    @Param({"legacy", "native"})
+    public String patternType;
+
+    private LoggerContext context;
+
+    private LogConfig config;
+
+    private LayoutRegistry registry;
+
+    @Setup
+    public void setup() {
+        context = new LoggerContext();
+        config = createConfig();
+        registry = new LayoutRegistry();
+        registry.getLayout(config);
+    }
+
+    @Benchmark
+    public PatternLayout createLayout() {
+        return config.createLayout();
+    }
+
+    /**
+     * Lookup for a new config with an already registered pattern as done upon
+     * reconfiguration
+     */
+    @Benchmark
+    public Layout<ILoggingEvent> registryLookup() {
+        return registry.getLayout(createConfig());
+    }
+
+    private LogConfig createConfig() {
+        return BenchmarkSupport.createConfig(context, BenchmarkSupport.getPattern(patternType),
+                Logger.ROOT_LOGGER_NAME);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.mdc.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link MDCInsertingFilter#doFilter(ServletRequest, ServletResponse, FilterChain)}
+ * with a configured header, parameter and cookie. The filter chain does nothing so the
+ * benchmark covers populating and clearing the MDC per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MDCInsertingFilterBenchmark {
+    private MDCInsertingFilter filter;
+
+    private HttpServletRequest request;
+
+    private final FilterChain chain = new FilterChain() {
+        public void doFilter(ServletRequest request, ServletResponse response) {
+        }
+    };
+
+    @Setup
+    public void setup() throws Exception {
+        filter = new MDCInsertingFilter();
+
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put("headers", new String[]{"Referer"});
+        config.put("parameters", new String[]{"debug"});
+        config.put("cookies", new String[]{"JSESSIONID"});
+
+        //Configuration is normally passed by SCR
+        Method modified = MDCInsertingFilter.class.getDeclaredMethod("modified", Map.class);
+        modified.setAccessible(true);
+        modified.invoke(filter, config);
+
+        request = createRequest();
+    }
+
+    @Benchmark
+    public void doFilter() throws Exception {
+        filter.doFilter(request, null, chain);
+    }
+
+    private static HttpServletRequest createRequest() {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("User-Agent", "Mozilla/5.0 (X11; Linux x86_64)");
+        headers.put("Referer", "http://localhost:8080/content/index.html");
+
+        final Cookie[] cookies = {new Cookie("JSESSIONID", "1x2y3z"), new Cookie("other", "value")};
+
+        return (HttpServletRequest) Proxy.newProxyInstance(MDCInsertingFilterBenchmark.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("getRemoteHost".equals(name)) {
+                    return "127.0.0.1";
+                } else if ("getRequestURI".equals(name)) {
+                    return "/content/page.html";
+                } else if ("getRequestURL".equals(name)) {
+                    //Servlet containers create a new buffer per call
+                    return new StringBuffer("http://localhost:8080/content/page.html");
+                } else if ("getQueryString".equals(name)) {
+                    return "debug=true";
+                } else if ("getHeader".equals(name)) {
+                    return headers.get(args[0]);
+                } else if ("getParameter".equals(name)) {
+                    return "debug".equals(args[0]) ? "true" : null;
+                } else if ("getCookies".equals(name)) {
+                    return cookies;
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if ("toString".equals(name)) {
+                    return "FakeHttpServletRequest";
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+}
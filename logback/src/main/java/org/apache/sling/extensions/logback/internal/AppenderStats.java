@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import org.apache.sling.extensions.logback.internal.util.AppenderMetrics;
+import org.apache.sling.extensions.logback.internal.util.LatencyHistogram;
+
+/**
+ * Exposes the {@link AppenderMetrics} of the appenders currently attached to the
+ * loggers. Metrics are collected on each call so appenders added by a reset show
+ * up without any registration.
+ */
+public class AppenderStats implements AppenderStatsMBean {
+    private static final String[] ITEM_NAMES = {
+            "name", "events", "bytesWritten", "flushes", "errors", "meanLatency", "p99Latency"
+    };
+
+    private static final String[] ITEM_DESCRIPTIONS = {
+            "Appender name", "Events written", "Bytes written", "Number of flushes", "Write errors",
+            "Mean latency in nanos", "99th percentile latency in nanos"
+    };
+
+    private final LogbackManager logbackManager;
+
+    private final CompositeType rowType;
+
+    private final TabularType tableType;
+
+    public AppenderStats(LogbackManager logbackManager) throws OpenDataException {
+        this.logbackManager = logbackManager;
+        this.rowType = new CompositeType("AppenderMetrics", "Metrics of an appender", ITEM_NAMES,
+                ITEM_DESCRIPTIONS, new OpenType<?>[]{
+                SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                SimpleType.LONG, SimpleType.LONG, SimpleType.LONG
+        });
+        this.tableType = new TabularType("AppenderMetricsTable", "Metrics of the appenders", rowType,
+                new String[]{"name"});
+    }
+
+    public TabularData getAppenderMetrics() {
+        final TabularDataSupport table = new TabularDataSupport(tableType);
+        for (Map.Entry<String, AppenderMetrics> e : collectMetrics().entrySet()) {
+            final AppenderMetrics m = e.getValue();
+            final LatencyHistogram latency = m.getLatency();
+            try {
+                table.put(new CompositeDataSupport(rowType, ITEM_NAMES, new Object[]{
+                        e.getKey(), m.getEventCount(), m.getBytesWritten(), m.getFlushCount(),
+                        m.getErrorCount(), latency.getMean(), latency.getPercentile(99)
+                }));
+            } catch (OpenDataException ignore) {
+                //Values match the row type
+            }
+        }
+        return table;
+    }
+
+    public long getTotalBytesWritten() {
+        long total = 0;
+        for (AppenderMetrics m : collectMetrics().values()) {
+            total += m.getBytesWritten();
+        }
+        return total;
+    }
+
+    public long getTotalErrorCount() {
+        long total = 0;
+        for (AppenderMetrics m : collectMetrics().values()) {
+            total += m.getErrorCount();
+        }
+        return total;
+    }
+
+    private Map<String, AppenderMetrics> collectMetrics() {
+        final Map<String, AppenderMetrics> result = new LinkedHashMap<String, AppenderMetrics>();
+        for (Appender<ILoggingEvent> a : logbackManager.determineLoggerState().getAllAppenders()) {
+            final AppenderMetrics m = AppenderMetrics.forAppender(a);
+            if (m != null) {
+                result.put(a.getName(), m);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * Management interface exposing the throughput and latency metrics of the
+ * appenders attached to the loggers
+ */
+public interface AppenderStatsMBean {
+
+    /**
+     * Metrics of each instrumented appender. The latencies are in nanos and are
+     * precise to a factor of two
+     */
+    TabularData getAppenderMetrics();
+
+    /**
+     * Bytes written by all appenders created for OSGi configured log writers
+     */
+    long getTotalBytesWritten();
+
+    /**
+     * Write errors of all instrumented appenders
+     */
+    long getTotalErrorCount();
+}
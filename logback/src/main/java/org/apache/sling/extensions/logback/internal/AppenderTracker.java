@@ -21,15 +21,21 @@ package org.apache.sling.extensions.logback.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
+import org.apache.sling.extensions.logback.internal.util.AppenderMetrics;
+import org.apache.sling.extensions.logback.internal.util.MeteredAppender;
 import org.apache.sling.extensions.logback.internal.util.Util;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
@@ -38,10 +44,30 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
 
+/**
+ * Tracks appenders registered with the <code>loggers</code> property and attaches them
+ * to the configured loggers.
+ * <p>
+ * The tracked appenders are kept in an immutable {@link Snapshot} which also holds the
+ * resulting logger to appender bindings. A service event creates a new snapshot, applies
+ * the difference between the old and new bindings to the loggers and then publishes the
+ * new snapshot. Readers never lock and always see a consistent set of appenders. Upon a
+ * reset the whole snapshot is applied in one pass.
+ * <p>
+ * If multiple appenders are bound to the same logger the level and additivity of the
+ * logger are taken from the appender with the highest service ranking.
+ */
 public class AppenderTracker extends ServiceTracker implements LogbackResetListener{
     private static final String PROP_LOGGER = "loggers";
     private final LoggerContext loggerContext;
-    private final Map<ServiceReference,AppenderInfo> appenders = new ConcurrentHashMap<ServiceReference, AppenderInfo>();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Level and additivity of the loggers before an appender got bound to them. Only
+     * accessed while holding the tracker lock
+     */
+    private final Map<String, LoggerState> originalStates = new HashMap<String, LoggerState>();
 
     public AppenderTracker(BundleContext context, LoggerContext loggerContext) throws InvalidSyntaxException {
         super(context, createFilter(), null);
@@ -56,77 +82,168 @@ public class AppenderTracker extends ServiceTracker implements LogbackResetListe
         a.setContext(loggerContext);
         a.start();
 
-        AppenderInfo ai = new AppenderInfo(reference,a);
-        appenders.put(reference,ai);
-        attachAppender(ai);
+        AppenderInfo ai = new AppenderInfo(reference, a, new AppenderMetrics());
+        synchronized (this) {
+            Map<ServiceReference, AppenderInfo> appenders = snapshot.copyAppenders();
+            appenders.put(reference, ai);
+            publish(appenders);
+        }
+        attachFilters();
         return ai;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void modifiedService(ServiceReference reference, Object service) {
-        AppenderInfo ai = appenders.remove(reference);
-        detachAppender(ai);
-        appenders.put(reference, new AppenderInfo(reference, (Appender<ILoggingEvent>) service));
+        synchronized (this) {
+            AppenderInfo current = snapshot.appenders.get(reference);
+            if (current == null) {
+                current = (AppenderInfo) service;
+            }
+
+            //Loggers or ranking may have changed. Loggers which are bound as before are not touched
+            AppenderInfo ai = new AppenderInfo(reference, current);
+            Map<ServiceReference, AppenderInfo> appenders = snapshot.copyAppenders();
+            appenders.put(reference, ai);
+            publish(appenders);
+        }
+        attachFilters();
     }
 
     @Override
     public void removedService(ServiceReference reference, Object service) {
-        detachAppender(appenders.remove(reference));
+        synchronized (this) {
+            if (snapshot.appenders.containsKey(reference)) {
+                Map<ServiceReference, AppenderInfo> appenders = snapshot.copyAppenders();
+                appenders.remove(reference);
+                publish(appenders);
+            }
+        }
         //Probably we should remove the context from appender
         super.removedService(reference, service);
     }
 
     public Collection<AppenderInfo> getAppenderInfos(){
-        return appenders.values();
+        return snapshot.appenders.values();
+    }
+
+    /**
+     * Returns the version of the current snapshot. It is incremented whenever the set
+     * of tracked appenders changes
+     */
+    public long getVersion() {
+        return snapshot.version;
     }
 
-    private void detachAppender(AppenderInfo ai) {
-        if(ai != null){
-            for(LoggerInfo li : ai.loggers){
-                Logger logger = loggerContext.getLogger(li.name);
+    /**
+     * Attaches the filters registered for the appenders. Not required upon reset as
+     * filters get attached once the reset completed
+     */
+    private void attachFilters() {
+        FilterTracker filterTracker = (FilterTracker) loggerContext.getObject(FilterTracker.class.getName());
+        if (filterTracker != null) {
+            filterTracker.attachFilters();
+        }
+    }
+
+    /**
+     * Applies the change to the loggers and publishes the new snapshot. Must be invoked
+     * while holding the tracker lock
+     */
+    private void publish(Map<ServiceReference, AppenderInfo> appenders) {
+        Snapshot current = snapshot;
+        Snapshot next = new Snapshot(current.version + 1, appenders);
+        apply(current, next);
+        snapshot = next;
+    }
+
+    /**
+     * Brings the loggers from the bindings of the old snapshot to the ones of the new
+     * snapshot. Loggers whose bindings did not change are not touched
+     */
+    private void apply(Snapshot from, Snapshot to) {
+        Set<String> names = new HashSet<String>(from.bindings.keySet());
+        names.addAll(to.bindings.keySet());
+
+        for (String name : names) {
+            List<AppenderInfo> before = from.getBindings(name);
+            List<AppenderInfo> after = to.getBindings(name);
+            if (before.equals(after)) {
+                continue;
+            }
 
-                //Reset values back to old ones if they match the
-                //ones we modified to
-                if(li.level.equals(logger.getLevel())){
-                    logger.setLevel(li.oldLevel);
+            Logger logger = loggerContext.getLogger(name);
+            for (AppenderInfo ai : before) {
+                if (!containsAttached(after, ai)) {
+                    logger.detachAppender(ai.attached);
                 }
+            }
 
-                if(logger.isAdditive() == li.additive){
-                    logger.setAdditive(li.oldAdditive);
+            LoggerInfo oldSpec = before.isEmpty() ? null : before.get(0).loggers.get(name);
+            LoggerInfo newSpec = after.isEmpty() ? null : after.get(0).loggers.get(name);
+            if (newSpec == null) {
+                restore(logger, oldSpec);
+            } else if (!newSpec.equals(oldSpec)) {
+                if (oldSpec == null) {
+                    originalStates.put(name, new LoggerState(logger.getLevel(), logger.isAdditive()));
                 }
+                logger.setLevel(newSpec.level);
+                logger.setAdditive(newSpec.additive);
+            }
 
-                logger.detachAppender(ai.appender);
+            for (AppenderInfo ai : after) {
+                if (!containsAttached(before, ai)) {
+                    //The wrapper gets stopped along with all other appenders upon a reset
+                    if (!ai.attached.isStarted()) {
+                        ai.attached.setContext(loggerContext);
+                        ai.attached.start();
+                    }
+                    logger.addAppender(ai.attached);
+                }
             }
         }
     }
 
-    private void attachAppender(AppenderInfo ai) {
-        if (ai == null) {
+    /**
+     * Resets the level and additivity of the logger back to the original ones if they
+     * still match the ones applied by the tracker
+     */
+    private void restore(Logger logger, LoggerInfo spec) {
+        LoggerState original = originalStates.remove(logger.getName());
+        if (original == null || spec == null) {
             return;
         }
-        for (LoggerInfo li : ai.loggers) {
-            Logger logger = loggerContext.getLogger(li.name);
 
-            li.oldLevel = logger.getLevel();
-            li.oldAdditive = logger.isAdditive();
-
-            logger.setLevel(li.level);
-            logger.setAdditive(li.additive);
+        if (spec.level.equals(logger.getLevel())) {
+            logger.setLevel(original.level);
+        }
 
-            logger.addAppender(ai.appender);
+        if (logger.isAdditive() == spec.additive) {
+            logger.setAdditive(original.additive);
         }
     }
 
-    public void onReset(LoggerContext context) {
-        for(AppenderInfo ai : appenders.values()){
-            attachAppender(ai);
+    private static boolean containsAttached(List<AppenderInfo> infos, AppenderInfo ai) {
+        for (AppenderInfo info : infos) {
+            if (info.attached == ai.attached) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    public synchronized void onReset(LoggerContext context) {
+        //The reset detached all appenders and the levels got configured afresh
+        originalStates.clear();
+        apply(Snapshot.EMPTY, snapshot);
+    }
+
+    public void onResetComplete(LoggerContext context) {
     }
 
     @Override
     public synchronized void close() {
-        appenders.clear();
+        snapshot = new Snapshot(snapshot.version + 1, Collections.<ServiceReference, AppenderInfo>emptyMap());
+        originalStates.clear();
         super.close();
     }
 
@@ -135,21 +252,88 @@ public class AppenderTracker extends ServiceTracker implements LogbackResetListe
         return FrameworkUtil.createFilter(filter);
     }
 
+    /**
+     * Immutable state of the tracker. Holds the tracked appenders and the appenders
+     * bound to each logger ordered by decreasing service ranking
+     */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, Collections.<ServiceReference, AppenderInfo>emptyMap());
+
+        final long version;
+        final Map<ServiceReference, AppenderInfo> appenders;
+        final Map<String, List<AppenderInfo>> bindings;
+
+        Snapshot(long version, Map<ServiceReference, AppenderInfo> appenders) {
+            this.version = version;
+            this.appenders = Collections.unmodifiableMap(new LinkedHashMap<ServiceReference, AppenderInfo>(appenders));
+
+            List<ServiceReference> refs = new ArrayList<ServiceReference>(appenders.keySet());
+            //Highest ranking first
+            Collections.sort(refs, Collections.reverseOrder());
+
+            Map<String, List<AppenderInfo>> bindings = new HashMap<String, List<AppenderInfo>>();
+            for (ServiceReference ref : refs) {
+                AppenderInfo ai = appenders.get(ref);
+                for (String name : ai.loggers.keySet()) {
+                    List<AppenderInfo> infos = bindings.get(name);
+                    if (infos == null) {
+                        infos = new ArrayList<AppenderInfo>(1);
+                        bindings.put(name, infos);
+                    }
+                    infos.add(ai);
+                }
+            }
+            this.bindings = Collections.unmodifiableMap(bindings);
+        }
+
+        List<AppenderInfo> getBindings(String loggerName) {
+            List<AppenderInfo> infos = bindings.get(loggerName);
+            return infos != null ? infos : Collections.<AppenderInfo>emptyList();
+        }
+
+        Map<ServiceReference, AppenderInfo> copyAppenders() {
+            return new HashMap<ServiceReference, AppenderInfo>(appenders);
+        }
+    }
+
     static class AppenderInfo {
-        final List<LoggerInfo> loggers;
+        final Map<String, LoggerInfo> loggers;
         final Appender<ILoggingEvent> appender;
         final ServiceReference serviceReference;
+        final AppenderMetrics metrics;
+
+        /**
+         * Appender attached to the loggers. It records the metrics and delegates
+         * to the service appender
+         */
+        final MeteredAppender attached;
+
+        public AppenderInfo(ServiceReference ref,Appender<ILoggingEvent> appender, AppenderMetrics metrics){
+            this(ref, appender, metrics, new MeteredAppender(appender, metrics));
+        }
+
+        /**
+         * Creates the info for the modified service keeping the appender attached to
+         * the loggers of the current info
+         */
+        public AppenderInfo(ServiceReference ref, AppenderInfo current){
+            this(ref, current.appender, current.metrics, current.attached);
+        }
 
-        public AppenderInfo(ServiceReference ref,Appender<ILoggingEvent> appender){
+        private AppenderInfo(ServiceReference ref, Appender<ILoggingEvent> appender, AppenderMetrics metrics,
+                             MeteredAppender attached){
             this.appender = appender;
             this.serviceReference = ref;
+            this.metrics = metrics;
+            this.attached = attached;
 
-            List<LoggerInfo> loggers = new ArrayList<LoggerInfo>();
+            Map<String, LoggerInfo> loggers = new LinkedHashMap<String, LoggerInfo>();
             for(String logger : Util.toList(ref.getProperty(PROP_LOGGER))){
-                loggers.add(new LoggerInfo(logger));
+                LoggerInfo li = new LoggerInfo(logger);
+                loggers.put(li.name, li);
             }
 
-            this.loggers = loggers;
+            this.loggers = Collections.unmodifiableMap(loggers);
         }
     }
 
@@ -158,9 +342,6 @@ public class AppenderTracker extends ServiceTracker implements LogbackResetListe
         final String name;
         final boolean additive;
 
-        Level oldLevel;
-        boolean oldAdditive;
-
         public LoggerInfo(String loggerSpec) {
             String[] parts = loggerSpec.split(":");
 
@@ -179,6 +360,25 @@ public class AppenderTracker extends ServiceTracker implements LogbackResetListe
             this.additive = additive;
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LoggerInfo)) {
+                return false;
+            }
+            LoggerInfo that = (LoggerInfo) o;
+            return additive == that.additive && level.equals(that.level) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = level.hashCode();
+            result = 31 * result + name.hashCode();
+            result = 31 * result + (additive ? 1 : 0);
+            return result;
+        }
     }
 
     private static String safeTrim(String s){
@@ -31,6 +31,8 @@ public class ConfigResetRequestHandler implements EventHandler {
 
     @Override
     public void handleEvent(Event event) {
+        //Providers signal changed config through the event so parse them again
+        logbackManager.getConfigSourceTracker().invalidateProviderCache();
         logbackManager.configChanged();
     }
 }
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.joran.event.BodyEvent;
+import ch.qos.logback.core.joran.event.EndEvent;
+import ch.qos.logback.core.joran.event.SaxEvent;
+import ch.qos.logback.core.joran.event.SaxEventRecorder;
+import ch.qos.logback.core.joran.event.StartEvent;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * Persistent cache of the SAX events recorded from Logback config sources. It allows
+ * the configuration to be played upon bundle start without parsing the XML again.
+ * <p>
+ * Each entry is stored under a key identifying the source along with a token, like
+ * a digest of the file content, which must match for the entry to be used.
+ * Entries not used by a configuration run are dropped when the run is committed
+ * via {@link #commit()}, which also writes the snapshot if it changed.
+ * <p>
+ * Events are stored in a compact binary form. They are turned back into SaxEvents by
+ * feeding them to a {@link SaxEventRecorder} in the same way the XML parser does.
+ */
+public class ConfigSnapshot extends ContextAwareBase {
+    private static final int MAGIC = 0x534C4253;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte START = 1;
+
+    private static final byte BODY = 2;
+
+    private static final byte END = 3;
+
+    private final File file;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    private boolean dirty;
+
+    /**
+     * @param file file to store the snapshot in. If null the snapshot is only kept
+     *             in memory
+     */
+    public ConfigSnapshot(Context context, File file) {
+        setContext(context);
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the events stored for the given source and marks the entry as used
+     *
+     * @return null if no entry exists or the token does not match
+     */
+    public synchronized List<SaxEvent> getEvents(String key, long token) {
+        Entry e = entries.get(key);
+        if (e == null || e.token != token) {
+            return null;
+        }
+
+        if (e.events == null) {
+            try {
+                e.events = Collections.unmodifiableList(replay(e.data));
+            } catch (IOException ex) {
+                addWarn("Ignoring corrupt snapshot entry for " + key, ex);
+                entries.remove(key);
+                dirty = true;
+                return null;
+            }
+        }
+        e.used = true;
+        return e.events;
+    }
+
+    /**
+     * Stores the events recorded from the given source
+     */
+    public synchronized void putEvents(String key, long token, List<SaxEvent> events) {
+        Entry e = new Entry(token);
+        e.events = Collections.unmodifiableList(new ArrayList<SaxEvent>(events));
+        e.used = true;
+        entries.put(key, e);
+        dirty = true;
+    }
+
+    /**
+     * Drops the entries not used since the last commit and writes the snapshot if
+     * it changed
+     */
+    public synchronized void commit() {
+        for (Iterator<Entry> itr = entries.values().iterator(); itr.hasNext(); ) {
+            Entry e = itr.next();
+            if (!e.used) {
+                itr.remove();
+                dirty = true;
+            }
+            e.used = false;
+        }
+
+        if (dirty && file != null) {
+            try {
+                save();
+                dirty = false;
+            } catch (IOException e) {
+                addWarn("Error occurred while saving config snapshot to " + file, e);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    //~-------------------------------------------- Persistence
+
+    private void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                addInfo("Ignoring config snapshot " + file + " of unknown format");
+                return;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                Entry e = new Entry(in.readLong());
+                e.data = new byte[in.readInt()];
+                in.readFully(e.data);
+                entries.put(key, e);
+            }
+            addInfo("Loaded " + count + " entries from config snapshot " + file);
+        } catch (IOException e) {
+            addWarn("Ignoring unreadable config snapshot " + file, e);
+            entries.clear();
+        } finally {
+            close(in);
+        }
+    }
+
+    private void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> me : entries.entrySet()) {
+                Entry e = me.getValue();
+                if (e.data == null) {
+                    e.data = record(e.events);
+                }
+                writeString(out, me.getKey());
+                out.writeLong(e.token);
+                out.writeInt(e.data.length);
+                out.write(e.data);
+            }
+        } finally {
+            close(out);
+        }
+
+        //Replace the old snapshot in one step so that a crash does not leave a partial file
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Cannot rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    private static byte[] record(List<SaxEvent> events) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(events.size());
+        for (SaxEvent se : events) {
+            if (se instanceof StartEvent) {
+                StartEvent start = (StartEvent) se;
+                out.writeByte(START);
+                writeName(out, se);
+                Attributes atts = start.attributes;
+                int attCount = atts != null ? atts.getLength() : 0;
+                out.writeInt(attCount);
+                for (int i = 0; i < attCount; i++) {
+                    writeString(out, atts.getURI(i));
+                    writeString(out, atts.getLocalName(i));
+                    writeString(out, atts.getQName(i));
+                    writeString(out, atts.getType(i));
+                    writeString(out, atts.getValue(i));
+                }
+            } else if (se instanceof BodyEvent) {
+                out.writeByte(BODY);
+                writeString(out, ((BodyEvent) se).getText());
+            } else if (se instanceof EndEvent) {
+                out.writeByte(END);
+                writeName(out, se);
+            } else {
+                throw new IOException("Unsupported event " + se);
+            }
+            out.writeInt(se.locator != null ? se.locator.getLineNumber() : -1);
+            out.writeInt(se.locator != null ? se.locator.getColumnNumber() : -1);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private List<SaxEvent> replay(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        SaxEventRecorder recorder = new SaxEventRecorder(getContext());
+        LocatorImpl locator = new LocatorImpl();
+        recorder.setDocumentLocator(locator);
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte type = in.readByte();
+            String namespaceURI = null, localName = null, qName = null, text = null;
+            AttributesImpl atts = null;
+            if (type == START) {
+                namespaceURI = readString(in);
+                localName = readString(in);
+                qName = readString(in);
+                atts = new AttributesImpl();
+                int attCount = in.readInt();
+                for (int j = 0; j < attCount; j++) {
+                    atts.addAttribute(readString(in), readString(in), readString(in),
+                            readString(in), readString(in));
+                }
+            } else if (type == BODY) {
+                text = readString(in);
+            } else if (type == END) {
+                namespaceURI = readString(in);
+                localName = readString(in);
+                qName = readString(in);
+            } else {
+                throw new IOException("Unknown event type " + type);
+            }
+            locator.setLineNumber(in.readInt());
+            locator.setColumnNumber(in.readInt());
+
+            if (type == START) {
+                recorder.startElement(namespaceURI, localName, qName, atts);
+            } else if (type == BODY) {
+                char[] chars = text != null ? text.toCharArray() : new char[0];
+                recorder.characters(chars, 0, chars.length);
+            } else {
+                recorder.endElement(namespaceURI, localName, qName);
+            }
+        }
+        return new ArrayList<SaxEvent>(recorder.getSaxEventList());
+    }
+
+    private static void writeName(DataOutputStream out, SaxEvent se) throws IOException {
+        writeString(out, se.namespaceURI);
+        writeString(out, se.localName);
+        writeString(out, se.qName);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void close(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                //Ignore
+            }
+        }
+    }
+
+    private static void close(OutputStream out) throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    private static class Entry {
+        final long token;
+
+        /**
+         * Serialized events as loaded from or written to the snapshot file
+         */
+        byte[] data;
+
+        List<SaxEvent> events;
+
+        boolean used;
+
+        Entry(long token) {
+            this.token = token;
+        }
+    }
+}
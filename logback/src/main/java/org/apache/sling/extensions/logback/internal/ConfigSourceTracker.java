@@ -22,10 +22,12 @@ package org.apache.sling.extensions.logback.internal;
 import java.io.StringReader;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.joran.event.SaxEvent;
 import org.apache.sling.extensions.logback.ConfigProvider;
 import org.apache.sling.extensions.logback.internal.util.XmlUtil;
 import org.osgi.framework.BundleContext;
@@ -66,6 +68,19 @@ public class ConfigSourceTracker extends ServiceTracker implements LogbackResetL
         inputSources.clear();
     }
 
+    /**
+     * Drops the parsed events of fragments provided by ConfigProvider services as
+     * their config may have changed without a change of the service. Fragments
+     * registered as String are immutable and stay cached
+     */
+    public void invalidateProviderCache(){
+        for(ConfigSourceInfo ci : inputSources.values()){
+            if(!(ci.getConfigProvider() instanceof StringSourceProvider)){
+                ci.setSaxEvents(null);
+            }
+        }
+    }
+
     //~--------------------------------- ServiceTracker
 
     @Override
@@ -80,7 +95,9 @@ public class ConfigSourceTracker extends ServiceTracker implements LogbackResetL
     public void modifiedService(ServiceReference reference, Object service) {
         super.modifiedService(reference, service);
         //A ConfigProvider can modify its service registration properties
-        //to indicate that config has changed and a reload is required
+        //to indicate that config has changed and a reload is required.
+        //A new info drops the events parsed from the previous config
+        inputSources.put(reference,new ConfigSourceInfo(reference,getConfig(service)));
         logbackManager.configChanged();
     }
 
@@ -98,12 +115,21 @@ public class ConfigSourceTracker extends ServiceTracker implements LogbackResetL
         context.putObject(ConfigSourceTracker.class.getName(),this);
     }
 
+    public void onResetComplete(LoggerContext context) {
+    }
+
     //~----------------------------------ConfigSourceInfo
 
     public static class ConfigSourceInfo {
         private final ServiceReference reference;
         private final ConfigProvider configProvider;
 
+        /**
+         * Events recorded from the config source with the included tag removed. Null
+         * if the source is not yet parsed
+         */
+        private volatile List<SaxEvent> saxEvents;
+
         public ConfigSourceInfo(ServiceReference reference, ConfigProvider configProvider) {
             this.reference = reference;
             this.configProvider = configProvider;
@@ -117,6 +143,27 @@ public class ConfigSourceTracker extends ServiceTracker implements LogbackResetL
             return reference;
         }
 
+        /**
+         * Key under which the events of this source can be kept in the {@link ConfigSnapshot}.
+         * Only fragments registered as String have a stable identity across restarts
+         *
+         * @return null if the events of this source must not be persisted
+         */
+        public String getSnapshotKey() {
+            if (configProvider instanceof StringSourceProvider) {
+                return "string:" + ((StringSourceProvider) configProvider).source;
+            }
+            return null;
+        }
+
+        public List<SaxEvent> getSaxEvents() {
+            return saxEvents;
+        }
+
+        public void setSaxEvents(List<SaxEvent> saxEvents) {
+            this.saxEvents = saxEvents;
+        }
+
         public String getSourceAsString(){
             return XmlUtil.prettyPrint(getConfigProvider().getConfigSource());
         }
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.qos.logback.core.util.CachingDateFormatter;
+
+/**
+ * Records the time taken by the phases of configuring the LoggerContext. A pass
+ * covers the bundle startup or one reconfiguration. The last {@link #HISTORY_SIZE}
+ * passes are kept.
+ * <p>
+ * Passes are started and ended by the thread configuring the context. Other
+ * components add to the current pass while it is running, e.g. for each parsed
+ * config fragment. Such calls are ignored if no pass is running, which is the
+ * case if Logback resets the context on its own.
+ */
+public class ConfigurationStats implements ConfigurationStatsMBean {
+    public static final int HISTORY_SIZE = 20;
+
+    private final LinkedList<Pass> history = new LinkedList<Pass>();
+
+    private final CachingDateFormatter dateFormatter = new CachingDateFormatter("yyyy-MM-dd HH:mm:ss");
+
+    private volatile Pass current;
+
+    private long passCount;
+
+    public Pass beginPass(String trigger) {
+        Pass pass = new Pass(trigger);
+        current = pass;
+        return pass;
+    }
+
+    /**
+     * Ends the current pass and adds it to the history
+     *
+     * @param appenderCount number of started appenders attached to loggers after the pass
+     */
+    public void endPass(int appenderCount) {
+        Pass pass = current;
+        if (pass == null) {
+            return;
+        }
+        current = null;
+        pass.appenderCount = appenderCount;
+        pass.durationNanos = System.nanoTime() - pass.startNanos;
+
+        synchronized (history) {
+            history.addFirst(pass);
+            if (history.size() > HISTORY_SIZE) {
+                history.removeLast();
+            }
+            passCount++;
+        }
+    }
+
+    /**
+     * Records the time taken by a phase of the current pass
+     *
+     * @param startNanos value of {@link System#nanoTime()} at start of the phase
+     */
+    public void phaseCompleted(String phase, long startNanos) {
+        Pass pass = current;
+        if (pass != null) {
+            pass.addPhase(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    public void fragmentParsed() {
+        Pass pass = current;
+        if (pass != null) {
+            pass.fragmentsParsed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Marks the start of the period for which events are routed to the temporary
+     * console appender attached while the context is reset
+     */
+    public void consoleAppenderAttached() {
+        Pass pass = current;
+        if (pass != null) {
+            pass.consoleAttachedNanos = System.nanoTime();
+        }
+    }
+
+    public void consoleAppenderDetached() {
+        Pass pass = current;
+        if (pass != null && pass.consoleAttachedNanos != 0) {
+            pass.consoleNanos += System.nanoTime() - pass.consoleAttachedNanos;
+            pass.consoleAttachedNanos = 0;
+        }
+    }
+
+    /**
+     * Returns the recorded passes, most recent first
+     */
+    public List<Pass> getPasses() {
+        synchronized (history) {
+            return new ArrayList<Pass>(history);
+        }
+    }
+
+    //~--------------------------------------- ConfigurationStatsMBean
+
+    public long getConfigurationCount() {
+        synchronized (history) {
+            return passCount;
+        }
+    }
+
+    public long getLastConfigurationTime() {
+        synchronized (history) {
+            return history.isEmpty() ? 0 : history.getFirst().getDuration();
+        }
+    }
+
+    public long getMaxConfigurationTime() {
+        long max = 0;
+        for (Pass p : getPasses()) {
+            max = Math.max(max, p.getDuration());
+        }
+        return max;
+    }
+
+    public String[] getHistory() {
+        List<Pass> passes = getPasses();
+        String[] result = new String[passes.size()];
+        for (int i = 0; i < result.length; i++) {
+            Pass p = passes.get(i);
+            StringBuilder sb = new StringBuilder();
+            synchronized (dateFormatter) {
+                sb.append(dateFormatter.format(p.getStartTime()));
+            }
+            sb.append(" [").append(p.getTrigger()).append("] total=").append(formatMillis(p.durationNanos));
+            for (Map.Entry<String, Long> e : p.getPhases().entrySet()) {
+                sb.append(", ").append(e.getKey()).append('=').append(formatMillis(e.getValue()));
+            }
+            sb.append(", appenders=").append(p.getAppenderCount());
+            sb.append(", fragmentsParsed=").append(p.getFragmentsParsed());
+            sb.append(", consoleTime=").append(formatMillis(p.consoleNanos));
+            result[i] = sb.toString();
+        }
+        return result;
+    }
+
+    static String formatMillis(long nanos) {
+        return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    public static class Pass {
+        private final String trigger;
+
+        private final long startTime = System.currentTimeMillis();
+
+        private final long startNanos = System.nanoTime();
+
+        private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+        private final AtomicInteger fragmentsParsed = new AtomicInteger();
+
+        private volatile long durationNanos;
+
+        private volatile int appenderCount;
+
+        private volatile long consoleAttachedNanos;
+
+        private volatile long consoleNanos;
+
+        Pass(String trigger) {
+            this.trigger = trigger;
+        }
+
+        private void addPhase(String phase, long nanos) {
+            synchronized (phases) {
+                Long existing = phases.get(phase);
+                phases.put(phase, existing != null ? existing + nanos : nanos);
+            }
+        }
+
+        public String getTrigger() {
+            return trigger;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Duration of the pass in millis
+         */
+        public long getDuration() {
+            return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * Time in nanos taken by each phase in the order the phases got completed.
+         * Phases may be nested, e.g. the reset listeners run within the reset
+         */
+        public Map<String, Long> getPhases() {
+            synchronized (phases) {
+                return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(phases));
+            }
+        }
+
+        public int getAppenderCount() {
+            return appenderCount;
+        }
+
+        public int getFragmentsParsed() {
+            return fragmentsParsed.get();
+        }
+
+        /**
+         * Time in nanos for which events were routed to the temporary console appender
+         */
+        public long getConsoleNanos() {
+            return consoleNanos;
+        }
+    }
+}
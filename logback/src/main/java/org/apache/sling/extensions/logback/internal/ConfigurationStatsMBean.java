@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+/**
+ * Management interface exposing the timings of the recent configuration passes
+ * of the Sling Logback integration
+ */
+public interface ConfigurationStatsMBean {
+
+    /**
+     * Number of configuration passes done since bundle start
+     */
+    long getConfigurationCount();
+
+    /**
+     * Duration in millis of the last configuration pass
+     */
+    long getLastConfigurationTime();
+
+    /**
+     * Max duration in millis of the configuration passes kept in the history
+     */
+    long getMaxConfigurationTime();
+
+    /**
+     * Summary of each configuration pass in the history, most recent first. Each
+     * entry lists the time taken by the individual phases
+     */
+    String[] getHistory();
+}
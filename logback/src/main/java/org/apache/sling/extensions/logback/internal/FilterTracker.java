@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.filter.Filter;
+import org.apache.sling.extensions.logback.internal.util.CompositeFilter;
+import org.apache.sling.extensions.logback.internal.util.MeteredFilter;
+import org.apache.sling.extensions.logback.internal.util.Util;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Tracks Filter services and attaches them to the appenders named in the
+ * {@link #PROP_APPENDER} service property. Appenders are looked up by name among
+ * the appenders attached to loggers, which covers the appenders of OSGi configured
+ * writers, named by their file name, appenders declared in the Logback config and
+ * appenders registered as services.
+ * <p>
+ * Appenders get recreated upon a reset, so the filters are attached again once the
+ * reset completed. Each filter is wrapped in a {@link MeteredFilter} to record the
+ * time taken by it. The filters are attached through a {@link CompositeFilter} per
+ * appender so that a filter can be detached without the others being bypassed.
+ */
+public class FilterTracker extends ServiceTracker implements LogbackResetListener {
+    static final String PROP_APPENDER = "appenders";
+
+    /**
+     * Filters taking longer on average are flagged as slow in the web console
+     */
+    public static final long SLOW_FILTER_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final LoggerContext loggerContext;
+
+    private final Map<ServiceReference, FilterInfo> filters = new ConcurrentHashMap<ServiceReference, FilterInfo>();
+
+    public FilterTracker(BundleContext context, LoggerContext loggerContext) throws InvalidSyntaxException {
+        super(context, createFilter(), null);
+        this.loggerContext = loggerContext;
+        super.open();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object addingService(ServiceReference reference) {
+        Filter<ILoggingEvent> f = (Filter<ILoggingEvent>) super.addingService(reference);
+        f.setContext(loggerContext);
+        f.start();
+
+        FilterInfo fi = new FilterInfo(reference, f);
+        fi.metered.setContext(loggerContext);
+        fi.metered.start();
+        filters.put(reference, fi);
+        attachFilter(fi);
+        return fi;
+    }
+
+    @Override
+    public void modifiedService(ServiceReference reference, Object service) {
+        FilterInfo fi = (FilterInfo) service;
+        detachFilter(fi);
+        fi.appenderNames = Util.toList(reference.getProperty(PROP_APPENDER));
+        attachFilter(fi);
+    }
+
+    @Override
+    public void removedService(ServiceReference reference, Object service) {
+        FilterInfo fi = filters.remove(reference);
+        if (fi != null) {
+            detachFilter(fi);
+            fi.filter.stop();
+        }
+        super.removedService(reference, service);
+    }
+
+    public void onReset(LoggerContext context) {
+        //Export the tracker so that appenders added later on get the filters. Appenders
+        //of the config get created after this, so filters are attached once the reset completed
+        context.putObject(FilterTracker.class.getName(), this);
+    }
+
+    public void onResetComplete(LoggerContext context) {
+        attachFilters();
+    }
+
+    /**
+     * Attaches the filters to appenders which do not have them yet, e.g. appenders
+     * created for a changed writer config
+     */
+    public void attachFilters() {
+        for (FilterInfo fi : filters.values()) {
+            attachFilter(fi);
+        }
+    }
+
+    public Collection<FilterInfo> getFilterInfos() {
+        return filters.values();
+    }
+
+    @Override
+    public synchronized void close() {
+        super.close();
+        filters.clear();
+    }
+
+    private synchronized void attachFilter(FilterInfo fi) {
+        final Map<String, Appender<ILoggingEvent>> appenders = getAppendersByName();
+        for (String name : fi.appenderNames) {
+            Appender<ILoggingEvent> a = appenders.get(name);
+            if (a != null) {
+                CompositeFilter.attachTo(a).add(fi.metered);
+            }
+        }
+    }
+
+    private synchronized void detachFilter(FilterInfo fi) {
+        final Map<String, Appender<ILoggingEvent>> appenders = getAppendersByName();
+        for (String name : fi.appenderNames) {
+            Appender<ILoggingEvent> a = appenders.get(name);
+            CompositeFilter composite = a != null ? CompositeFilter.getAttached(a) : null;
+            if (composite != null) {
+                composite.remove(fi.metered);
+            }
+        }
+    }
+
+    private Map<String, Appender<ILoggingEvent>> getAppendersByName() {
+        final Map<String, Appender<ILoggingEvent>> result = new HashMap<String, Appender<ILoggingEvent>>();
+        for (Logger logger : loggerContext.getLoggerList()) {
+            Iterator<Appender<ILoggingEvent>> itr = logger.iteratorForAppenders();
+            while (itr.hasNext()) {
+                Appender<ILoggingEvent> a = itr.next();
+                if (a.getName() != null && !result.containsKey(a.getName())) {
+                    result.put(a.getName(), a);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static org.osgi.framework.Filter createFilter() throws InvalidSyntaxException {
+        String filter = String.format("(&(objectClass=%s)(%s=*))", Filter.class.getName(), PROP_APPENDER);
+        return FrameworkUtil.createFilter(filter);
+    }
+
+    static class FilterInfo {
+        final ServiceReference serviceReference;
+        final Filter<ILoggingEvent> filter;
+        final MeteredFilter metered;
+        volatile List<String> appenderNames;
+
+        FilterInfo(ServiceReference ref, Filter<ILoggingEvent> filter) {
+            this.serviceReference = ref;
+            this.filter = filter;
+            this.metered = new MeteredFilter(filter);
+            this.appenderNames = Util.toList(ref.getProperty(PROP_APPENDER));
+        }
+
+        boolean isSlow() {
+            return metered.getLatency().getMean() >= SLOW_FILTER_THRESHOLD;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Layout;
+
+/**
+ * Shares started layouts between logger configurations with the same pattern. A
+ * registry is bound to the LoggerContext of the {@link LogConfigManager} so layouts
+ * are keyed by the Logback pattern only. Layouts survive context resets and are
+ * dropped once no configuration refers to their pattern anymore.
+ * <p>
+ * Evicted layouts are not stopped as appenders created before the last reset may
+ * still be writing with them. They are garbage collected along with those appenders.
+ */
+public class LayoutRegistry {
+    private final Map<String, Layout<ILoggingEvent>> layoutsByPattern = new HashMap<String, Layout<ILoggingEvent>>();
+
+    /**
+     * Returns the layout for the pattern of the given config creating it if required
+     */
+    public synchronized Layout<ILoggingEvent> getLayout(LogConfig config) {
+        String pattern = config.getLogbackPattern();
+        Layout<ILoggingEvent> layout = layoutsByPattern.get(pattern);
+        if (layout == null) {
+            layout = config.createLayout();
+            layoutsByPattern.put(pattern, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Evicts the layouts whose pattern is not used by any of the passed configs
+     */
+    public synchronized void retain(Collection<LogConfig> configs) {
+        Set<String> patterns = new HashSet<String>();
+        for (LogConfig config : configs) {
+            patterns.add(config.getLogbackPattern());
+        }
+
+        Iterator<String> itr = layoutsByPattern.keySet().iterator();
+        while (itr.hasNext()) {
+            if (!patterns.contains(itr.next())) {
+                itr.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return layoutsByPattern.size();
+    }
+
+    public synchronized void clear() {
+        layoutsByPattern.clear();
+    }
+}
@@ -26,10 +26,13 @@ import java.util.regex.Pattern;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.PatternLayout;
+import org.apache.sling.extensions.logback.internal.util.AppendablePatternLayout;
 
 public class LogConfig {
     private static final String[] LEGACY_MARKERS = {"{0}","{1}","{2}","{3}","{4}","{5}"};
 
+    private static final Pattern DATE_PATTERN = Pattern.compile("\\{0,date,(.+?)\\}");
+
     private final String configPid;
 
     private final Set<String> categories;
@@ -44,6 +47,12 @@ public class LogConfig {
 
     private final LoggerContext loggerContext;
 
+    /**
+     * Pattern translated to Logback syntax. Computed lazily so that invalid patterns
+     * are reported when the layout gets created
+     */
+    private volatile String logbackPattern;
+
     LogConfig(LogWriterProvider logWriterProvider, final String pattern,
               Set<String> categories, Level logLevel, String logWriterName,
               String configPid, LoggerContext loggerContext) {
@@ -80,7 +89,33 @@ public class LogConfig {
         return logWriterProvider.getLogWriter(getLogWriterName());
     }
 
+    /**
+     * Returns the Logback pattern for this config. Legacy MessageFormat based patterns
+     * are translated to the equivalent Logback pattern
+     */
+    public String getLogbackPattern() {
+        String p = logbackPattern;
+        if (p == null) {
+            p = toLogbackPattern(pattern);
+            logbackPattern = p;
+        }
+        return p;
+    }
+
+    /**
+     * Creates and starts a new layout for the pattern of this config. Use
+     * {@link LayoutRegistry} to share layouts between configs with the same pattern
+     */
     public PatternLayout createLayout(){
+        PatternLayout pl = new AppendablePatternLayout();
+        pl.setPattern(getLogbackPattern());
+        pl.setOutputPatternAsHeader(false);
+        pl.setContext(loggerContext);
+        pl.start();
+        return pl;
+    }
+
+    private static String toLogbackPattern(String pattern){
         //The java.util.MessageFormat pattern to use for formatting log messages with the root logger.
         // This is a java.util.MessageFormat pattern supporting up to six arguments:
         // {0} The timestamp of type java.util.Date,
@@ -89,8 +124,7 @@ public class LogConfig {
         // {3} the name of the logger,
         // {4} the debug level and
         // {5} the actual debug message
-        Pattern date = Pattern.compile("\\{0,date,(.+?)\\}");
-        Matcher m = date.matcher(pattern);
+        Matcher m = DATE_PATTERN.matcher(pattern);
         String logBackPattern = pattern;
 
         if(m.matches()){
@@ -112,13 +146,7 @@ public class LogConfig {
             logBackPattern = MessageFormat.format(logBackPattern, "zero", "%marker", "%thread", "%logger", "%level",
                 "%message") + "%n";
         }
-
-        PatternLayout pl = new PatternLayout();
-        pl.setPattern(logBackPattern);
-        pl.setOutputPatternAsHeader(false);
-        pl.setContext(loggerContext);
-        pl.start();
-        return pl;
+        return logBackPattern;
     }
 
     @Override
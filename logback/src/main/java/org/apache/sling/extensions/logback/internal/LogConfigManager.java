@@ -19,19 +19,22 @@
 package org.apache.sling.extensions.logback.internal;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Dictionary;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.ConsoleAppender;
 import ch.qos.logback.core.Layout;
@@ -40,6 +43,7 @@ import ch.qos.logback.core.util.ContextUtil;
 import org.apache.sling.extensions.logback.internal.config.ConfigAdminSupport;
 import org.apache.sling.extensions.logback.internal.config.ConfigurationException;
 import org.apache.sling.extensions.logback.internal.util.LoggerSpecificEncoder;
+import org.apache.sling.extensions.logback.internal.util.SlingAsyncAppender;
 import org.apache.sling.extensions.logback.internal.util.Util;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
@@ -59,6 +63,48 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
 
     public static final String LOG_PATTERN = "org.apache.sling.commons.log.pattern";
 
+    public static final String LOG_FILE_TYPE = "org.apache.sling.commons.log.file.type";
+
+    public static final String LOG_FILE_TYPE_STREAM = "stream";
+
+    public static final String LOG_FILE_TYPE_MMAP = "mmap";
+
+    public static final String LOG_FILE_ROLLING = "org.apache.sling.commons.log.file.rolling";
+
+    public static final String LOG_FILE_ROLLING_WINDOW = "window";
+
+    public static final String LOG_FILE_ROLLING_SEQUENCE = "sequence";
+
+    public static final String LOG_FILE_FLUSH_BYTES = "org.apache.sling.commons.log.file.flush.bytes";
+
+    public static final String LOG_FILE_FLUSH_INTERVAL = "org.apache.sling.commons.log.file.flush.interval";
+
+    public static final String LOG_FILE_FLUSH_ON_ERROR = "org.apache.sling.commons.log.file.flush.onError";
+
+    public static final String LOG_FILE_TOTAL_SIZE_CAP = "org.apache.sling.commons.log.file.totalSizeCap";
+
+    public static final String LOG_FILE_COMPRESS = "org.apache.sling.commons.log.file.compress";
+
+    public static final String LOG_FILE_COLLAPSE_REPEATS = "org.apache.sling.commons.log.file.collapseRepeats";
+
+    public static final String LOG_FILE_TIMESTAMP_INDEX = "org.apache.sling.commons.log.file.timestampIndex";
+
+    public static final String LOG_ASYNC = "org.apache.sling.commons.log.async";
+
+    public static final String LOG_ASYNC_QUEUE_SIZE = "org.apache.sling.commons.log.async.queueSize";
+
+    public static final String LOG_ASYNC_OVERFLOW = "org.apache.sling.commons.log.async.overflow";
+
+    /**
+     * Max number of events per second passed by a rate limit configuration
+     */
+    public static final String LOG_RATE_LIMIT = "org.apache.sling.commons.log.rateLimit";
+
+    /**
+     * Percentage of events passed by a rate limit configuration
+     */
+    public static final String LOG_SAMPLE_PERCENT = "org.apache.sling.commons.log.samplePercent";
+
     public static final String LOG_PATTERN_DEFAULT = "%d{dd.MM.yyyy HH:mm:ss.SSS} *%level* [%thread] %logger %msg%n";
 
     public static final String LOG_LOGGERS = "org.apache.sling.commons.log.names";
@@ -69,12 +115,21 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
 
     public static final String LOG_FILE_SIZE_DEFAULT = "'.'yyyy-MM-dd";
 
+    public static final long LOG_FILE_FLUSH_INTERVAL_DEFAULT = 1000;
+
+    public static final int LOG_ASYNC_QUEUE_SIZE_DEFAULT = 1024;
+
+    public static final SlingAsyncAppender.OverflowPolicy LOG_ASYNC_OVERFLOW_DEFAULT =
+            SlingAsyncAppender.OverflowPolicy.DROP_DEBUG;
+
     public static final String PID = "org.apache.sling.commons.log.LogManager";
 
     public static final String FACTORY_PID_WRITERS = PID + ".factory.writer";
 
     public static final String FACTORY_PID_CONFIGS = PID + ".factory.config";
 
+    public static final String FACTORY_PID_RATE_LIMITS = PID + ".factory.ratelimit";
+
     private static final String DEFAULT_CONSOLE_APPENDER_NAME = "org.apache.sling.commons.log.CONSOLE";
 
     private final LoggerContext loggerContext;
@@ -107,6 +162,24 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
 
     private final LogbackManager logbackManager;
 
+    private final LayoutRegistry layoutRegistry = new LayoutRegistry();
+
+    private final RateLimitFilter rateLimitFilter = new RateLimitFilter();
+
+    // map of rate limits of the categories indexed by configuration PID
+    private final Map<String, List<RateLimitFilter.RateLimit>> rateLimitsByPid =
+            new ConcurrentHashMap<String, List<RateLimitFilter.RateLimit>>();
+
+    private final ScheduledFuture<?> rateLimitReporter;
+
+    // appenders created for the log writers upon last reset indexed by writer file name
+    private final Map<String, Appender<ILoggingEvent>> appenderByWriterName =
+            new ConcurrentHashMap<String, Appender<ILoggingEvent>>();
+
+    // encoders of the appenders in appenderByWriterName
+    private final Map<String, LoggerSpecificEncoder> encoderByWriterName =
+            new ConcurrentHashMap<String, LoggerSpecificEncoder>();
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final Object configLock = new Object();
@@ -148,6 +221,15 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
 
         this.rootDir = new File(rootDir);
         setDefaultConfiguration(getBundleConfiguration(bundleContext));
+
+        rateLimitFilter.setContext(loggerContext);
+        rateLimitFilter.start();
+        this.rateLimitReporter = logbackManager.getScheduler().scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                rateLimitFilter.reportSuppressed();
+            }
+        }, RateLimitFilter.SUMMARY_INTERVAL, RateLimitFilter.SUMMARY_INTERVAL, TimeUnit.SECONDS);
+
         this.configAdminSupport = new ConfigAdminSupport(bundleContext,this);
     }
 
@@ -175,11 +257,17 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
      */
     public void close() {
         configAdminSupport.shutdown();
+        rateLimitReporter.cancel(false);
+        rateLimitsByPid.clear();
+        loggerContext.getTurboFilterList().remove(rateLimitFilter);
 
         writerByPid.clear();
         writerByFileName.clear();
         configByPid.clear();
         configByCategory.clear();
+        layoutRegistry.clear();
+        appenderByWriterName.clear();
+        encoderByWriterName.clear();
 
         this.defaultConfiguration = null;
     }
@@ -216,8 +304,9 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
 // ---------- Logback reset listener
 
     public void onReset(LoggerContext context) {
-        Map<String,Appender<ILoggingEvent>> appendersByName = new HashMap<String, Appender<ILoggingEvent>>();
-        Map<Appender,LoggerSpecificEncoder> encoders = new HashMap<Appender, LoggerSpecificEncoder>();
+        //Appenders of the previous configuration got stopped by the reset
+        appenderByWriterName.clear();
+        encoderByWriterName.clear();
         for(LogConfig config : getLogConfigs()){
             Appender<ILoggingEvent> appender = null;
             if(config.isAppenderDefined()){
@@ -227,14 +316,8 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
                 //already defined in LogBack config. Only issue is Listener are
                 //executed *before* config is parsed. So cannot refer to Appenders here
 
-                appender = appendersByName.get(lw.getFileName());
-                if(appender == null){
-                    LoggerSpecificEncoder encoder = new LoggerSpecificEncoder(getDefaultLayout());
-                    appender = lw.createAppender(loggerContext,encoder);
-                    encoders.put(appender,encoder);
-                    appendersByName.put(lw.getFileName(),appender);
-                }
-                encoders.get(appender).addLogConfig(config);
+                appender = getOrCreateAppender(lw);
+                encoderByWriterName.get(lw.getFileName()).addLogConfig(config, layoutRegistry.getLayout(config));
             }
 
             for(String category : config.getCategories()){
@@ -246,8 +329,18 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
             }
         }
 
+        //Drop layouts of patterns which are no longer configured
+        layoutRegistry.retain(configByPid.values());
+
+        //Reset drops all TurboFilters
+        installRateLimitFilter();
+
         //Remove the default console appender that we attached at start of reset
         context.getLogger(Logger.ROOT_LOGGER_NAME).detachAppender(DEFAULT_CONSOLE_APPENDER_NAME);
+        logbackManager.getConfigurationStats().consoleAppenderDetached();
+    }
+
+    public void onResetComplete(LoggerContext context) {
     }
 
 
@@ -305,6 +398,55 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
      * cannot be converted to a number, the default value
      * {@link java.util.logging.LogManager#LOG_FILE_NUMBER_DEFAULT} is assumed. If the writer
      * writes standard output this property is ignored.</dd>
+     * <dt>{@link #LOG_FILE_TYPE}</dt>
+     * <dd>How the log file is written. Either {@link #LOG_FILE_TYPE_STREAM} (default)
+     * or {@link #LOG_FILE_TYPE_MMAP} to append through a memory mapped region. If the
+     * writer writes standard output this property is ignored.</dd>
+     * <dt>{@link #LOG_FILE_ROLLING}</dt>
+     * <dd>How files are named when rolled over by size. Either
+     * {@link #LOG_FILE_ROLLING_WINDOW} (default) to shift a fixed window of files on
+     * each rollover or {@link #LOG_FILE_ROLLING_SEQUENCE} to name each rolled over
+     * file by an increasing sequence number, which only renames the active file. If
+     * the writer writes standard output or rolls by time this property is ignored.</dd>
+     * <dt>{@link #LOG_FILE_FLUSH_BYTES}</dt>
+     * <dd>If set the log file is not flushed per event but once the given number
+     * of bytes got written. Buffered data is also flushed after
+     * {@link #LOG_FILE_FLUSH_INTERVAL} millis. Defaults to 0 (flush every event)</dd>
+     * <dt>{@link #LOG_FILE_FLUSH_INTERVAL}</dt>
+     * <dd>If set the log file is flushed at the given interval in millis instead of
+     * per event. Defaults to {@link #LOG_FILE_FLUSH_INTERVAL_DEFAULT} if only
+     * {@link #LOG_FILE_FLUSH_BYTES} is set</dd>
+     * <dt>{@link #LOG_FILE_FLUSH_ON_ERROR}</dt>
+     * <dd>If <code>true</code> ERROR events are flushed immediately when flushing
+     * in groups. Defaults to <code>true</code></dd>
+     * <dt>{@link #LOG_FILE_TOTAL_SIZE_CAP}</dt>
+     * <dd>Max total size of the rolled over log files like <code>10GB</code>. Once
+     * exceeded the oldest rolled over files are deleted. By default only
+     * {@link #LOG_FILE_NUMBER} limits the rolled over files. If the writer writes
+     * standard output this property is ignored.</dd>
+     * <dt>{@link #LOG_FILE_COMPRESS}</dt>
+     * <dd>If <code>true</code> rolled over log files are gzip compressed in the
+     * background. Defaults to <code>false</code>. If the writer writes standard
+     * output this property is ignored.</dd>
+     * <dt>{@link #LOG_FILE_COLLAPSE_REPEATS}</dt>
+     * <dd>If <code>true</code> consecutive events with the same logger, level,
+     * message pattern and exception type are written once followed by a line
+     * stating the number of repeats. Defaults to <code>false</code></dd>
+     * <dt>{@link #LOG_FILE_TIMESTAMP_INDEX}</dt>
+     * <dd>If <code>true</code> a sparse index of the event timestamps is kept next
+     * to each log file to locate time ranges without scanning the files. Defaults
+     * to <code>false</code>. If the writer writes standard output this property is
+     * ignored.</dd>
+     * <dt>{@link #LOG_ASYNC}</dt>
+     * <dd>If <code>true</code> events are queued and written to the file or
+     * standard output by a dedicated thread. Defaults to <code>false</code></dd>
+     * <dt>{@link #LOG_ASYNC_QUEUE_SIZE}</dt>
+     * <dd>Number of events which can be queued in async mode. Defaults to
+     * {@link #LOG_ASYNC_QUEUE_SIZE_DEFAULT}</dd>
+     * <dt>{@link #LOG_ASYNC_OVERFLOW}</dt>
+     * <dd>Action taken in async mode if the queue is full. One of
+     * <code>block</code>, <code>drop_debug</code> or <code>drop_all</code>.
+     * Defaults to <code>drop_debug</code></dd>
      * </dl>
      *
      * @param pid The identifier of the log writer to update or remove
@@ -317,6 +459,8 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
     public void updateLogWriter(String pid, Dictionary<?, ?> configuration,boolean performRefresh)
             throws ConfigurationException {
 
+        String oldFileName = null;
+        String newFileName = null;
         if (configuration != null) {
             LogWriter oldWriter = writerByPid.get(pid);
 
@@ -350,17 +494,7 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
             }
 
             // get number of files and ensure minimum and default
-            Object fileNumProp = configuration.get(LogConfigManager.LOG_FILE_NUMBER);
-            int fileNum = -1;
-            if (fileNumProp instanceof Number) {
-                fileNum = ((Number) fileNumProp).intValue();
-            } else if (fileNumProp != null) {
-                try {
-                    fileNum = Integer.parseInt(fileNumProp.toString());
-                } catch (NumberFormatException nfe) {
-                    // don't care
-                }
-            }
+            int fileNum = Util.toInt(configuration.get(LogConfigManager.LOG_FILE_NUMBER), -1);
 
             // get the log file size
             Object fileSizeProp = configuration.get(LogConfigManager.LOG_FILE_SIZE);
@@ -370,12 +504,24 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
             }
 
             LogWriter newWriter = new LogWriter(pid,logFileName,fileNum,fileSize);
+            configureFileType(newWriter, configuration);
+            configureRolling(newWriter, configuration);
+            configureFlush(newWriter, configuration);
+            newWriter.setCompress(Util.toBoolean(configuration.get(LogConfigManager.LOG_FILE_COMPRESS), false));
+            configureTotalSizeCap(newWriter, configuration);
+            newWriter.setCollapseRepeats(
+                    Util.toBoolean(configuration.get(LogConfigManager.LOG_FILE_COLLAPSE_REPEATS), false));
+            newWriter.setTimestampIndexed(
+                    Util.toBoolean(configuration.get(LogConfigManager.LOG_FILE_TIMESTAMP_INDEX), false));
+            configureAsync(newWriter, configuration);
             if(oldWriter != null){
                 writerByFileName.remove(oldWriter.getFileName());
+                oldFileName = oldWriter.getFileName();
             }
 
             writerByFileName.put(newWriter.getFileName(), newWriter);
             writerByPid.put(newWriter.getConfigurationPID(),newWriter);
+            newFileName = newWriter.getFileName();
 
         } else {
 
@@ -383,11 +529,12 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
 
             if (logWriter != null) {
                 writerByFileName.remove(logWriter.getFileName());
+                oldFileName = logWriter.getFileName();
             }
         }
 
         if(performRefresh){
-            logbackManager.configChanged();
+            logbackManager.configChanged(new LogWriterChange(pid, oldFileName, newFileName));
         }
     }
 
@@ -433,6 +580,8 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
     public void updateLoggerConfiguration(String pid,
             Dictionary<?, ?> configuration, boolean performRefresh) throws ConfigurationException {
 
+        LogConfig oldConfig;
+        LogConfig newConfig = null;
         if (configuration != null) {
 
             String pattern = (String) configuration.get(LogConfigManager.LOG_PATTERN);
@@ -479,8 +628,8 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
             }
 
             // create or modify existing configuration object
-            LogConfig newConfig = new LogConfig(this, pattern, categories, logLevel, fileName, pid, loggerContext);
-            LogConfig oldConfig = configByPid.get(pid);
+            newConfig = new LogConfig(this, pattern, categories, logLevel, fileName, pid, loggerContext);
+            oldConfig = configByPid.get(pid);
             if(oldConfig != null){
                 configByCategory.keySet().removeAll(oldConfig.getCategories());
             }
@@ -497,17 +646,336 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
             // configuration deleted if null
 
             // remove configuration from pid list
-            LogConfig config = configByPid.remove(pid);
+            oldConfig = configByPid.remove(pid);
 
-            if (config != null) {
+            if (oldConfig != null) {
                 // remove all configured categories
-                configByCategory.keySet().removeAll(config.getCategories());
+                configByCategory.keySet().removeAll(oldConfig.getCategories());
             }
 
         }
 
         if(performRefresh){
-            logbackManager.configChanged();
+            logbackManager.configChanged(new LoggerConfigChange(pid, oldConfig, newConfig));
+        }
+    }
+
+    /**
+     * Updates or removes the rate limits of the given configuration. Supported
+     * properties are
+     * <dl>
+     * <dt>{@link LogConfigManager#LOG_LOGGERS}</dt>
+     * <dd>The categories to which the limits apply. Each category gets its own
+     * limit shared by all loggers below it unless a more specific category has
+     * a limit. Required.</dd>
+     * <dt>{@link LogConfigManager#LOG_LEVEL}</dt>
+     * <dd>The most severe level limited. Events of this level and less severe ones
+     * are limited. Defaults to <code>error</code> limiting all events.</dd>
+     * <dt>{@link LogConfigManager#LOG_RATE_LIMIT}</dt>
+     * <dd>Max number of events per second.</dd>
+     * <dt>{@link LogConfigManager#LOG_SAMPLE_PERCENT}</dt>
+     * <dd>Percentage of events passed. Every nth event is passed.</dd>
+     * </dl>
+     * At least one of rate limit and sample percentage is required.
+     *
+     * @param pid The name of the configuration to update or remove.
+     * @param configuration The configuration object. Null if the configuration
+     *                      got deleted
+     */
+    public synchronized void updateRateLimitConfiguration(String pid, Dictionary<?, ?> configuration)
+            throws ConfigurationException {
+        if (configuration == null) {
+            rateLimitsByPid.remove(pid);
+            applyRateLimits();
+            return;
+        }
+
+        Set<String> categories = toCategoryList(configuration.get(LogConfigManager.LOG_LOGGERS));
+        if (categories == null || categories.isEmpty()) {
+            throw new ConfigurationException(LogConfigManager.LOG_LOGGERS,
+                    "Missing categories in configuration " + pid);
+        }
+
+        // verify no other configuration has any of the categories
+        for (Map.Entry<String, List<RateLimitFilter.RateLimit>> e : rateLimitsByPid.entrySet()) {
+            if (pid.equals(e.getKey())) {
+                continue;
+            }
+            for (RateLimitFilter.RateLimit limit : e.getValue()) {
+                if (categories.contains(limit.getCategory())) {
+                    throw new ConfigurationException(LogConfigManager.LOG_LOGGERS,
+                            "Category " + limit.getCategory()
+                                    + " already limited by configuration " + e.getKey());
+                }
+            }
+        }
+
+        Object level = configuration.get(LogConfigManager.LOG_LEVEL);
+        Level logLevel = Level.ERROR;
+        if (level != null) {
+            logLevel = Level.toLevel(level.toString(), null);
+            if (logLevel == null) {
+                throw new ConfigurationException(LogConfigManager.LOG_LEVEL,
+                        "Unsupported value: " + level);
+            }
+        }
+
+        double rate = Util.toDouble(configuration.get(LogConfigManager.LOG_RATE_LIMIT), 0);
+        double samplePercent = Util.toDouble(configuration.get(LogConfigManager.LOG_SAMPLE_PERCENT), 100);
+        if (samplePercent <= 0 || samplePercent > 100) {
+            throw new ConfigurationException(LogConfigManager.LOG_SAMPLE_PERCENT,
+                    "Value must be greater than 0 and at most 100: " + samplePercent);
+        }
+        if (rate <= 0 && samplePercent >= 100) {
+            throw new ConfigurationException(LogConfigManager.LOG_RATE_LIMIT,
+                    "Either a rate limit or a sample percentage is required in configuration " + pid);
+        }
+
+        List<RateLimitFilter.RateLimit> limits = new ArrayList<RateLimitFilter.RateLimit>();
+        for (String category : categories) {
+            limits.add(new RateLimitFilter.RateLimit(category, logLevel, rate, samplePercent));
+        }
+        rateLimitsByPid.put(pid, limits);
+        applyRateLimits();
+    }
+
+    public RateLimitFilter getRateLimitFilter() {
+        return rateLimitFilter;
+    }
+
+    private void applyRateLimits() {
+        List<RateLimitFilter.RateLimit> limits = new ArrayList<RateLimitFilter.RateLimit>();
+        for (List<RateLimitFilter.RateLimit> l : rateLimitsByPid.values()) {
+            limits.addAll(l);
+        }
+        rateLimitFilter.setLimits(limits);
+        installRateLimitFilter();
+    }
+
+    /**
+     * Adds the rate limit filter to the context if any limit is configured and
+     * removes it otherwise
+     */
+    private synchronized void installRateLimitFilter() {
+        List<TurboFilter> filters = loggerContext.getTurboFilterList();
+        if (rateLimitFilter.isEmpty()) {
+            filters.remove(rateLimitFilter);
+            return;
+        }
+
+        if (!rateLimitFilter.isStarted()) {
+            rateLimitFilter.start();
+        }
+        if (!filters.contains(rateLimitFilter)) {
+            loggerContext.addTurboFilter(rateLimitFilter);
+        }
+    }
+
+    // ---------- Incremental reconfiguration ----------------------------------
+
+    /**
+     * Applies the change of a logger configuration to the affected loggers only.
+     * Levels are set directly, loggers of dropped categories are reset and the
+     * config is moved between the encoders of the old and new writer.
+     *
+     * @return false if the change requires a reset of the LoggerContext
+     */
+    private boolean applyLoggerConfigChange(LogConfig oldConfig, LogConfig newConfig) {
+        Appender<ILoggingEvent> oldAppender = null;
+        LoggerSpecificEncoder oldEncoder = null;
+        if (oldConfig != null && oldConfig.isAppenderDefined()) {
+            oldAppender = appenderByWriterName.get(oldConfig.getLogWriterName());
+            oldEncoder = encoderByWriterName.get(oldConfig.getLogWriterName());
+            if (oldAppender == null || oldEncoder == null) {
+                //Not created by the last reset. State of loggers is not known
+                return false;
+            }
+        }
+
+        Appender<ILoggingEvent> newAppender = null;
+        LoggerSpecificEncoder newEncoder = null;
+        if (newConfig != null && newConfig.isAppenderDefined()) {
+            LogWriter lw = newConfig.getLogWriter();
+            newAppender = getOrCreateAppender(lw);
+            newEncoder = encoderByWriterName.get(lw.getFileName());
+        }
+
+        //Update the layouts before the appender gets attached to new categories
+        Layout<ILoggingEvent> layout = newConfig != null ? layoutRegistry.getLayout(newConfig) : null;
+        if (oldEncoder != null && oldEncoder == newEncoder) {
+            oldEncoder.updateLogConfig(oldConfig, newConfig, layout);
+        } else {
+            if (newEncoder != null) {
+                newEncoder.addLogConfig(newConfig, layout);
+            }
+            if (oldEncoder != null) {
+                oldEncoder.updateLogConfig(oldConfig, null, null);
+            }
+        }
+
+        if (oldConfig != null) {
+            for (String category : oldConfig.getCategories()) {
+                if (newConfig == null || !newConfig.getCategories().contains(category)) {
+                    ch.qos.logback.classic.Logger logger = loggerContext.getLogger(category);
+                    if (!Logger.ROOT_LOGGER_NAME.equals(category)) {
+                        logger.setLevel(null);
+                    }
+                    if (oldAppender != null) {
+                        logger.detachAppender(oldAppender);
+                    }
+                }
+            }
+        }
+
+        if (newConfig != null) {
+            for (String category : newConfig.getCategories()) {
+                ch.qos.logback.classic.Logger logger = loggerContext.getLogger(category);
+                logger.setLevel(newConfig.getLogLevel());
+                if (oldAppender != null && oldAppender != newAppender) {
+                    logger.detachAppender(oldAppender);
+                }
+                if (newAppender != null && !logger.isAttached(newAppender)) {
+                    logger.addAppender(newAppender);
+                }
+            }
+        }
+
+        if (oldConfig != null && oldConfig.isAppenderDefined()) {
+            stopIfUnused(oldConfig.getLogWriterName());
+        }
+        layoutRegistry.retain(configByPid.values());
+        return true;
+    }
+
+    /**
+     * Replaces the appenders of the given writers with new ones created from the
+     * current writer configuration. Only loggers of configs referring to the
+     * writers are touched. The old appender is stopped before its replacement
+     * opens the file so that the file is never written by two appenders.
+     *
+     * @return false if the change requires a reset of the LoggerContext
+     */
+    private boolean applyLogWriterChange(String... writerNames) {
+        for (String writerName : writerNames) {
+            if (writerName == null) {
+                continue;
+            }
+
+            List<LogConfig> configs = new ArrayList<LogConfig>();
+            for (LogConfig config : getLogConfigs()) {
+                if (writerName.equals(config.getLogWriterName())) {
+                    configs.add(config);
+                }
+            }
+
+            Appender<ILoggingEvent> oldAppender = appenderByWriterName.remove(writerName);
+            encoderByWriterName.remove(writerName);
+            if (!configs.isEmpty()) {
+                if (oldAppender == null) {
+                    //Configs referring to the writer must have got an appender upon reset
+                    return false;
+                }
+
+                //The old appender must release the file before the new one opens it. Two
+                //appenders writing the same file corrupt it, in particular if mapped. Events
+                //logged in between only reach the appenders of the parent loggers
+                for (LogConfig config : configs) {
+                    for (String category : config.getCategories()) {
+                        loggerContext.getLogger(category).detachAppender(oldAppender);
+                    }
+                }
+                oldAppender.stop();
+
+                //Appender of an implicit writer if the writer config got removed
+                LogWriter lw = getLogWriter(writerName);
+                Appender<ILoggingEvent> appender = getOrCreateAppender(lw);
+                LoggerSpecificEncoder encoder = encoderByWriterName.get(lw.getFileName());
+                for (LogConfig config : configs) {
+                    encoder.addLogConfig(config, layoutRegistry.getLayout(config));
+                }
+
+                for (LogConfig config : configs) {
+                    for (String category : config.getCategories()) {
+                        loggerContext.getLogger(category).addAppender(appender);
+                    }
+                }
+            } else if (oldAppender != null) {
+                oldAppender.stop();
+            }
+        }
+        return true;
+    }
+
+    private Appender<ILoggingEvent> getOrCreateAppender(LogWriter lw) {
+        Appender<ILoggingEvent> appender = appenderByWriterName.get(lw.getFileName());
+        if (appender == null) {
+            LoggerSpecificEncoder encoder = new LoggerSpecificEncoder(getDefaultLayout());
+            appender = lw.createAppender(loggerContext, encoder);
+            encoderByWriterName.put(lw.getFileName(), encoder);
+            appenderByWriterName.put(lw.getFileName(), appender);
+        }
+        return appender;
+    }
+
+    /**
+     * Stops the appender of the given writer if no config refers to the writer anymore
+     */
+    private void stopIfUnused(String writerName) {
+        for (LogConfig config : getLogConfigs()) {
+            if (writerName.equals(config.getLogWriterName())) {
+                return;
+            }
+        }
+
+        Appender<ILoggingEvent> appender = appenderByWriterName.remove(writerName);
+        encoderByWriterName.remove(writerName);
+        if (appender != null) {
+            appender.stop();
+        }
+    }
+
+    private class LoggerConfigChange implements LogbackManager.ConfigChange {
+        private final String pid;
+        private final LogConfig oldConfig;
+        private final LogConfig newConfig;
+
+        LoggerConfigChange(String pid, LogConfig oldConfig, LogConfig newConfig) {
+            this.pid = pid;
+            this.oldConfig = oldConfig;
+            this.newConfig = newConfig;
+        }
+
+        public boolean apply() {
+            return applyLoggerConfigChange(oldConfig, newConfig);
+        }
+
+        @Override
+        public String toString() {
+            return "logger config change [" + pid + "]";
+        }
+    }
+
+    private class LogWriterChange implements LogbackManager.ConfigChange {
+        private final String pid;
+        private final String oldFileName;
+        private final String newFileName;
+
+        LogWriterChange(String pid, String oldFileName, String newFileName) {
+            this.pid = pid;
+            this.oldFileName = oldFileName;
+            this.newFileName = newFileName;
+        }
+
+        public boolean apply() {
+            if (oldFileName != null && oldFileName.equals(newFileName)) {
+                return applyLogWriterChange(oldFileName);
+            }
+            return applyLogWriterChange(oldFileName, newFileName);
+        }
+
+        @Override
+        public String toString() {
+            return "log writer change [" + pid + "]";
         }
     }
 
@@ -518,7 +986,10 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
         Dictionary<String, String> config = new Hashtable<String, String>();
 
         final String[] props = { LOG_LEVEL, LOG_LEVEL, LOG_FILE,
-                LOG_FILE_NUMBER, LOG_FILE_SIZE, LOG_PATTERN, LOGBACK_FILE };
+                LOG_FILE_NUMBER, LOG_FILE_SIZE, LOG_PATTERN, LOGBACK_FILE,
+                LOG_FILE_TYPE, LOG_FILE_ROLLING, LOG_FILE_FLUSH_BYTES, LOG_FILE_FLUSH_INTERVAL, LOG_FILE_FLUSH_ON_ERROR,
+                LOG_FILE_TOTAL_SIZE_CAP, LOG_FILE_COMPRESS, LOG_FILE_COLLAPSE_REPEATS, LOG_FILE_TIMESTAMP_INDEX,
+                LOG_ASYNC, LOG_ASYNC_QUEUE_SIZE, LOG_ASYNC_OVERFLOW };
         for (String prop : props) {
             String value = bundleContext.getProperty(prop);
             if (value != null) {
@@ -558,7 +1029,95 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
         if(defaultWriter == null){
             throw new IllegalStateException("Default logger configuration must have been configured by now");
         }
-        return new LogWriter(logWriterName,defaultWriter.getLogNumber(),defaultWriter.getLogRotation());
+        LogWriter lw = new LogWriter(logWriterName,defaultWriter.getLogNumber(),defaultWriter.getLogRotation());
+        lw.setAsyncQueueSize(defaultWriter.getAsyncQueueSize());
+        lw.setAsyncOverflowPolicy(defaultWriter.getAsyncOverflowPolicy());
+        lw.setFlushPolicy(defaultWriter.getFlushInterval(), defaultWriter.getFlushBytes(),
+                defaultWriter.isFlushOnError());
+        lw.setMemoryMapped(defaultWriter.isMemoryMapped());
+        lw.setSequenceRolling(defaultWriter.isSequenceRolling());
+        lw.setCompress(defaultWriter.isCompress());
+        lw.setMaxTotalSize(defaultWriter.getMaxTotalSize());
+        lw.setCollapseRepeats(defaultWriter.isCollapseRepeats());
+        lw.setTimestampIndexed(defaultWriter.isTimestampIndexed());
+        return lw;
+    }
+
+    private void configureFileType(LogWriter writer, Dictionary<?, ?> configuration) {
+        Object type = configuration.get(LogConfigManager.LOG_FILE_TYPE);
+        if (type == null) {
+            return;
+        }
+
+        String fileType = type.toString().trim();
+        if (LOG_FILE_TYPE_MMAP.equalsIgnoreCase(fileType)) {
+            writer.setMemoryMapped(true);
+        } else if (!LOG_FILE_TYPE_STREAM.equalsIgnoreCase(fileType) && fileType.length() > 0) {
+            log.warn("Unknown log file type [{}] for writer {}. Using {}",
+                    new Object[]{fileType, writer.getFileName(), LOG_FILE_TYPE_STREAM});
+        }
+    }
+
+    private void configureRolling(LogWriter writer, Dictionary<?, ?> configuration) {
+        Object rolling = configuration.get(LogConfigManager.LOG_FILE_ROLLING);
+        if (rolling == null) {
+            return;
+        }
+
+        String scheme = rolling.toString().trim();
+        if (LOG_FILE_ROLLING_SEQUENCE.equalsIgnoreCase(scheme)) {
+            writer.setSequenceRolling(true);
+        } else if (!LOG_FILE_ROLLING_WINDOW.equalsIgnoreCase(scheme) && scheme.length() > 0) {
+            log.warn("Unknown rolling scheme [{}] for writer {}. Using {}",
+                    new Object[]{scheme, writer.getFileName(), LOG_FILE_ROLLING_WINDOW});
+        }
+    }
+
+    private void configureTotalSizeCap(LogWriter writer, Dictionary<?, ?> configuration) {
+        Object cap = configuration.get(LogConfigManager.LOG_FILE_TOTAL_SIZE_CAP);
+        if (cap == null || cap.toString().trim().length() == 0) {
+            return;
+        }
+
+        long maxTotalSize = LogWriter.parseSize(cap.toString());
+        if (maxTotalSize < 0) {
+            log.warn("Invalid total size cap [{}] for writer {}. Ignoring it",
+                    cap, writer.getFileName());
+            return;
+        }
+        writer.setMaxTotalSize(maxTotalSize);
+    }
+
+    private static void configureFlush(LogWriter writer, Dictionary<?, ?> configuration) {
+        int flushBytes = Util.toInt(configuration.get(LogConfigManager.LOG_FILE_FLUSH_BYTES), 0);
+        long flushInterval = Util.toInt(configuration.get(LogConfigManager.LOG_FILE_FLUSH_INTERVAL), 0);
+        if (flushBytes <= 0 && flushInterval <= 0) {
+            return;
+        }
+
+        //Bound the time for which data stays in the buffer
+        if (flushInterval <= 0) {
+            flushInterval = LOG_FILE_FLUSH_INTERVAL_DEFAULT;
+        }
+        boolean flushOnError = Util.toBoolean(configuration.get(LogConfigManager.LOG_FILE_FLUSH_ON_ERROR), true);
+        writer.setFlushPolicy(flushInterval, flushBytes, flushOnError);
+    }
+
+    private static void configureAsync(LogWriter writer, Dictionary<?, ?> configuration) {
+        if (!Util.toBoolean(configuration.get(LogConfigManager.LOG_ASYNC), false)) {
+            return;
+        }
+
+        int queueSize = Util.toInt(configuration.get(LogConfigManager.LOG_ASYNC_QUEUE_SIZE),
+                LOG_ASYNC_QUEUE_SIZE_DEFAULT);
+        if (queueSize <= 0) {
+            queueSize = LOG_ASYNC_QUEUE_SIZE_DEFAULT;
+        }
+        writer.setAsyncQueueSize(queueSize);
+
+        Object overflow = configuration.get(LogConfigManager.LOG_ASYNC_OVERFLOW);
+        writer.setAsyncOverflowPolicy(SlingAsyncAppender.OverflowPolicy.fromString(
+                overflow != null ? overflow.toString() : null, LOG_ASYNC_OVERFLOW_DEFAULT));
     }
 
     private LogWriter getDefaultWriter() {
@@ -570,7 +1129,7 @@ public class LogConfigManager implements LogbackResetListener, LogConfig.LogWrit
     }
 
     private Layout<ILoggingEvent> getDefaultLayout(){
-        return getDefaultConfig().createLayout();
+        return layoutRegistry.getLayout(getDefaultConfig());
     }
 
     private Iterable<LogConfig> getLogConfigs() {
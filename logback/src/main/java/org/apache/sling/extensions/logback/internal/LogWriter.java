@@ -18,6 +18,8 @@
  */
 package org.apache.sling.extensions.logback.internal;
 
+import java.io.File;
+import java.nio.charset.Charset;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,10 +29,21 @@ import ch.qos.logback.core.ConsoleAppender;
 import ch.qos.logback.core.Context;
 import ch.qos.logback.core.OutputStreamAppender;
 import ch.qos.logback.core.encoder.Encoder;
-import ch.qos.logback.core.rolling.FixedWindowRollingPolicy;
+import ch.qos.logback.core.pattern.PatternLayoutBase;
 import ch.qos.logback.core.rolling.SizeBasedTriggeringPolicy;
-import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
+import ch.qos.logback.core.rolling.TriggeringPolicyBase;
+import org.apache.sling.extensions.logback.internal.util.AppenderMetrics;
+import org.apache.sling.extensions.logback.internal.util.BackgroundCompressor;
+import org.apache.sling.extensions.logback.internal.util.LoggerSpecificEncoder;
+import org.apache.sling.extensions.logback.internal.util.RetentionManager;
+import org.apache.sling.extensions.logback.internal.util.RotatedFileIndex;
+import org.apache.sling.extensions.logback.internal.util.SlingAsyncAppender;
+import org.apache.sling.extensions.logback.internal.util.SlingFixedWindowRollingPolicy;
 import org.apache.sling.extensions.logback.internal.util.SlingRollingFileAppender;
+import org.apache.sling.extensions.logback.internal.util.SlingSequenceRollingPolicy;
+import org.apache.sling.extensions.logback.internal.util.SlingSizeBasedTriggeringPolicy;
+import org.apache.sling.extensions.logback.internal.util.SlingTimeBasedRollingPolicy;
+import org.apache.sling.extensions.logback.internal.util.TimestampIndex;
 
 /**
  * The <code>LogWriter</code> class encapsulates the OSGi configuration for a
@@ -69,6 +82,72 @@ public class LogWriter {
 
     private final String logRotation;
 
+    /**
+     * Size of the buffer used to write events asynchronously. Zero if the events
+     * are written synchronously
+     */
+    private int asyncQueueSize;
+
+    private SlingAsyncAppender.OverflowPolicy asyncOverflowPolicy = LogConfigManager.LOG_ASYNC_OVERFLOW_DEFAULT;
+
+    /**
+     * Interval in millis after which buffered data is flushed. Zero if every event is
+     * flushed immediately
+     */
+    private long flushInterval;
+
+    private int flushBytes;
+
+    private boolean flushOnError = true;
+
+    /**
+     * True if the log file is written through a memory mapped region
+     */
+    private boolean memoryMapped;
+
+    /**
+     * True if consecutive identical events are collapsed
+     */
+    private boolean collapseRepeats;
+
+    /**
+     * True if size based rolling names the rolled over files by an increasing sequence
+     * number instead of shifting a fixed window of files
+     */
+    private boolean sequenceRolling;
+
+    /**
+     * True if rolled over log files are compressed in the background
+     */
+    private boolean compress;
+
+    /**
+     * True if a timestamp index is kept next to the log files
+     */
+    private boolean timestampIndexed;
+
+    /**
+     * Timestamp index of the log files. Created along with the first appender if enabled
+     */
+    private TimestampIndex timestampIndex;
+
+    /**
+     * Metrics of the appenders created for this writer. Kept here so that they
+     * are not lost when the appender gets recreated upon a reset
+     */
+    private final AppenderMetrics metrics = new AppenderMetrics();
+
+    /**
+     * Index of the rolled over files. Null for console writers
+     */
+    private final RotatedFileIndex rotatedFileIndex;
+
+    /**
+     * Max total size of the rolled over files in bytes. Zero if only the number of
+     * files is limited
+     */
+    private long maxTotalSize;
+
     public LogWriter(String configurationPID, String fileName, int logNumber, String logRotation) {
         if(fileName == null || fileName.length() == 0){
             fileName = FILE_NAME_CONSOLE;
@@ -86,6 +165,7 @@ public class LogWriter {
         this.fileName = fileName;
         this.logNumber = logNumber;
         this.logRotation = logRotation;
+        this.rotatedFileIndex = FILE_NAME_CONSOLE.equals(fileName) ? null : new RotatedFileIndex(new File(fileName));
     }
 
     public LogWriter(String fileName, int logNumber, String logRotation) {
@@ -112,6 +192,114 @@ public class LogWriter {
         return configurationPID == null;
     }
 
+    public boolean isAsync() {
+        return asyncQueueSize > 0;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = Math.max(0, asyncQueueSize);
+    }
+
+    public SlingAsyncAppender.OverflowPolicy getAsyncOverflowPolicy() {
+        return asyncOverflowPolicy;
+    }
+
+    public void setAsyncOverflowPolicy(SlingAsyncAppender.OverflowPolicy asyncOverflowPolicy) {
+        this.asyncOverflowPolicy = asyncOverflowPolicy;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    public void setMaxTotalSize(long maxTotalSize) {
+        this.maxTotalSize = Math.max(0, maxTotalSize);
+    }
+
+    /**
+     * @return null if the writer writes standard output
+     */
+    public RotatedFileIndex getRotatedFileIndex() {
+        return rotatedFileIndex;
+    }
+
+    public boolean isSequenceRolling() {
+        return sequenceRolling;
+    }
+
+    public void setSequenceRolling(boolean sequenceRolling) {
+        this.sequenceRolling = sequenceRolling;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public boolean isCollapseRepeats() {
+        return collapseRepeats;
+    }
+
+    public void setCollapseRepeats(boolean collapseRepeats) {
+        this.collapseRepeats = collapseRepeats;
+    }
+
+    public boolean isTimestampIndexed() {
+        return timestampIndexed;
+    }
+
+    public void setTimestampIndexed(boolean timestampIndexed) {
+        this.timestampIndexed = timestampIndexed;
+    }
+
+    /**
+     * Returns true if log file data is flushed in groups instead of per event
+     */
+    public boolean isBufferedFlush() {
+        return flushInterval > 0;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public int getFlushBytes() {
+        return flushBytes;
+    }
+
+    public boolean isFlushOnError() {
+        return flushOnError;
+    }
+
+    /**
+     * Configures group flushing of the log file. Data is flushed once flushBytes
+     * got written or flushInterval millis passed, whichever comes first
+     *
+     * @param flushInterval interval in millis. Zero or less to flush every event
+     * @param flushBytes byte threshold. Zero or less to only flush based on time
+     * @param flushOnError true if ERROR events should be flushed immediately
+     */
+    public void setFlushPolicy(long flushInterval, int flushBytes, boolean flushOnError) {
+        this.flushInterval = Math.max(0, flushInterval);
+        this.flushBytes = Math.max(0, flushBytes);
+        this.flushOnError = flushOnError;
+    }
+
     public Appender<ILoggingEvent> createAppender(final Context context, final Encoder<ILoggingEvent> encoder) {
 
         OutputStreamAppender<ILoggingEvent> appender;
@@ -122,59 +310,56 @@ public class LogWriter {
             SlingRollingFileAppender<ILoggingEvent> rollingAppender = new SlingRollingFileAppender<ILoggingEvent>();
             rollingAppender.setAppend(true);
             rollingAppender.setFile(getFileName());
+            rollingAppender.setMemoryMapped(memoryMapped);
+
+            rotatedFileIndex.setMaxTotalSize(maxTotalSize);
+            RetentionManager retentionManager = RetentionManager.getInstance(context);
+            if (retentionManager != null) {
+                retentionManager.register(rotatedFileIndex);
+            }
 
             Matcher sizeMatcher = SIZE_SPEC.matcher(getLogRotation());
             if (sizeMatcher.matches()) {
-                // group 1 is the base size and is an integer number
-                final long baseSize = Long.parseLong(sizeMatcher.group(1));
-
-                // this will take the final size value
-                final long maxSize;
-
-                // group 2 is optional and is the size spec. If not null it is
-                // at least one character long and the first character is enough
-                // for use to know (the second is of no use here)
-                final String factorString = sizeMatcher.group(2);
-                if (factorString == null) {
-                    // no factor define, hence no multiplication
-                    maxSize = baseSize;
+                final long maxSize = toBytes(sizeMatcher);
+
+                TriggeringPolicyBase<ILoggingEvent> triggeringPolicy;
+                if (memoryMapped) {
+                    //File length of a mapped file includes the padding of the mapped region
+                    triggeringPolicy = new SlingSizeBasedTriggeringPolicy<ILoggingEvent>(rollingAppender, maxSize);
                 } else {
-                    switch (factorString.charAt(0)) {
-                        case 'k':
-                        case 'K':
-                            maxSize = baseSize * FACTOR_KB;
-                            break;
-                        case 'm':
-                        case 'M':
-                            maxSize = baseSize * FACTOR_MB;
-                            break;
-                        case 'g':
-                        case 'G':
-                            maxSize = baseSize * FACTOR_GB;
-                            break;
-                        default:
-                            // we don't really expect this according to the
-                            // pattern
-                            maxSize = baseSize;
-                    }
+                    SizeBasedTriggeringPolicy<ILoggingEvent> sizePolicy = new SizeBasedTriggeringPolicy<ILoggingEvent>();
+                    sizePolicy.setMaxFileSize(String.valueOf(maxSize));
+                    triggeringPolicy = sizePolicy;
                 }
-
-                SizeBasedTriggeringPolicy<ILoggingEvent> triggeringPolicy = new SizeBasedTriggeringPolicy<ILoggingEvent>();
-                triggeringPolicy.setMaxFileSize(String.valueOf(maxSize));
                 triggeringPolicy.setContext(context);
                 triggeringPolicy.start();
                 rollingAppender.setTriggeringPolicy(triggeringPolicy);
 
-                FixedWindowRollingPolicy pol = new FixedWindowRollingPolicy();
-                pol.setMinIndex(1);
-                pol.setMaxIndex(getLogNumber());
-                pol.setFileNamePattern(getFileName() + "%i");
-                pol.setContext(context);
-                pol.setParent(rollingAppender);
-                pol.start();
-                rollingAppender.setRollingPolicy(pol);
+                if (sequenceRolling) {
+                    SlingSequenceRollingPolicy pol = new SlingSequenceRollingPolicy();
+                    pol.setCompress(compress);
+                    pol.setIndex(rotatedFileIndex);
+                    pol.setMaxCount(getLogNumber());
+                    pol.setContext(context);
+                    pol.setParent(rollingAppender);
+                    pol.start();
+                    rollingAppender.setRollingPolicy(pol);
+                } else {
+                    SlingFixedWindowRollingPolicy pol = new SlingFixedWindowRollingPolicy();
+                    pol.setCompress(compress);
+                    pol.setIndex(rotatedFileIndex);
+                    pol.setMinIndex(1);
+                    pol.setMaxIndex(getLogNumber());
+                    pol.setFileNamePattern(getFileName() + "%i");
+                    pol.setContext(context);
+                    pol.setParent(rollingAppender);
+                    pol.start();
+                    rollingAppender.setRollingPolicy(pol);
+                }
             } else {
-                TimeBasedRollingPolicy<ILoggingEvent> policy = new TimeBasedRollingPolicy<ILoggingEvent>();
+                SlingTimeBasedRollingPolicy<ILoggingEvent> policy = new SlingTimeBasedRollingPolicy<ILoggingEvent>();
+                policy.setCompress(compress);
+                policy.setIndex(rotatedFileIndex);
                 policy.setFileNamePattern(createFileNamePattern(getFileName(),getLogRotation()));
                 policy.setMaxHistory(getLogNumber());
                 policy.setContext(context);
@@ -183,6 +368,15 @@ public class LogWriter {
                 rollingAppender.setTriggeringPolicy(policy);
             }
 
+            if (isBufferedFlush() && encoder instanceof LoggerSpecificEncoder) {
+                ((LoggerSpecificEncoder) encoder).setFlushPolicy(flushBytes, flushOnError);
+                rollingAppender.setFlushInterval(flushInterval);
+            }
+
+            if (timestampIndexed && encoder instanceof LoggerSpecificEncoder) {
+                rollingAppender.setTimestampIndex(getTimestampIndex(context, (LoggerSpecificEncoder) encoder));
+            }
+
             rollingAppender.setLogWriter(this);
             rollingAppender.setName(getFileName());
 
@@ -190,12 +384,98 @@ public class LogWriter {
         }
 
 
+        if (encoder instanceof LoggerSpecificEncoder) {
+            ((LoggerSpecificEncoder) encoder).setMetrics(metrics);
+            ((LoggerSpecificEncoder) encoder).setCollapseRepeats(collapseRepeats);
+        }
+
         appender.setContext(context);
         appender.setEncoder(encoder);
         appender.start();
+
+        if (isAsync()) {
+            SlingAsyncAppender asyncAppender = new SlingAsyncAppender(appender, asyncQueueSize, asyncOverflowPolicy);
+            asyncAppender.setContext(context);
+            asyncAppender.start();
+            return asyncAppender;
+        }
         return appender;
     }
 
+    /**
+     * Returns the timestamp index. The date pattern used for rebuilding sidecars is
+     * taken from the default layout of the encoder. The index is recreated if the
+     * pattern changed
+     */
+    private synchronized TimestampIndex getTimestampIndex(Context context, LoggerSpecificEncoder encoder) {
+        String datePattern = null;
+        if (encoder.getDefaultLayout() instanceof PatternLayoutBase) {
+            datePattern = TimestampIndex.getDatePattern(
+                    ((PatternLayoutBase<?>) encoder.getDefaultLayout()).getPattern());
+        }
+        if (timestampIndex == null || (datePattern == null ? timestampIndex.getDatePattern() != null
+                : !datePattern.equals(timestampIndex.getDatePattern()))) {
+            Charset charset = encoder.getCharset() != null ? encoder.getCharset() : Charset.defaultCharset();
+            BackgroundCompressor compressor = BackgroundCompressor.getInstance(context);
+            timestampIndex = new TimestampIndex(datePattern, charset,
+                    compressor != null ? compressor.newSerialExecutor() : null);
+        }
+        return timestampIndex;
+    }
+
+    public AppenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Parses a size specification like <code>10MB</code> or <code>1g</code> into
+     * bytes. Returns -1 if the value is null or not a size specification
+     */
+    public static long parseSize(String spec) {
+        if (spec == null) {
+            return -1;
+        }
+        Matcher sizeMatcher = SIZE_SPEC.matcher(spec.trim());
+        return sizeMatcher.matches() ? toBytes(sizeMatcher) : -1;
+    }
+
+    private static long toBytes(Matcher sizeMatcher) {
+        // group 1 is the base size and is an integer number
+        final long baseSize = Long.parseLong(sizeMatcher.group(1));
+
+        // this will take the final size value
+        final long maxSize;
+
+        // group 2 is optional and is the size spec. If not null it is
+        // at least one character long and the first character is enough
+        // for use to know (the second is of no use here)
+        final String factorString = sizeMatcher.group(2);
+        if (factorString == null) {
+            // no factor define, hence no multiplication
+            maxSize = baseSize;
+        } else {
+            switch (factorString.charAt(0)) {
+                case 'k':
+                case 'K':
+                    maxSize = baseSize * FACTOR_KB;
+                    break;
+                case 'm':
+                case 'M':
+                    maxSize = baseSize * FACTOR_MB;
+                    break;
+                case 'g':
+                case 'G':
+                    maxSize = baseSize * FACTOR_GB;
+                    break;
+                default:
+                    // we don't really expect this according to the
+                    // pattern
+                    maxSize = baseSize;
+            }
+        }
+        return maxSize;
+    }
+
     public static String createFileNamePattern(String fileName,String pattern){
         //Default file name pattern "'.'yyyy-MM-dd"
         //http://sling.apache.org/site/logging.html#Logging-ScheduledRotation
@@ -219,6 +499,17 @@ public class LogWriter {
                 ", fileName='" + fileName + '\'' +
                 ", logNumber=" + logNumber +
                 ", logRotation='" + logRotation + '\'' +
+                ", asyncQueueSize=" + asyncQueueSize +
+                ", asyncOverflowPolicy=" + asyncOverflowPolicy +
+                ", flushInterval=" + flushInterval +
+                ", flushBytes=" + flushBytes +
+                ", flushOnError=" + flushOnError +
+                ", memoryMapped=" + memoryMapped +
+                ", collapseRepeats=" + collapseRepeats +
+                ", timestampIndexed=" + timestampIndexed +
+                ", sequenceRolling=" + sequenceRolling +
+                ", compress=" + compress +
+                ", maxTotalSize=" + maxTotalSize +
                 '}';
     }
 }
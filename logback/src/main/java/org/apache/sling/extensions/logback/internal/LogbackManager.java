@@ -1,17 +1,32 @@
 package org.apache.sling.extensions.logback.internal;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
@@ -25,6 +40,7 @@ import ch.qos.logback.classic.util.EnvUtil;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.joran.GenericConfigurator;
 import ch.qos.logback.core.joran.event.SaxEvent;
+import ch.qos.logback.core.joran.event.SaxEventRecorder;
 import ch.qos.logback.core.joran.spi.InterpretationContext;
 import ch.qos.logback.core.joran.spi.JoranException;
 import ch.qos.logback.core.status.OnConsoleStatusListener;
@@ -32,6 +48,12 @@ import ch.qos.logback.core.status.StatusListener;
 import ch.qos.logback.core.status.StatusListenerAsList;
 import ch.qos.logback.core.status.StatusUtil;
 import ch.qos.logback.core.util.StatusPrinter;
+import org.apache.sling.extensions.logback.internal.util.BackgroundCompressor;
+import org.apache.sling.extensions.logback.internal.util.DebouncedTask;
+import org.apache.sling.extensions.logback.internal.util.LoggerRates;
+import org.apache.sling.extensions.logback.internal.util.LogSearcher;
+import org.apache.sling.extensions.logback.internal.util.RetentionManager;
+import org.apache.sling.extensions.logback.internal.util.Util;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -39,14 +61,86 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceFactory;
 import org.osgi.framework.ServiceRegistration;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
 
 public class LogbackManager extends LoggerContextAwareBase {
     private static final String PREFIX  = "org.apache.sling.commons.log";
     private static final String DEBUG = PREFIX + "." + "debug";
 
+    /**
+     * Time in millis without further config changes after which the LoggerContext is reset
+     */
+    public static final String RESET_QUIET_PERIOD = PREFIX + ".reset.quietPeriod";
+
+    /**
+     * Max time in millis by which a reset is deferred while config changes keep arriving
+     */
+    public static final String RESET_MAX_DELAY = PREFIX + ".reset.maxDelay";
+
+    public static final long RESET_QUIET_PERIOD_DEFAULT = 100;
+
+    public static final long RESET_MAX_DELAY_DEFAULT = 2000;
+
+    /**
+     * Enables counting of events per logger to find the noisiest loggers. Disabled by
+     * default as it adds a TurboFilter to every logging call
+     */
+    public static final String TOP_LOGGERS_ENABLED = PREFIX + ".topLoggers.enabled";
+
+    /**
+     * Max number of loggers for which events are counted
+     */
+    public static final String TOP_LOGGERS_MAX = PREFIX + ".topLoggers.maxLoggers";
+
+    public static final int TOP_LOGGERS_MAX_DEFAULT = 1000;
+
+    /**
+     * Max number of rolled over log files compressed concurrently
+     */
+    public static final String COMPRESS_MAX_THREADS = PREFIX + ".compress.maxThreads";
+
+    public static final int COMPRESS_MAX_THREADS_DEFAULT = 1;
+
+    /**
+     * Thread priority used for compressing rolled over log files
+     */
+    public static final String COMPRESS_PRIORITY = PREFIX + ".compress.priority";
+
+    public static final int COMPRESS_PRIORITY_DEFAULT = Thread.MIN_PRIORITY;
+
+    /**
+     * Max total size of the rolled over files of all OSGi config based writers
+     */
+    public static final String TOTAL_SIZE_CAP = PREFIX + ".totalSizeCap";
+
+    /**
+     * Max number of lines from the end of each log file included by the configuration
+     * printer. A value of zero or less includes the complete files
+     */
+    public static final String PRINTER_MAX_LINES = PREFIX + ".printer.maxLines";
+
+    public static final int PRINTER_MAX_LINES_DEFAULT = 10000;
+
+    /**
+     * Max number of log files searched concurrently by the web console search
+     */
+    public static final String SEARCH_MAX_THREADS = PREFIX + ".search.maxThreads";
+
+    public static final int SEARCH_MAX_THREADS_DEFAULT = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     private static final String PLUGIN_URL = "slinglogback";
     private static final String PRINTER_URL = "slinglogbacklogs";
     private static final String RESET_EVENT_TOPIC = "org/apache/sling/commons/log/RESET";
+    private static final String SNAPSHOT_FILE = "logback-config.snapshot";
+    private static final String STATS_MBEAN_NAME = "org.apache.sling.extensions.logback:type=ConfigurationStats";
+
+    private static final String APPENDER_STATS_MBEAN_NAME = "org.apache.sling.extensions.logback:type=AppenderStats";
+
+    /**
+     * Max granularity in millis of file modification times. A file may change within
+     * this period without a change of its modification time
+     */
+    private static final long MTIME_GRANULARITY = 2000;
 
     private final String rootDir;
     private final String contextName = "sling";
@@ -65,16 +159,76 @@ public class LogbackManager extends LoggerContextAwareBase {
 
     private final boolean started;
 
+    /**
+     * Held while the LoggerContext gets reset or a config change is applied to it
+     */
     private final Semaphore resetLock = new Semaphore(1);
 
-    private final AtomicBoolean configChanged = new AtomicBoolean();
-
     private final AppenderTracker appenderTracker;
 
+    private final TurboFilterTracker turboFilterTracker;
+
+    private final FilterTracker filterTracker;
+
     private final ConfigSourceTracker configSourceTracker;
 
+    private final ConfigSnapshot configSnapshot;
+
+    private final ConfigurationStats configurationStats = new ConfigurationStats();
+
+    private final List<ObjectName> mbeanNames = new ArrayList<ObjectName>();
+
+    /**
+     * Last modified time of this bundle. Used to detect changes of the default config
+     */
+    private final long bundleLastModified;
+
     private final List<ServiceRegistration> registrations = new ArrayList<ServiceRegistration>();
 
+    /**
+     * Executor for housekeeping tasks like flushing of buffered log files. Unlike the
+     * LoggerContext executor it is not affected by context resets
+     */
+    private final ScheduledExecutorService scheduler = newDaemonScheduler("Sling Logback Scheduler");
+
+    /**
+     * Executor for the resets of the LoggerContext. Kept apart from the scheduler so
+     * that a long running reset does not delay the flushes and a backlog of flushes
+     * does not delay a reset
+     */
+    private final ScheduledExecutorService reconfigurationExecutor = newDaemonScheduler("Sling Logback Reconfigurer");
+
+    /**
+     * Compresses rolled over log files off the logging threads
+     */
+    private final BackgroundCompressor compressor;
+
+    /**
+     * Caps the size of the rolled over files across all writers
+     */
+    private final RetentionManager retentionManager;
+
+    /**
+     * Searches log files for the web console
+     */
+    private final LogSearcher logSearcher;
+
+    /**
+     * Collapses bursts of config changes into a single reset
+     */
+    private final DebouncedTask reconfigurer;
+
+    /**
+     * Counts events per logger. Null if disabled
+     */
+    private final TopLoggersFilter topLoggersFilter;
+
+    /**
+     * Digest of the main config file computed by the last configuration. Null if the
+     * default config is used
+     */
+    private volatile ConfigFileDigest mainConfigDigest;
+
     /**
      * Time at which reset started. Used as the threshold for logging error messages from status printer
      */
@@ -82,14 +236,42 @@ public class LogbackManager extends LoggerContextAwareBase {
 
     public LogbackManager(BundleContext bundleContext) throws InvalidSyntaxException {
         final long startTime = System.currentTimeMillis();
+        configurationStats.beginPass("startup");
         setLoggerContext((LoggerContext) LoggerFactory.getILoggerFactory());
 
         this.rootDir = getRootDir(bundleContext);
 
         this.debug = Boolean.parseBoolean(bundleContext.getProperty(DEBUG));
-
+        this.reconfigurer = new DebouncedTask(reconfigurationExecutor, new LoggerReconfigurer(),
+                Util.toInt(bundleContext.getProperty(RESET_QUIET_PERIOD), (int) RESET_QUIET_PERIOD_DEFAULT),
+                Util.toInt(bundleContext.getProperty(RESET_MAX_DELAY), (int) RESET_MAX_DELAY_DEFAULT));
+
+        this.topLoggersFilter = createTopLoggersFilter(bundleContext);
+        this.compressor = new BackgroundCompressor(
+                Util.toInt(bundleContext.getProperty(COMPRESS_MAX_THREADS), COMPRESS_MAX_THREADS_DEFAULT),
+                Util.toInt(bundleContext.getProperty(COMPRESS_PRIORITY), COMPRESS_PRIORITY_DEFAULT));
+        this.retentionManager = new RetentionManager(LogWriter.parseSize(bundleContext.getProperty(TOTAL_SIZE_CAP)));
+        this.logSearcher = new LogSearcher(
+                Util.toInt(bundleContext.getProperty(SEARCH_MAX_THREADS), SEARCH_MAX_THREADS_DEFAULT));
+
+        this.configSnapshot = new ConfigSnapshot(getLoggerContext(), bundleContext.getDataFile(SNAPSHOT_FILE));
+        this.bundleLastModified = bundleContext.getBundle().getLastModified();
+
+        long phaseStart = System.nanoTime();
         this.appenderTracker = new AppenderTracker(bundleContext,getLoggerContext());
+        configurationStats.phaseCompleted("openAppenderTracker", phaseStart);
+
+        phaseStart = System.nanoTime();
+        this.turboFilterTracker = new TurboFilterTracker(bundleContext, getLoggerContext());
+        configurationStats.phaseCompleted("openTurboFilterTracker", phaseStart);
+
+        phaseStart = System.nanoTime();
+        this.filterTracker = new FilterTracker(bundleContext, getLoggerContext());
+        configurationStats.phaseCompleted("openFilterTracker", phaseStart);
+
+        phaseStart = System.nanoTime();
         this.configSourceTracker = new ConfigSourceTracker(bundleContext,this);
+        configurationStats.phaseCompleted("openConfigSourceTracker", phaseStart);
 
         //TODO Make it configurable
         getLoggerContext().setName(contextName);
@@ -97,13 +279,21 @@ public class LogbackManager extends LoggerContextAwareBase {
 
         resetListeners.add(logConfigManager);
         resetListeners.add(appenderTracker);
+        resetListeners.add(turboFilterTracker);
+        resetListeners.add(filterTracker);
         resetListeners.add(configSourceTracker);
+        if (topLoggersFilter != null) {
+            resetListeners.add(topLoggersFilter);
+        }
 
         getLoggerContext().addListener(osgiIntegrationListener);
 
         configure();
+        configurationStats.endPass(countAppenders());
+
         registerWebConsoleSupport(bundleContext);
         registerEventHandler(bundleContext);
+        registerMBeans();
         StatusPrinter.printInCaseOfErrorsOrWarnings(getLoggerContext(),startTime);
         started = true;
     }
@@ -112,24 +302,66 @@ public class LogbackManager extends LoggerContextAwareBase {
         for(ServiceRegistration reg : registrations){
             reg.unregister();
         }
+        unregisterMBeans();
 
         appenderTracker.close();
+        turboFilterTracker.close();
+        filterTracker.close();
         configSourceTracker.close();
         getLoggerContext().removeListener(osgiIntegrationListener);
+        if (topLoggersFilter != null) {
+            getLoggerContext().getTurboFilterList().remove(topLoggersFilter);
+        }
         logConfigManager.close();
         getLoggerContext().stop();
+        reconfigurationExecutor.shutdownNow();
+        scheduler.shutdownNow();
+        compressor.shutdown();
+        logSearcher.shutdown();
     }
 
+    /**
+     * Schedules a reset of the LoggerContext. Changes arriving in quick succession
+     * are served by a single reset once they settle down
+     */
     public void configChanged(){
         if(!started){
             return;
         }
 
+        reconfigurer.request();
+    }
+
+    /**
+     * Applies the change to the current LoggerContext without resetting it. If the change
+     * cannot be applied in place or a reset is already running then the context is
+     * reconfigured as in {@link #configChanged()}
+     */
+    public void configChanged(ConfigChange change){
+        if(!started){
+            return;
+        }
+
         if(resetLock.tryAcquire()){
-            scheduleConfigReload();
+            boolean applied = false;
+            try{
+                applied = change.apply();
+            }catch(RuntimeException e){
+                addError("Error occurred while applying " + change + ". Falling back to reset", e);
+            }
+
+            resetLock.release();
+            if(applied){
+                //The change may have created new appenders
+                filterTracker.attachFilters();
+                addInfo("Applied " + change + " without reset");
+            }else{
+                reconfigurer.request();
+            }
         }else{
-            configChanged.set(true);
-            addInfo("LoggerContext reset in progress. Marking config changed to true");
+            //The reset already running may have missed the change
+            addInfo("LoggerContext reset in progress. Scheduling another reset");
+            reconfigurer.request();
         }
     }
 
@@ -141,10 +373,64 @@ public class LogbackManager extends LoggerContextAwareBase {
         return appenderTracker;
     }
 
+    public FilterTracker getFilterTracker() {
+        return filterTracker;
+    }
+
     public ConfigSourceTracker getConfigSourceTracker() {
         return configSourceTracker;
     }
 
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public BackgroundCompressor getCompressor() {
+        return compressor;
+    }
+
+    public RetentionManager getRetentionManager() {
+        return retentionManager;
+    }
+
+    public LogSearcher getLogSearcher() {
+        return logSearcher;
+    }
+
+    public ConfigSnapshot getConfigSnapshot() {
+        return configSnapshot;
+    }
+
+    /**
+     * @return null if counting of events per logger is disabled
+     */
+    public LoggerRates getLoggerRates() {
+        return topLoggersFilter != null ? topLoggersFilter.getRates() : null;
+    }
+
+    private TopLoggersFilter createTopLoggersFilter(BundleContext bundleContext) {
+        if (!Util.toBoolean(bundleContext.getProperty(TOP_LOGGERS_ENABLED), false)) {
+            return null;
+        }
+
+        final LoggerRates rates = new LoggerRates(
+                Util.toInt(bundleContext.getProperty(TOP_LOGGERS_MAX), TOP_LOGGERS_MAX_DEFAULT));
+        final TopLoggersFilter filter = new TopLoggersFilter(rates);
+        filter.setContext(getLoggerContext());
+        filter.start();
+
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                rates.tick();
+            }
+        }, LoggerRates.TICK_INTERVAL, LoggerRates.TICK_INTERVAL, TimeUnit.SECONDS);
+        return filter;
+    }
+
+    public ConfigurationStats getConfigurationStats() {
+        return configurationStats;
+    }
+
     public void addSubsitutionProperties(InterpretationContext ic){
         ic.addSubstitutionProperty("sling.home", rootDir);
     }
@@ -173,7 +459,9 @@ public class LogbackManager extends LoggerContextAwareBase {
 
         getStatusManager().add(statusListener);
         addInfo("Resetting context: " + getLoggerContext().getName());
+        long phaseStart = System.nanoTime();
         resetContext(statusListener);
+        configurationStats.phaseCompleted("reset", phaseStart);
 
         StatusUtil statusUtil = new StatusUtil(getLoggerContext());
         JoranConfigurator configurator = createConfigurator();
@@ -181,17 +469,82 @@ public class LogbackManager extends LoggerContextAwareBase {
         final long threshold = System.currentTimeMillis();
 
         try {
+            phaseStart = System.nanoTime();
             cb.perform(configurator);
+            configurationStats.phaseCompleted("joran", phaseStart);
             if (statusUtil.hasXMLParsingErrors(threshold)) {
+                phaseStart = System.nanoTime();
                 cb.fallbackConfiguration(eventList,createConfigurator(),statusListener);
+                configurationStats.phaseCompleted("fallback", phaseStart);
+            } else {
+                //Only keep events of sources used by a successful configuration
+                configSnapshot.commit();
             }
             addInfo("Context: " + getLoggerContext().getName() + " reloaded.");
         } catch(JoranException je){
+            phaseStart = System.nanoTime();
             cb.fallbackConfiguration(eventList, createConfigurator(), statusListener);
+            configurationStats.phaseCompleted("fallback", phaseStart);
         } finally {
             getStatusManager().remove(statusListener);
             StatusPrinter.printInCaseOfErrorsOrWarnings(getLoggerContext(),resetStartTime);
         }
+
+        for(LogbackResetListener l : resetListeners){
+            phaseStart = System.nanoTime();
+            l.onResetComplete(getLoggerContext());
+            configurationStats.phaseCompleted("onResetComplete." + l.getClass().getSimpleName(), phaseStart);
+        }
+    }
+
+    /**
+     * Configures the context from the given XML. The events recorded from the XML are
+     * taken from the config snapshot if the source did not change since they got recorded
+     *
+     * @param token value which changes whenever the content of the url changes
+     */
+    private void doConfigure(JoranConfigurator configurator, URL url, long token) throws JoranException {
+        final String key = url.toExternalForm();
+        List<SaxEvent> events = configSnapshot.getEvents(key, token);
+        if (events == null) {
+            events = recordEvents(url);
+            configSnapshot.putEvents(key, token, events);
+        } else {
+            addInfo("Using recorded config of " + key + " from snapshot");
+        }
+
+        final long threshold = System.currentTimeMillis();
+        GenericConfigurator.informContextOfURLUsedForConfiguration(getLoggerContext(), url);
+
+        //The event player inserts the events of included configs into the passed list
+        configurator.doConfigure(new ArrayList<SaxEvent>(events));
+        if (!new StatusUtil(getLoggerContext()).hasXMLParsingErrors(threshold)) {
+            configurator.registerSafeConfiguration();
+        }
+    }
+
+    private List<SaxEvent> recordEvents(URL url) throws JoranException {
+        InputStream in = null;
+        try {
+            URLConnection urlConnection = url.openConnection();
+            urlConnection.setUseCaches(false);
+            in = urlConnection.getInputStream();
+            SaxEventRecorder recorder = new SaxEventRecorder(getLoggerContext());
+            recorder.recordEvents(new InputSource(in));
+            return recorder.getSaxEventList();
+        } catch (IOException e) {
+            String msg = "Could not open URL [" + url + "].";
+            addError(msg, e);
+            throw new JoranException(msg, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //Ignore
+                }
+            }
+        }
     }
 
     private JoranConfigurator createConfigurator(){
@@ -210,10 +563,6 @@ public class LogbackManager extends LoggerContextAwareBase {
         }
     }
 
-    private void scheduleConfigReload(){
-        getLoggerContext().getExecutorService().submit(new LoggerReconfigurer());
-    }
-
     private String getRootDir(BundleContext bundleContext) {
         String rootDir = bundleContext.getProperty("sling.home");
         if(rootDir == null){
@@ -226,27 +575,35 @@ public class LogbackManager extends LoggerContextAwareBase {
     private class LoggerReconfigurer implements Runnable {
 
         public void run() {
-            //TODO Might be better to run a job to monitor refreshRequirement
-            boolean configChanged = false;
+            //Wait for a config change being applied in place to complete
+            resetLock.acquireUninterruptibly();
             try{
                 addInfo("Performing configuration");
+                configurationStats.beginPass("reconfigure");
                 configure();
-                configChanged = LogbackManager.this.configChanged.getAndSet(false);
-                if(configChanged){
-                    scheduleConfigReload();
-                }
+                configurationStats.endPass(countAppenders());
             }catch(Exception e){
                 log.warn("Error occurred while re-configuring logger",e);
                 addError("Error occurred while re-configuring logger",e);
             }finally{
-                if(!configChanged){
-                    resetLock.release();
-                    addInfo("Re configuration done");
-                }
+                resetLock.release();
+                addInfo("Re configuration done");
             }
         }
     }
 
+    /**
+     * Configuration change which can possibly be applied to the LoggerContext
+     * without a reset
+     */
+    public static interface ConfigChange {
+        /**
+         * @return false if the change was not applied and the LoggerContext
+         * has to be reset
+         */
+        boolean apply();
+    }
+
     //~-------------------------------LogggerContextListener
 
     private class OsgiIntegrationListener implements LoggerContextListener {
@@ -270,13 +627,16 @@ public class LogbackManager extends LoggerContextAwareBase {
             getLoggerContext()
                     .getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)
                     .addAppender(logConfigManager.getDefaultAppender());
+            configurationStats.consoleAppenderAttached();
 
             //Now record the time of reset with a default appender attached to root logger
             resetStartTime = System.currentTimeMillis();
 
             context.putObject(LogbackManager.class.getName(),LogbackManager.this);
             for(LogbackResetListener l : resetListeners){
+                long phaseStart = System.nanoTime();
                 l.onReset(context);
+                configurationStats.phaseCompleted("onReset." + l.getClass().getSimpleName(), phaseStart);
             }
         }
 
@@ -344,7 +704,7 @@ public class LogbackManager extends LoggerContextAwareBase {
             final String path = configFile.getAbsolutePath();
             addInfo("Configuring from " + path);
             if (configFile.getName().endsWith("xml")) {
-                configurator.doConfigure(configFile);
+                doConfigure(configurator, getMainUrl(), getToken(configFile));
             } else if (configFile.getName().endsWith("groovy")) {
                 if (EnvUtil.isGroovyAvailable()) {
                     // avoid directly referring to GafferConfigurator so as to avoid
@@ -367,9 +727,74 @@ public class LogbackManager extends LoggerContextAwareBase {
         }
     }
 
+    /**
+     * Returns the token under which the events of the config file are kept in the
+     * snapshot. It is derived from the content of the file as a change may keep the
+     * length and modification time of the file. The digest is computed again unless
+     * the modification time and length are unchanged since it was computed and the
+     * file was last modified well before that
+     */
+    private long getToken(File configFile) {
+        final long lastModified = configFile.lastModified();
+        final long length = configFile.length();
+        ConfigFileDigest digest = mainConfigDigest;
+        if (digest != null && digest.path.equals(configFile.getPath())
+                && digest.lastModified == lastModified && digest.length == length
+                && digest.computedAt - lastModified > MTIME_GRANULARITY) {
+            return digest.token;
+        }
+
+        //Taken before reading so that a later change results in a newer modification time
+        final long computedAt = System.currentTimeMillis();
+        final CRC32 crc = new CRC32();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(configFile);
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            //Not cached so that the config gets parsed again. Parsing reports the error
+            addWarn("Failed to compute digest of " + configFile.getAbsolutePath(), e);
+            mainConfigDigest = null;
+            return computedAt;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignore) {
+                    //Ignore
+                }
+            }
+        }
+
+        digest = new ConfigFileDigest(configFile.getPath(), lastModified, length, computedAt,
+                (length << 32) | crc.getValue());
+        mainConfigDigest = digest;
+        return digest.token;
+    }
+
+    private static class ConfigFileDigest {
+        final String path;
+        final long lastModified;
+        final long length;
+        final long computedAt;
+        final long token;
+
+        ConfigFileDigest(String path, long lastModified, long length, long computedAt, long token) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.computedAt = computedAt;
+            this.token = token;
+        }
+    }
+
     private class DefaultCallback extends ConfiguratorCallback {
         public void perform(JoranConfigurator configurator) throws JoranException {
-            configurator.doConfigure(getMainUrl());
+            doConfigure(configurator, getMainUrl(), bundleLastModified);
         }
 
         @Override
@@ -378,6 +803,60 @@ public class LogbackManager extends LoggerContextAwareBase {
         }
     }
 
+    //~ ----------------------------------------------Management Support
+
+    /**
+     * Number of distinct started appenders attached to the loggers
+     */
+    private int countAppenders() {
+        Set<Appender<ILoggingEvent>> appenders = new HashSet<Appender<ILoggingEvent>>();
+        for (Logger logger : getLoggerContext().getLoggerList()) {
+            Iterator<Appender<ILoggingEvent>> itr = logger.iteratorForAppenders();
+            while (itr.hasNext()) {
+                Appender<ILoggingEvent> a = itr.next();
+                if (a.isStarted()) {
+                    appenders.add(a);
+                }
+            }
+        }
+        return appenders.size();
+    }
+
+    private void registerMBeans() {
+        registerMBean(configurationStats, STATS_MBEAN_NAME);
+        try {
+            registerMBean(new AppenderStats(this), APPENDER_STATS_MBEAN_NAME);
+        } catch (JMException e) {
+            log.warn("Error occurred while creating the appender stats MBean", e);
+        }
+    }
+
+    private void registerMBean(Object mbean, String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                //Left over from an earlier instance which was not shut down
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+            mbeanNames.add(name);
+        } catch (JMException e) {
+            log.warn("Error occurred while registering the MBean " + objectName, e);
+        }
+    }
+
+    private void unregisterMBeans() {
+        for (ObjectName name : mbeanNames) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                log.debug("Error occurred while unregistering the MBean " + name, e);
+            }
+        }
+        mbeanNames.clear();
+    }
+
     //~ ----------------------------------------------WebConsole Support
 
     public LoggerStateContext determineLoggerState(){
@@ -410,10 +889,16 @@ public class LogbackManager extends LoggerContextAwareBase {
         final Map<Appender<ILoggingEvent>, AppenderTracker.AppenderInfo> dynamicAppenders =
                 new HashMap<Appender<ILoggingEvent>, AppenderTracker.AppenderInfo>();
 
+        /**
+         * Tracked appenders as per the snapshot current at the time the context got created
+         */
+        final Collection<AppenderTracker.AppenderInfo> trackedAppenders;
+
         private LoggerStateContext(List<Logger> allLoggers) {
             this.allLoggers = allLoggers;
-            for(AppenderTracker.AppenderInfo ai : getAppenderTracker().getAppenderInfos()){
-                dynamicAppenders.put(ai.appender, ai);
+            this.trackedAppenders = getAppenderTracker().getAppenderInfos();
+            for(AppenderTracker.AppenderInfo ai : trackedAppenders){
+                dynamicAppenders.put(ai.attached, ai);
             }
         }
 
@@ -422,7 +907,7 @@ public class LogbackManager extends LoggerContextAwareBase {
         }
 
         int getNumOfDynamicAppenders(){
-            return getAppenderTracker().getAppenderInfos().size();
+            return trackedAppenders.size();
         }
 
         int getNumOfAppenders(){
@@ -462,7 +947,9 @@ public class LogbackManager extends LoggerContextAwareBase {
 
         //TODO need to see to add support for Inventory Feature
         registrations.add(context.registerService(SlingConfigurationPrinter.class.getName(),
-                new SlingConfigurationPrinter(this), printerProps));
+                new SlingConfigurationPrinter(this,
+                        Util.toInt(context.getProperty(PRINTER_MAX_LINES), PRINTER_MAX_LINES_DEFAULT)),
+                printerProps));
     }
 
     private class PluginServiceFactory implements ServiceFactory {
@@ -512,4 +999,13 @@ public class LogbackManager extends LoggerContextAwareBase {
         }, props));
     }
 
+    private static ScheduledExecutorService newDaemonScheduler(final String threadName) {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
 }
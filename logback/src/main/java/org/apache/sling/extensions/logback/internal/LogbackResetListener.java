@@ -23,5 +23,14 @@ import ch.qos.logback.classic.LoggerContext;
 
 public interface LogbackResetListener {
 
+    /**
+     * Invoked upon a reset of the context before the Logback config gets parsed
+     */
     void onReset(LoggerContext context);
+
+    /**
+     * Invoked once the context got configured after a reset done by the
+     * LogbackManager. Appenders declared in the Logback config exist at this point
+     */
+    void onResetComplete(LoggerContext context);
 }
@@ -53,17 +53,14 @@ public class OsgiInternalAction extends Action {
         final Collection<ConfigSourceInfo> providers = getFragmentProviders();
         List<SaxEvent> consolidatedEventList = new ArrayList<SaxEvent>();
         for (ConfigSourceInfo cp : providers) {
-            InputSource is = cp.getConfigProvider().getConfigSource();
-            try {
-                SaxEventRecorder recorder = new SaxEventRecorder(context);
-                recorder.recordEvents(is);
-                // remove the <included> tag from the beginning and </included> from the end
-                trimHeadAndTail(recorder);
-                consolidatedEventList.addAll(recorder.getSaxEventList());
-            } catch (JoranException e) {
-                addError("Error while parsing xml obtained from  ["+cp+"]", e);
-            } finally {
-                Util.close(is);
+            //Fragments kept in the snapshot are looked up there so that they are
+            //retained in the snapshot
+            List<SaxEvent> events = cp.getSnapshotKey() == null ? cp.getSaxEvents() : null;
+            if (events == null) {
+                events = recordEvents(cp);
+            }
+            if (events != null) {
+                consolidatedEventList.addAll(events);
             }
         }
 
@@ -72,6 +69,47 @@ public class OsgiInternalAction extends Action {
 
     }
 
+    /**
+     * Parses the config of the given source and caches the events with the source. Events
+     * are played again upon later resets till the source changes. Substitution of
+     * properties happens while playing so cached events are not affected by it
+     *
+     * @return null if the config could not be parsed
+     */
+    private List<SaxEvent> recordEvents(ConfigSourceInfo cp) {
+        final String snapshotKey = cp.getSnapshotKey();
+        final ConfigSnapshot snapshot = getLogbackManager().getConfigSnapshot();
+        if (snapshotKey != null) {
+            List<SaxEvent> events = snapshot.getEvents(snapshotKey, 0);
+            if (events != null) {
+                cp.setSaxEvents(events);
+                return events;
+            }
+        }
+
+        InputSource is = cp.getConfigProvider().getConfigSource();
+        try {
+            SaxEventRecorder recorder = new SaxEventRecorder(context);
+            recorder.recordEvents(is);
+            getLogbackManager().getConfigurationStats().fragmentParsed();
+            // remove the <included> tag from the beginning and </included> from the end
+            trimHeadAndTail(recorder);
+            List<SaxEvent> events = Collections.unmodifiableList(
+                    new ArrayList<SaxEvent>(recorder.getSaxEventList()));
+            cp.setSaxEvents(events);
+            if (snapshotKey != null) {
+                snapshot.putEvents(snapshotKey, 0, events);
+            }
+            return events;
+        } catch (JoranException e) {
+            //Not cached so that it is parsed again upon next reset
+            addError("Error while parsing xml obtained from  ["+cp+"]", e);
+            return null;
+        } finally {
+            Util.close(is);
+        }
+    }
+
     private void populateSubstitutionProperties(InterpretationContext ec) {
         getLogbackManager().addSubsitutionProperties(ec);
     }
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.apache.sling.extensions.logback.internal.util.CategoryIndex;
+import org.apache.sling.extensions.logback.internal.util.RateLimiter;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+
+/**
+ * TurboFilter enforcing the rate limits configured per category. Events of a logger
+ * are checked against the limit of the most specific configured category. Each
+ * category has its own bucket shared by all loggers below it.
+ * <p>
+ * Only events which pass the level of their logger are counted, so disabled debug
+ * calls do not use up permits. Suppressed events are counted and reported through
+ * {@link #SUMMARY_LOGGER} by {@link #reportSuppressed()}.
+ */
+public class RateLimitFilter extends TurboFilter {
+    /**
+     * Logger used to report suppressed events. It is exempt from the limits
+     */
+    public static final String SUMMARY_LOGGER = "org.apache.sling.commons.log.RateLimit";
+
+    /**
+     * Interval in seconds at which suppressed events are reported
+     */
+    public static final int SUMMARY_INTERVAL = 60;
+
+    private volatile CategoryIndex<RateLimit> index =
+            new CategoryIndex<RateLimit>(Collections.<String, RateLimit>emptyMap(), null);
+
+    private volatile Collection<RateLimit> limits = Collections.emptyList();
+
+    public RateLimitFilter() {
+        setName("SlingRateLimitFilter");
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+                              Object[] params, Throwable t) {
+        //The isXXXEnabled checks reach here without a message and must not use up permits
+        if (format == null || level == null || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+
+        final RateLimit limit = index.get(logger.getName());
+        if (limit == null || level.toInt() > limit.level.toInt() || SUMMARY_LOGGER.equals(logger.getName())) {
+            return FilterReply.NEUTRAL;
+        }
+        return limit.tryAcquire() ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    /**
+     * Replaces the configured limits. Suppressed counts of the old limits which are not
+     * yet reported are dropped
+     */
+    public void setLimits(Collection<RateLimit> limits) {
+        final Map<String, RateLimit> byCategory = new HashMap<String, RateLimit>();
+        for (RateLimit l : limits) {
+            byCategory.put(l.category, l);
+        }
+        this.index = new CategoryIndex<RateLimit>(byCategory, null);
+        this.limits = byCategory.values();
+    }
+
+    public boolean isEmpty() {
+        return limits.isEmpty();
+    }
+
+    public Collection<RateLimit> getLimits() {
+        return limits;
+    }
+
+    /**
+     * Logs a summary of the events suppressed since the last report
+     */
+    public void reportSuppressed() {
+        org.slf4j.Logger log = null;
+        for (RateLimit l : limits) {
+            final long suppressed = l.suppressedSinceReport.getAndSet(0);
+            if (suppressed > 0) {
+                if (log == null) {
+                    log = LoggerFactory.getLogger(SUMMARY_LOGGER);
+                }
+                log.warn("Suppressed {} events of category {} exceeding {}", new Object[]{suppressed, l.category, l});
+            }
+        }
+    }
+
+    /**
+     * Limit of a single category. Events up to the configured level are first sampled,
+     * passing the configured fraction of events spread evenly over the events, and then
+     * limited to the rate
+     */
+    public static class RateLimit {
+        final String category;
+
+        final Level level;
+
+        final double rate;
+
+        final double samplePercent;
+
+        private final RateLimiter limiter;
+
+        /**
+         * True if only a fraction of the events passes sampling
+         */
+        private final boolean sampled;
+
+        private final AtomicLong sampleCounter = new AtomicLong();
+
+        private final AtomicLong suppressed = new AtomicLong();
+
+        private final AtomicLong suppressedSinceReport = new AtomicLong();
+
+        /**
+         * @param level most severe level limited. Events of this level and less severe
+         *              ones are limited
+         * @param rate max events per second. Zero or less for no limit
+         * @param samplePercent percentage of events passed. 100 or more for no sampling
+         */
+        public RateLimit(String category, Level level, double rate, double samplePercent) {
+            this.category = category;
+            this.level = level;
+            this.rate = rate;
+            this.samplePercent = samplePercent;
+            this.limiter = rate > 0 ? new RateLimiter(rate) : null;
+            this.sampled = samplePercent > 0 && samplePercent < 100;
+        }
+
+        boolean tryAcquire() {
+            if (sampled && !isSampled(sampleCounter.getAndIncrement())) {
+                suppress();
+                return false;
+            }
+            if (limiter != null && !limiter.tryAcquire()) {
+                suppress();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Event n passes if it raises the number of events to pass. Of the first n events
+         * ceil(n * samplePercent / 100) pass, starting with the first event
+         */
+        private boolean isSampled(long n) {
+            return Math.ceil((n + 1) * samplePercent / 100) > Math.ceil(n * samplePercent / 100);
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        /**
+         * Number of events suppressed since the limit got configured
+         */
+        public long getSuppressedCount() {
+            return suppressed.get();
+        }
+
+        private void suppress() {
+            suppressed.incrementAndGet();
+            suppressedSinceReport.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (sampled) {
+                sb.append("sampling ").append(samplePercent).append("% ");
+            }
+            if (limiter != null) {
+                sb.append("max ").append(rate).append("/s ");
+            }
+            return sb.append("for ").append(level).append(" and below").toString();
+        }
+    }
+}
@@ -19,7 +19,6 @@
 package org.apache.sling.extensions.logback.internal;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
@@ -30,6 +29,10 @@ import java.util.List;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.FileAppender;
+import org.apache.sling.extensions.logback.internal.util.FileTailer;
+import org.apache.sling.extensions.logback.internal.util.RotatedFileIndex;
+import org.apache.sling.extensions.logback.internal.util.SlingRollingFileAppender;
+import org.apache.sling.extensions.logback.internal.util.Util;
 
 /**
  * The <code>SlingConfigurationPrinter</code> is an Apache Felix
@@ -39,8 +42,15 @@ import ch.qos.logback.core.FileAppender;
 public class SlingConfigurationPrinter {
     private final LogbackManager logbackManager;
 
-    public SlingConfigurationPrinter(LogbackManager logbackManager) {
+    /**
+     * Number of lines printed from the end of each log file. Zero or less prints the
+     * whole file
+     */
+    private final int maxLines;
+
+    public SlingConfigurationPrinter(LogbackManager logbackManager, int maxLines) {
         this.logbackManager = logbackManager;
+        this.maxLines = maxLines;
     }
 
     /**
@@ -49,29 +59,21 @@ public class SlingConfigurationPrinter {
     @SuppressWarnings("UnusedDeclaration")
     public void printConfiguration(PrintWriter printWriter) {
         LogbackManager.LoggerStateContext ctx = logbackManager.determineLoggerState();
-        for(Appender<ILoggingEvent> appender : ctx.getAllAppenders()){
+        for(Appender<ILoggingEvent> a : ctx.getAllAppenders()){
+            final Appender<ILoggingEvent> appender = Util.unwrap(a);
             if(appender instanceof FileAppender){
             final File file = new File(((FileAppender) appender).getFile());
             if ( file.exists()) {
                 printWriter.print("Log file ");
                 printWriter.println(file.getAbsolutePath());
+                if (maxLines > 0) {
+                    printWriter.println("(last " + maxLines + " lines)");
+                }
                 printWriter.println("--------------------------------------------------");
-                FileReader fr = null;
                 try {
-                    fr = new FileReader(file);
-                    final char[] buffer = new char[512];
-                    int len;
-                    while ((len = fr.read(buffer)) != -1 ) {
-                        printWriter.write(buffer, 0, len);
-                    }
+                    FileTailer.tail((FileAppender<?>) appender, maxLines, 0, printWriter);
                 } catch (IOException ignore) {
                     // we just ignore this
-                } finally {
-                    if ( fr != null ) {
-                        try {
-                            fr.close();
-                        } catch (IOException ignoreCloseException) {}
-                    }
                 }
                 printWriter.println();
             }
@@ -80,8 +82,8 @@ public class SlingConfigurationPrinter {
     }
 
     /**
-     * TODO Need to see how to implement this with LogBack as we cannot get information
-     * about all rolled over policy
+     * Provides the log files along with their rolled over files. The rolled over files
+     * of OSGi config based writers are taken from their {@link RotatedFileIndex}
      * @see org.apache.felix.webconsole.AttachmentProvider#getAttachments(String)
      */
     @SuppressWarnings("UnusedDeclaration")
@@ -90,13 +92,18 @@ public class SlingConfigurationPrinter {
         if ("zip".equals(mode)) {
             final List<URL> urls = new ArrayList<URL>();
             LogbackManager.LoggerStateContext ctx = logbackManager.determineLoggerState();
-            for (Appender<ILoggingEvent> appender : ctx.getAllAppenders()) {
+            for (Appender<ILoggingEvent> a : ctx.getAllAppenders()) {
+                final Appender<ILoggingEvent> appender = Util.unwrap(a);
                 if (appender instanceof FileAppender) {
-                    final File file = new File(((FileAppender) appender).getFile());
-                    //TODO With LogBack there is no straightforward way to get information
-                    //about rolled over files
-                    //final File[] files = writer.getFileRotator().getRotatedFiles(writer.getFile());
-                    final File[] files = new File[]{file};
+                    final List<File> files = new ArrayList<File>();
+                    files.add(new File(((FileAppender) appender).getFile()));
+                    if (appender instanceof SlingRollingFileAppender) {
+                        RotatedFileIndex index = ((SlingRollingFileAppender) appender).getLogWriter()
+                                .getRotatedFileIndex();
+                        for (RotatedFileIndex.Segment s : index.getSegments()) {
+                            files.add(s.getFile());
+                        }
+                    }
                     for(File f : files){
                         try {
                             urls.add(f.toURI().toURL());
@@ -112,6 +119,4 @@ public class SlingConfigurationPrinter {
         }
         return null;
     }
-
-
 }
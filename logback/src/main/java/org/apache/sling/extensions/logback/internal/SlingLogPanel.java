@@ -24,11 +24,27 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -43,6 +59,13 @@ import ch.qos.logback.core.helpers.Transform;
 import ch.qos.logback.core.status.Status;
 import ch.qos.logback.core.util.CachingDateFormatter;
 import org.apache.sling.extensions.logback.internal.LogbackManager.LoggerStateContext;
+import org.apache.sling.extensions.logback.internal.util.AppenderMetrics;
+import org.apache.sling.extensions.logback.internal.util.FileTailer;
+import org.apache.sling.extensions.logback.internal.util.LatencyHistogram;
+import org.apache.sling.extensions.logback.internal.util.LogSearcher;
+import org.apache.sling.extensions.logback.internal.util.LoggerRates;
+import org.apache.sling.extensions.logback.internal.util.MeteredAppender;
+import org.apache.sling.extensions.logback.internal.util.SlingAsyncAppender;
 import org.apache.sling.extensions.logback.internal.util.SlingRollingFileAppender;
 import org.apache.sling.extensions.logback.internal.util.Util;
 import org.apache.sling.extensions.logback.internal.util.XmlUtil;
@@ -74,6 +97,60 @@ public class SlingLogPanel extends HttpServlet {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(SlingLogPanel.class);
 
+    /**
+     * Number of loggers listed per rate window in the top loggers table
+     */
+    private static final int TOP_LOGGERS_COUNT = 10;
+
+    /**
+     * Path serving the end of the file of a file appender as plain text. The appender is
+     * selected by the name parameter and the amount by the lines or bytes parameter
+     */
+    static final String TAILER_PATH = "/tailer.txt";
+
+    private static final String PARAM_APPENDER_NAME = "name";
+
+    private static final String PARAM_TAIL_LINES = "lines";
+
+    private static final String PARAM_TAIL_BYTES = "bytes";
+
+    private static final int DEFAULT_TAIL_LINES = 1000;
+
+    /**
+     * Start and end of a time range to serve instead of the end of the file
+     */
+    private static final String PARAM_FROM = "from";
+
+    private static final String PARAM_TO = "to";
+
+    /**
+     * Formats accepted for the time range besides millis. Times without a date refer
+     * to the current day
+     */
+    private static final String[] TIME_FORMATS = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "HH:mm:ss", "HH:mm"};
+
+    /**
+     * Path serving the lines of the active and rolled over files of a file appender
+     * which match the query given by the q parameter
+     */
+    static final String SEARCH_PATH = "/search.txt";
+
+    private static final String PARAM_QUERY = "q";
+
+    private static final String PARAM_REGEX = "regex";
+
+    private static final String PARAM_IGNORE_CASE = "ignoreCase";
+
+    private static final String PARAM_MAX_RESULTS = "max";
+
+    private static final String PARAM_TIMEOUT = "timeout";
+
+    private static final int DEFAULT_MAX_RESULTS = 1000;
+
+    private static final int DEFAULT_SEARCH_TIMEOUT = 10000;
+
+    private static final int MAX_SEARCH_TIMEOUT = 60000;
+
     public SlingLogPanel(final LogbackManager logbackManager, String label) {
         this.logbackManager = logbackManager;
         this.labelRes = '/' + label + '/';
@@ -83,6 +160,14 @@ public class SlingLogPanel extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws IOException {
+        final String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.endsWith(TAILER_PATH)) {
+            sendTail(req, resp);
+            return;
+        } else if (pathInfo != null && pathInfo.endsWith(SEARCH_PATH)) {
+            sendSearchResults(req, resp);
+            return;
+        }
 
         final PrintWriter pw = resp.getWriter();
 
@@ -92,13 +177,175 @@ public class SlingLogPanel extends HttpServlet {
         final LoggerStateContext ctx = logbackManager.determineLoggerState();
         appendLoggerStatus(pw, ctx);
         appendLoggerData(pw, ctx);
-        addAppenderData(pw, consoleAppRoot, ctx);
+        addAppenderData(pw, consoleAppRoot, pluginRoot, ctx);
+        appendFilterStats(pw);
+        appendTopLoggers(pw);
         appendLogbackMainConfig(pw);
         appendLogbackFragments(pw, consoleAppRoot);
+        appendConfigurationStats(pw);
         appendLogbackStatus(pw, ctx);
         enablePrettifier(pw,pluginRoot);
     }
 
+    private void sendTail(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        final String name = req.getParameter(PARAM_APPENDER_NAME);
+        final FileAppender<ILoggingEvent> appender = name != null ? findFileAppender(name) : null;
+        if (appender == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "No file appender found with name " + name);
+            return;
+        }
+
+        final String fromParam = req.getParameter(PARAM_FROM);
+        final String toParam = req.getParameter(PARAM_TO);
+        if (fromParam != null || toParam != null) {
+            if (!(appender instanceof SlingRollingFileAppender)) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                        "Time ranges are only supported for OSGi config based writers");
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            final long from = fromParam != null ? parseTime(fromParam, now) : 0;
+            final long to = toParam != null ? parseTime(toParam, now) : Long.MAX_VALUE;
+            if (from < 0 || to < 0) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid time. Use millis or one of "
+                        + Arrays.toString(TIME_FORMATS));
+                return;
+            }
+
+            resp.setContentType("text/plain");
+            resp.setCharacterEncoding("UTF-8");
+            FileTailer.copyTimeRange((SlingRollingFileAppender<?>) appender, from, to, resp.getWriter());
+            return;
+        }
+
+        int lines = Util.toInt(req.getParameter(PARAM_TAIL_LINES), 0);
+        final int bytes = Util.toInt(req.getParameter(PARAM_TAIL_BYTES), 0);
+        if (lines <= 0 && bytes <= 0) {
+            lines = DEFAULT_TAIL_LINES;
+        }
+
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        FileTailer.tail(appender, lines, bytes, resp.getWriter());
+    }
+
+    /**
+     * Parses a time given in millis or in one of the {@link #TIME_FORMATS}
+     *
+     * @return -1 if the value cannot be parsed
+     */
+    static long parseTime(String value, long now) {
+        final String time = value.trim().replace('T', ' ');
+        if (time.matches("\\d{9,}")) {
+            return Long.parseLong(time);
+        }
+        for (String pattern : TIME_FORMATS) {
+            final SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            final ParsePosition pos = new ParsePosition(0);
+            final Date date = format.parse(time, pos);
+            if (date == null || pos.getIndex() != time.length()) {
+                continue;
+            }
+            if (pattern.startsWith("yyyy")) {
+                return date.getTime();
+            }
+
+            final Calendar parsed = Calendar.getInstance();
+            parsed.setTime(date);
+            final Calendar result = Calendar.getInstance();
+            result.setTimeInMillis(now);
+            result.set(Calendar.HOUR_OF_DAY, parsed.get(Calendar.HOUR_OF_DAY));
+            result.set(Calendar.MINUTE, parsed.get(Calendar.MINUTE));
+            result.set(Calendar.SECOND, parsed.get(Calendar.SECOND));
+            result.set(Calendar.MILLISECOND, 0);
+            return result.getTimeInMillis();
+        }
+        return -1;
+    }
+
+    private void sendSearchResults(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        final String name = req.getParameter(PARAM_APPENDER_NAME);
+        final FileAppender<ILoggingEvent> appender = name != null ? findFileAppender(name) : null;
+        if (appender == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "No file appender found with name " + name);
+            return;
+        }
+
+        final String query = req.getParameter(PARAM_QUERY);
+        if (query == null || query.length() == 0) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "No query specified");
+            return;
+        }
+
+        int flags = Pattern.MULTILINE;
+        if (Util.toBoolean(req.getParameter(PARAM_IGNORE_CASE), false)) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        final Pattern pattern;
+        try {
+            pattern = Pattern.compile(Util.toBoolean(req.getParameter(PARAM_REGEX), false)
+                    ? query : Pattern.quote(query), flags);
+        } catch (PatternSyntaxException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid pattern: " + e.getDescription());
+            return;
+        }
+
+        final int maxResults = Util.toInt(req.getParameter(PARAM_MAX_RESULTS), DEFAULT_MAX_RESULTS);
+        final int timeout = Math.min(MAX_SEARCH_TIMEOUT,
+                Util.toInt(req.getParameter(PARAM_TIMEOUT), DEFAULT_SEARCH_TIMEOUT));
+
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        final PrintWriter pw = resp.getWriter();
+        final LogSearcher.Result result;
+        try {
+            result = logbackManager.getLogSearcher().search(appender, pattern, maxResults, timeout, pw);
+        } catch (RejectedExecutionException e) {
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many searches running");
+            return;
+        }
+
+        pw.printf("-- %d matches in %d files", result.getMatchCount(), result.getSearchedFiles());
+        if (result.isTruncated()) {
+            pw.print(". Stopped at the max number of matches");
+        }
+        if (result.isTimedOut()) {
+            pw.printf(". Stopped after the timeout of %d ms", timeout);
+        }
+        pw.println();
+    }
+
+    /**
+     * Finds the file appender by name or file name. Only files of configured appenders
+     * can be accessed this way
+     */
+    @SuppressWarnings("unchecked")
+    private FileAppender<ILoggingEvent> findFileAppender(String name) {
+        for (Appender<ILoggingEvent> a : logbackManager.determineLoggerState().getAllAppenders()) {
+            final Appender<ILoggingEvent> appender = Util.unwrap(a);
+            if (appender instanceof FileAppender
+                    && (name.equals(appender.getName()) || name.equals(((FileAppender) appender).getFile()))) {
+                return (FileAppender<ILoggingEvent>) appender;
+            }
+        }
+        return null;
+    }
+
+    private static String getTailLink(String pluginRoot, Appender<ILoggingEvent> appender) {
+        final Appender<ILoggingEvent> target = Util.unwrap(appender);
+        if (pluginRoot == null || !(target instanceof FileAppender) || target.getName() == null) {
+            return "";
+        }
+        try {
+            final String url = String.format("%s%s?%s=%s&%s=%d", pluginRoot, TAILER_PATH, PARAM_APPENDER_NAME,
+                    URLEncoder.encode(target.getName(), "UTF-8"), PARAM_TAIL_LINES, DEFAULT_TAIL_LINES);
+            return " <a href=\"" + Transform.escapeTags(url) + "\">[tail]</a>";
+        } catch (UnsupportedEncodingException e) {
+            return "";
+        }
+    }
+
     private void enablePrettifier(PrintWriter pw, String pluginRoot){
         pw.printf("<script type=\"text/javascript\" src=\"%s/res/ui/prettify.js\"></script>", pluginRoot);
         pw.println("<script>$(document).ready(prettyPrint);</script>");
@@ -158,7 +405,7 @@ public class SlingLogPanel extends HttpServlet {
         pw.println("</div>");
     }
 
-    private void addAppenderData(PrintWriter pw, String consoleAppRoot,LoggerStateContext ctx) {
+    private void addAppenderData(PrintWriter pw, String consoleAppRoot, String pluginRoot, LoggerStateContext ctx) {
         pw.println("<div class='table'>");
 
         pw.println("<div class='ui-widget-header ui-corner-top buttonGroup'>Appender</div>");
@@ -169,15 +416,190 @@ public class SlingLogPanel extends HttpServlet {
         pw.println("<tr>");
         pw.println("<th>Appender</th>");
         pw.println("<th>" + getConfigColTitle(consoleAppRoot) + "</th>");
+        pw.println("<th>Events</th>");
+        pw.println("<th>Bytes</th>");
+        pw.println("<th>Flushes</th>");
+        pw.println("<th>Errors</th>");
+        pw.println("<th>Mean Latency</th>");
+        pw.println("<th>99% Latency</th>");
         pw.println("</tr>");
         pw.println("</thead>");
         pw.println("<tbody class='ui-widget-content'>");
 
         for(Appender<ILoggingEvent> appender : ctx.appenders.values()){
             pw.println("<tr>");
-            pw.println("<td>" + getName(appender) + "</td>");
+            pw.println("<td>" + getName(appender) + getTailLink(pluginRoot, appender) + "</td>");
             pw.println("<td>" + formatPid(consoleAppRoot, appender,ctx)
                     + "</td>");
+            addAppenderMetrics(pw, AppenderMetrics.forAppender(appender));
+            pw.println("</tr>");
+        }
+
+        pw.println("</tbody>");
+        pw.println("</table>");
+        pw.println("</div>");
+    }
+
+    private static void addAppenderMetrics(PrintWriter pw, AppenderMetrics metrics) {
+        if (metrics == null) {
+            pw.println("<td colspan='6'>-</td>");
+            return;
+        }
+
+        final LatencyHistogram latency = metrics.getLatency();
+        final long bytes = metrics.getBytesWritten();
+        pw.printf("<td>%,d</td>%n", metrics.getEventCount());
+        pw.println("<td>" + (bytes > 0 ? String.format("%,d", bytes) : "-") + "</td>");
+        pw.printf("<td>%,d</td>%n", metrics.getFlushCount());
+        pw.printf("<td>%,d</td>%n", metrics.getErrorCount());
+        pw.println("<td>" + formatLatency(latency.getMean()) + "</td>");
+        pw.println("<td>&lt; " + formatLatency(latency.getPercentile(99)) + "</td>");
+    }
+
+    private static String formatLatency(long nanos) {
+        return String.format("%.1f &micro;s", nanos / 1000.0);
+    }
+
+    private void appendFilterStats(PrintWriter pw) {
+        final Collection<FilterTracker.FilterInfo> filters = logbackManager.getFilterTracker().getFilterInfos();
+        if (filters.isEmpty()) {
+            return;
+        }
+
+        pw.println("<div class='table'>");
+
+        pw.println("<div class='ui-widget-header ui-corner-top buttonGroup'>Appender Filters</div>");
+        pw.println("<table class='nicetable ui-widget'>");
+
+        pw.println("<thead class='ui-widget-header'>");
+        pw.println("<tr>");
+        pw.println("<th>Filter</th>");
+        pw.println("<th>Appenders</th>");
+        pw.println("<th>Evaluations</th>");
+        pw.println("<th>Denied</th>");
+        pw.println("<th>Mean Latency</th>");
+        pw.println("<th>99% Latency</th>");
+        pw.println("</tr>");
+        pw.println("</thead>");
+        pw.println("<tbody class='ui-widget-content'>");
+
+        for (FilterTracker.FilterInfo fi : filters) {
+            final LatencyHistogram latency = fi.metered.getLatency();
+            pw.println("<tr>");
+            pw.print("<td>" + XmlUtil.escapeXml(fi.filter.getClass().getName()));
+            if (fi.isSlow()) {
+                pw.print(" <strong>[slow]</strong>");
+            }
+            pw.println("</td>");
+            pw.println("<td>" + XmlUtil.escapeXml(fi.appenderNames.toString()) + "</td>");
+            pw.printf("<td>%,d</td>%n", latency.getCount());
+            pw.printf("<td>%,d</td>%n", fi.metered.getDeniedCount());
+            pw.println("<td>" + formatLatency(latency.getMean()) + "</td>");
+            pw.println("<td>&lt; " + formatLatency(latency.getPercentile(99)) + "</td>");
+            pw.println("</tr>");
+        }
+
+        pw.println("</tbody>");
+        pw.println("</table>");
+        pw.println("</div>");
+    }
+
+    private void appendTopLoggers(PrintWriter pw) {
+        final LoggerRates rates = logbackManager.getLoggerRates();
+        if (rates == null) {
+            return;
+        }
+
+        //Union of the top loggers of each window so that a logger which just started
+        //flooding shows up next to the ones which are noisy for long
+        final Set<LoggerRates.Entry> top = new LinkedHashSet<LoggerRates.Entry>();
+        for (LoggerRates.Window w : LoggerRates.Window.values()) {
+            top.addAll(rates.getTop(TOP_LOGGERS_COUNT, w));
+        }
+        final List<LoggerRates.Entry> entries = new ArrayList<LoggerRates.Entry>(top);
+        Collections.sort(entries, new Comparator<LoggerRates.Entry>() {
+            public int compare(LoggerRates.Entry e1, LoggerRates.Entry e2) {
+                return Double.compare(e2.getRate(LoggerRates.Window.ONE_MINUTE),
+                        e1.getRate(LoggerRates.Window.ONE_MINUTE));
+            }
+        });
+
+        pw.println("<div class='table'>");
+
+        pw.println("<div class='ui-widget-header ui-corner-top buttonGroup'>Top Loggers (events/s)</div>");
+        pw.println("<table class='nicetable ui-widget'>");
+
+        pw.println("<thead class='ui-widget-header'>");
+        pw.println("<tr>");
+        pw.println("<th>Logger</th>");
+        pw.println("<th>1 min</th>");
+        pw.println("<th>5 min</th>");
+        pw.println("<th>15 min</th>");
+        pw.println("<th>ERROR</th>");
+        pw.println("<th>WARN</th>");
+        pw.println("<th>INFO</th>");
+        pw.println("<th>DEBUG</th>");
+        pw.println("<th>TRACE</th>");
+        pw.println("</tr>");
+        pw.println("</thead>");
+        pw.println("<tbody class='ui-widget-content'>");
+
+        for (LoggerRates.Entry e : entries) {
+            pw.println("<tr>");
+            pw.println("<td>" + XmlUtil.escapeXml(e.getName()) + "</td>");
+            for (LoggerRates.Window w : LoggerRates.Window.values()) {
+                pw.printf("<td>%.2f</td>%n", e.getRate(w));
+            }
+            for (int level = LoggerRates.LEVELS - 1; level >= 0; level--) {
+                pw.printf("<td>%,d</td>%n", e.getCount(level));
+            }
+            pw.println("</tr>");
+        }
+
+        pw.println("</tbody>");
+        pw.println("</table>");
+        pw.println("</div>");
+    }
+
+    private void appendConfigurationStats(PrintWriter pw) {
+        final List<ConfigurationStats.Pass> passes = logbackManager.getConfigurationStats().getPasses();
+        if(passes.isEmpty()){
+            return;
+        }
+
+        pw.println("<div class='table'>");
+
+        pw.println("<div class='ui-widget-header ui-corner-top buttonGroup'>Configuration Timings</div>");
+        pw.println("<table class='nicetable ui-widget'>");
+
+        pw.println("<thead class='ui-widget-header'>");
+        pw.println("<tr>");
+        pw.println("<th>Date</th>");
+        pw.println("<th>Trigger</th>");
+        pw.println("<th>Total</th>");
+        pw.println("<th>Phases</th>");
+        pw.println("<th>Appenders</th>");
+        pw.println("<th>Fragments Parsed</th>");
+        pw.println("<th>Console Time</th>");
+        pw.println("</tr>");
+        pw.println("</thead>");
+        pw.println("<tbody class='ui-widget-content'>");
+
+        for(ConfigurationStats.Pass p : passes){
+            pw.println("<tr>");
+            pw.println("<td class=\"date\">" + SDF.format(p.getStartTime()) + "</td>");
+            pw.println("<td>" + p.getTrigger() + "</td>");
+            pw.println("<td>" + ConfigurationStats.formatMillis(p.getDurationNanos()) + "</td>");
+            pw.println("<td>");
+            pw.println("<ul>");
+            for(Map.Entry<String, Long> e : p.getPhases().entrySet()){
+                pw.println("<li>" + e.getKey() + " : " + ConfigurationStats.formatMillis(e.getValue()) + "</li>");
+            }
+            pw.println("</ul>");
+            pw.println("</td>");
+            pw.println("<td>" + p.getAppenderCount() + "</td>");
+            pw.println("<td>" + p.getFragmentsParsed() + "</td>");
+            pw.println("<td>" + ConfigurationStats.formatMillis(p.getConsoleNanos()) + "</td>");
             pw.println("</tr>");
         }
 
@@ -332,10 +754,22 @@ public class SlingLogPanel extends HttpServlet {
 
 
     private static String getName(Appender<ILoggingEvent> appender) {
+        if(appender instanceof MeteredAppender){
+            return getName(((MeteredAppender) appender).getDelegate());
+        }
+
+        if(appender instanceof SlingAsyncAppender){
+            SlingAsyncAppender async = (SlingAsyncAppender) appender;
+            return String.format("%s [async %s, queued %d/%d, dropped %d, dropped debug %d]",
+                    getName(async.getDelegate()), async.getOverflowPolicy(), async.getPendingCount(),
+                    async.getQueueSize(), async.getDroppedCount(), async.getDroppedDebugCount());
+        }
+
         //For legacy config based appender the appender name is the file
         //name. So omit the appender name
         if(appender instanceof SlingRollingFileAppender){
-            return "File : " + ((FileAppender) appender).getFile();
+            SlingRollingFileAppender<ILoggingEvent> sa = (SlingRollingFileAppender<ILoggingEvent>) appender;
+            return "File : " + sa.getFile() + (sa.isMemoryMapped() ? " [mmap]" : "");
         }
 
         //For normal file appender we also display the name of appender
@@ -349,8 +783,9 @@ public class SlingLogPanel extends HttpServlet {
 
     private static String formatPid(final String consoleAppRoot,
                              final Appender<ILoggingEvent> appender, final LoggerStateContext ctx) {
-        if(appender instanceof SlingRollingFileAppender){
-            final LogWriter lw = ((SlingRollingFileAppender) appender).getLogWriter();
+        final Appender<ILoggingEvent> target = Util.unwrap(appender);
+        if(target instanceof SlingRollingFileAppender){
+            final LogWriter lw = ((SlingRollingFileAppender) target).getLogWriter();
             if (lw.isImplicit()) {
                 return "[implicit]";
             }
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.apache.sling.extensions.logback.internal.util.LoggerRates;
+import org.apache.sling.extensions.logback.internal.util.Util;
+import org.slf4j.Marker;
+
+/**
+ * TurboFilter which counts the events logged per logger and level in {@link LoggerRates}
+ * to find the noisiest loggers. It never influences whether an event gets logged.
+ * <p>
+ * A reset of the LoggerContext drops all TurboFilters, so the filter adds itself
+ * back upon each reset. The counts are kept across resets.
+ */
+public class TopLoggersFilter extends TurboFilter implements LogbackResetListener {
+    private final LoggerRates rates;
+
+    public TopLoggersFilter(LoggerRates rates) {
+        this.rates = rates;
+        setName("SlingTopLoggers");
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+                              Object[] params, Throwable t) {
+        //The isXXXEnabled checks reach here without a message. Events below the
+        //effective level of the logger would be discarded later on
+        if (format != null && level != null && level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            rates.mark(logger.getName(), Util.levelIndex(level));
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    public void onReset(LoggerContext context) {
+        if (!context.getTurboFilterList().contains(this)) {
+            context.addTurboFilter(this);
+        }
+    }
+
+    public void onResetComplete(LoggerContext context) {
+    }
+
+    public LoggerRates getRates() {
+        return rates;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import org.apache.sling.extensions.logback.internal.util.CompositeTurboFilter;
+import org.apache.sling.extensions.logback.internal.util.CompositeTurboFilter.ScopedFilter;
+import org.apache.sling.extensions.logback.internal.util.Util;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Tracks TurboFilter services and adds them to the LoggerContext through a single
+ * {@link CompositeTurboFilter}. The composite is only added while at least one
+ * filter is registered, so logging calls do not pay for it otherwise.
+ * <p>
+ * The filters are consulted in the order of their service ranking. The optional
+ * service properties {@link #PROP_LOGGERS} and {@link #PROP_LEVELS} limit the calls
+ * for which a filter is consulted.
+ */
+public class TurboFilterTracker extends ServiceTracker implements LogbackResetListener {
+    /**
+     * Names of the loggers, including their descendants, for which the filter is
+     * consulted. All loggers if not set
+     */
+    static final String PROP_LOGGERS = "loggers";
+
+    /**
+     * Levels for which the filter is consulted. All levels if not set
+     */
+    static final String PROP_LEVELS = "levels";
+
+    private final LoggerContext loggerContext;
+
+    private final CompositeTurboFilter composite = new CompositeTurboFilter();
+
+    private final Map<ServiceReference, ScopedFilter> filters = new HashMap<ServiceReference, ScopedFilter>();
+
+    public TurboFilterTracker(BundleContext context, LoggerContext loggerContext) throws InvalidSyntaxException {
+        super(context, TurboFilter.class.getName(), null);
+        this.loggerContext = loggerContext;
+        composite.setContext(loggerContext);
+        super.open();
+    }
+
+    @Override
+    public Object addingService(ServiceReference reference) {
+        TurboFilter tf = (TurboFilter) super.addingService(reference);
+        tf.setContext(loggerContext);
+        tf.start();
+
+        synchronized (filters) {
+            filters.put(reference, createScopedFilter(reference, tf));
+            update();
+        }
+        return tf;
+    }
+
+    @Override
+    public void modifiedService(ServiceReference reference, Object service) {
+        synchronized (filters) {
+            filters.put(reference, createScopedFilter(reference, (TurboFilter) service));
+            update();
+        }
+    }
+
+    @Override
+    public void removedService(ServiceReference reference, Object service) {
+        synchronized (filters) {
+            filters.remove(reference);
+            update();
+        }
+        ((TurboFilter) service).stop();
+        super.removedService(reference, service);
+    }
+
+    public void onReset(LoggerContext context) {
+        //Reset drops and stops all TurboFilters
+        synchronized (filters) {
+            install();
+        }
+    }
+
+    public void onResetComplete(LoggerContext context) {
+    }
+
+    @Override
+    public synchronized void close() {
+        super.close();
+        synchronized (filters) {
+            filters.clear();
+            update();
+        }
+    }
+
+    public List<ScopedFilter> getFilters() {
+        return composite.getFilters();
+    }
+
+    private void update() {
+        //Highest ranked filter comes first
+        final List<ServiceReference> refs = new ArrayList<ServiceReference>(filters.keySet());
+        Collections.sort(refs, Collections.reverseOrder());
+
+        final List<ScopedFilter> ordered = new ArrayList<ScopedFilter>(refs.size());
+        for (ServiceReference ref : refs) {
+            ordered.add(filters.get(ref));
+        }
+        composite.setFilters(ordered);
+        install();
+    }
+
+    /**
+     * Adds the composite to the context if some filter is registered and removes it
+     * otherwise
+     */
+    private void install() {
+        final List<TurboFilter> list = loggerContext.getTurboFilterList();
+        if (composite.isEmpty()) {
+            list.remove(composite);
+            return;
+        }
+
+        if (!composite.isStarted()) {
+            composite.start();
+        }
+        if (!list.contains(composite)) {
+            loggerContext.addTurboFilter(composite);
+        }
+    }
+
+    private static ScopedFilter createScopedFilter(ServiceReference reference, TurboFilter filter) {
+        List<Level> levels = new ArrayList<Level>();
+        for (String name : Util.toList(reference.getProperty(PROP_LEVELS))) {
+            Level level = Level.toLevel(name, null);
+            if (level != null) {
+                levels.add(level);
+            }
+        }
+        return new ScopedFilter(filter, levels, Util.toList(reference.getProperty(PROP_LOGGERS)));
+    }
+}
@@ -35,6 +35,8 @@ public class ConfigAdminSupport {
 
     private ServiceRegistration configConfigurer;
 
+    private ServiceRegistration rateLimitConfigurer;
+
     public ConfigAdminSupport(BundleContext context,LogConfigManager logConfigManager) {
         // prepare registration properties (will be reused)
         Dictionary<String, String> props = new Hashtable<String, String>();
@@ -68,6 +70,15 @@ public class ConfigAdminSupport {
         configConfigurer = context.registerService(
                 "org.osgi.service.cm.ManagedServiceFactory", msf, props);
 
+        // register for rate limit configuration
+        msf = new ConfigurationServiceFactory(
+                logConfigManager,
+                "org.apache.sling.extensions.logback.internal.config.RateLimitManagedServiceFactory");
+        props.put(Constants.SERVICE_PID, LogConfigManager.FACTORY_PID_RATE_LIMITS);
+        props.put(Constants.SERVICE_DESCRIPTION, "Logger rate limit configurator");
+        rateLimitConfigurer = context.registerService(
+                "org.osgi.service.cm.ManagedServiceFactory", msf, props);
+
     }
 
     public void shutdown() {
@@ -85,5 +96,10 @@ public class ConfigAdminSupport {
             configConfigurer.unregister();
             configConfigurer = null;
         }
+
+        if (rateLimitConfigurer != null) {
+            rateLimitConfigurer.unregister();
+            rateLimitConfigurer = null;
+        }
     }
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.pattern.Converter;
+import ch.qos.logback.core.pattern.ConverterUtil;
+import ch.qos.logback.core.pattern.parser.Parser;
+import ch.qos.logback.core.spi.ContextAware;
+import ch.qos.logback.core.spi.ScanException;
+
+/**
+ * PatternLayout which can lay out an event into a caller supplied buffer. The
+ * default {@link #doLayout(ILoggingEvent)} creates a new StringBuilder and String
+ * per event which is avoided when used via {@link #doLayout(ILoggingEvent, StringBuilder)}
+ *
+ * <p>The converter chain compiled by the base class is not accessible hence this
+ * layout compiles its own chain from the same pattern upon start</p>
+ */
+public class AppendablePatternLayout extends PatternLayout {
+    private Converter<ILoggingEvent> head;
+
+    @Override
+    public void start() {
+        super.start();
+        if (!isStarted()) {
+            return;
+        }
+
+        try {
+            Parser<ILoggingEvent> p = new Parser<ILoggingEvent>(getPattern());
+            p.setContext(getContext());
+            Converter<ILoggingEvent> h = p.compile(p.parse(), getEffectiveConverterMap());
+            if (postCompileProcessor != null) {
+                postCompileProcessor.process(h);
+            }
+            for (Converter<ILoggingEvent> c = h; c != null; c = c.getNext()) {
+                if (c instanceof ContextAware) {
+                    ((ContextAware) c).setContext(getContext());
+                }
+            }
+            ConverterUtil.startConverters(h);
+            head = h;
+        } catch (ScanException e) {
+            //Should not happen as the base class already parsed the same pattern. Fallback
+            //to the String based layout
+            addError("Failed to parse pattern \"" + getPattern() + "\".", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        head = null;
+        super.stop();
+    }
+
+    /**
+     * Appends the formatted event to the given buffer
+     */
+    public void doLayout(ILoggingEvent event, StringBuilder buf) {
+        Converter<ILoggingEvent> c = head;
+        if (c == null) {
+            buf.append(doLayout(event));
+            return;
+        }
+
+        while (c != null) {
+            c.write(buf, event);
+            c = c.getNext();
+        }
+    }
+}
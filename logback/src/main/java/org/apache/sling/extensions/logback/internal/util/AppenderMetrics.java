@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+
+/**
+ * Throughput and latency counters of a single appender. Updates are striped so
+ * they can be done on every event without adding contention between the logging
+ * threads.
+ * <p>
+ * For appenders created for OSGi configured log writers the counters are updated by
+ * the {@link LoggerSpecificEncoder} and the latency covers encoding and writing of the
+ * event. For whiteboard appenders they are updated by {@link MeteredAppender} and the
+ * latency covers the whole append call. The bytes written are not known for those.
+ */
+public class AppenderMetrics {
+    private final StripedCounter events = new StripedCounter();
+
+    private final StripedCounter bytes = new StripedCounter();
+
+    private final StripedCounter flushes = new StripedCounter();
+
+    private final StripedCounter errors = new StripedCounter();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public void eventWritten(long byteCount, long nanos) {
+        events.increment();
+        if (byteCount > 0) {
+            bytes.add(byteCount);
+        }
+        latency.record(nanos);
+    }
+
+    public void flushed() {
+        flushes.increment();
+    }
+
+    public void errorOccurred() {
+        errors.increment();
+    }
+
+    public long getEventCount() {
+        return events.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytes.sum();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the metrics of the given appender looking through async and metered
+     * wrappers
+     *
+     * @return null if the appender is not instrumented
+     */
+    public static AppenderMetrics forAppender(Appender<ILoggingEvent> appender) {
+        Appender<ILoggingEvent> a = appender;
+        while (a != null) {
+            if (a instanceof MeteredAppender) {
+                return ((MeteredAppender) a).getMetrics();
+            }
+            if (a instanceof OutputStreamAppender) {
+                Encoder<ILoggingEvent> encoder = ((OutputStreamAppender<ILoggingEvent>) a).getEncoder();
+                if (encoder instanceof LoggerSpecificEncoder) {
+                    return ((LoggerSpecificEncoder) encoder).getMetrics();
+                }
+            }
+            a = (a instanceof DelegatingAppender) ? ((DelegatingAppender) a).getDelegate() : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import ch.qos.logback.core.Context;
+import org.apache.sling.extensions.logback.internal.LogbackManager;
+
+/**
+ * Compresses rolled over log files in the background. At most the configured number
+ * of files is compressed at a time by daemon threads running with the configured
+ * priority. Threads are only kept while there is work to do.
+ * <p>
+ * Rolling policies use a {@link #newSerialExecutor() serial executor} to run the
+ * compressions of one log file in the order in which the files got rolled, while the
+ * compression of different log files can proceed in parallel.
+ */
+public class BackgroundCompressor {
+    public static final String GZ_SUFFIX = ".gz";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Time in seconds after which an idle compression thread terminates
+     */
+    private static final long KEEP_ALIVE = 60;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong compressedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * @param maxThreads max number of files compressed concurrently
+     * @param priority priority of the compression threads
+     */
+    public BackgroundCompressor(int maxThreads, final int priority) {
+        final int threads = Math.max(1, maxThreads);
+        final int threadPriority = Math.min(Thread.MAX_PRIORITY, Math.max(Thread.MIN_PRIORITY, priority));
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Sling Logback Compressor " + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(threadPriority);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the compressor of the LogbackManager associated with the context
+     *
+     * @return null if the context is not managed by the LogbackManager
+     */
+    public static BackgroundCompressor getInstance(Context context) {
+        LogbackManager manager = context != null
+                ? (LogbackManager) context.getObject(LogbackManager.class.getName()) : null;
+        return manager != null ? manager.getCompressor() : null;
+    }
+
+    /**
+     * Returns an executor which runs the submitted tasks one after the other on the
+     * compression threads
+     */
+    public Executor newSerialExecutor() {
+        return new SerialExecutor();
+    }
+
+    /**
+     * Compresses the source file to the target file and deletes the source file. The
+     * data is written to a temporary file first so that the target file is either
+     * complete or absent
+     */
+    public void compress(File source, File target) throws IOException {
+        final long sourceLength = source.length();
+        final File tmp = new File(target.getPath() + TMP_SUFFIX);
+        try {
+            gzip(source, tmp);
+            if (target.exists() && !target.delete()) {
+                throw new IOException("Failed to delete existing file " + target);
+            }
+            if (!tmp.renameTo(target)) {
+                throw new IOException("Failed to rename " + tmp + " to " + target);
+            }
+        } catch (IOException e) {
+            failedCount.incrementAndGet();
+            tmp.delete();
+            throw e;
+        }
+
+        if (!source.delete()) {
+            throw new IOException("Failed to delete compressed file " + source);
+        }
+        compressedCount.incrementAndGet();
+        savedBytes.addAndGet(sourceLength - target.length());
+    }
+
+    /**
+     * Number of tasks waiting for a compression thread
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public long getCompressedCount() {
+        return compressedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Difference between the size of the rolled files and their compressed size
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    /**
+     * Stops accepting new tasks. Compressions already started are completed by the
+     * daemon threads while files still queued remain uncompressed
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    static void gzip(File source, File target) throws IOException {
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new GZIPOutputStream(new FileOutputStream(target), BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            out.close();
+            out = null;
+        } finally {
+            close(in);
+            close(out);
+        }
+    }
+
+    private static void close(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                //Ignore
+            }
+        }
+    }
+
+    private class SerialExecutor implements Executor {
+        private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+        private boolean running;
+
+        public synchronized void execute(Runnable task) {
+            tasks.add(task);
+            if (!running) {
+                running = true;
+                try {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            drain();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    running = false;
+                    tasks.clear();
+                    throw e;
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    //Tasks report their failures on their own. Keep serving the queue
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable index which resolves a logger name to the value registered for the
+ * most specific matching category. Categories are stored in a trie keyed on the
+ * dot separated segments of the logger name, so <code>com.foo.Bar</code> resolves
+ * to the value of <code>com.foo</code> unless <code>com.foo.Bar</code> itself is
+ * registered. The special category {@link #ROOT} matches every logger name.
+ * <p>
+ * Resolved values are memoized per logger name in a bounded cache. Once the cache
+ * reaches its limit it is cleared and refilled by subsequent lookups. To change
+ * the registered categories create a new index and publish it in place of the
+ * old one, which also drops the memoized results in one step.
+ *
+ * @param <V> type of the value registered against a category
+ */
+public class CategoryIndex<V> {
+    /**
+     * Category name which applies to all loggers. Matches
+     * {@link org.slf4j.Logger#ROOT_LOGGER_NAME}
+     */
+    public static final String ROOT = org.slf4j.Logger.ROOT_LOGGER_NAME;
+
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /**
+     * Marker stored in the cache for logger names which do not match any category
+     * as ConcurrentHashMap does not permit null values
+     */
+    private static final Object NO_MATCH = new Object();
+
+    private final Node<V> root = new Node<V>();
+
+    private final V defaultValue;
+
+    private final int maxCacheSize;
+
+    private final ConcurrentMap<String, Object> cache = new ConcurrentHashMap<String, Object>();
+
+    private final AtomicInteger cacheSize = new AtomicInteger();
+
+    public CategoryIndex(Map<String, ? extends V> valuesByCategory, V defaultValue) {
+        this(valuesByCategory, defaultValue, DEFAULT_CACHE_SIZE);
+    }
+
+    public CategoryIndex(Map<String, ? extends V> valuesByCategory, V defaultValue, int maxCacheSize) {
+        this.defaultValue = defaultValue;
+        this.maxCacheSize = maxCacheSize;
+        for (Map.Entry<String, ? extends V> e : valuesByCategory.entrySet()) {
+            add(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Returns the value of the most specific category matching the given logger name
+     * or the default value if no category matches
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String loggerName) {
+        Object result = cache.get(loggerName);
+        if (result == null) {
+            result = resolve(loggerName);
+            if (result == null) {
+                result = NO_MATCH;
+            }
+            memoize(loggerName, result);
+        }
+        return result == NO_MATCH ? defaultValue : (V) result;
+    }
+
+    public boolean isEmpty() {
+        return root.value == null && root.children == null;
+    }
+
+    private void memoize(String loggerName, Object result) {
+        if (cacheSize.incrementAndGet() > maxCacheSize) {
+            //Too many distinct logger names. Start over instead of tracking
+            //usage to keep the lookup path cheap
+            cache.clear();
+            cacheSize.set(1);
+        }
+        cache.put(loggerName, result);
+    }
+
+    private V resolve(String loggerName) {
+        Node<V> node = root;
+        V match = root.value;
+        int start = 0;
+        final int length = loggerName.length();
+        while (start < length && node.children != null) {
+            int end = loggerName.indexOf('.', start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.children.get(loggerName.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                match = node.value;
+            }
+            start = end + 1;
+        }
+        return match;
+    }
+
+    private void add(String category, V value) {
+        if (ROOT.equalsIgnoreCase(category)) {
+            root.value = value;
+            return;
+        }
+
+        Node<V> node = root;
+        for (String segment : category.split("\\.")) {
+            if (node.children == null) {
+                node.children = new HashMap<String, Node<V>>();
+            }
+            Node<V> child = node.children.get(segment);
+            if (child == null) {
+                child = new Node<V>();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        node.value = value;
+    }
+
+    private static class Node<V> {
+        Map<String, Node<V>> children;
+        V value;
+    }
+}
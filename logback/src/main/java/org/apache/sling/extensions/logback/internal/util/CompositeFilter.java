@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Filter which dispatches to a list of filters. The first filter returning a reply
+ * other than NEUTRAL decides, like for filters added to an appender directly.
+ * <p>
+ * Appenders do not support removing a single filter. Filters attached through one
+ * composite per appender can be added and removed by replacing the array of the
+ * composite, so events appended concurrently see either the old or the new filters
+ * and never pass unfiltered. The composite does not own the filters, so stopping it,
+ * like upon removal of the appender, leaves them running.
+ */
+public class CompositeFilter extends Filter<ILoggingEvent> {
+    @SuppressWarnings("unchecked")
+    private volatile Filter<ILoggingEvent>[] filters = new Filter[0];
+
+    public CompositeFilter() {
+        setName("SlingCompositeFilter");
+    }
+
+    /**
+     * Returns the composite attached to the appender, attaching a new one if required
+     */
+    public static CompositeFilter attachTo(Appender<ILoggingEvent> appender) {
+        synchronized (appender) {
+            CompositeFilter composite = getAttached(appender);
+            if (composite != null) {
+                return composite;
+            }
+            composite = new CompositeFilter();
+            composite.setContext(appender.getContext());
+            composite.start();
+            appender.addFilter(composite);
+            return composite;
+        }
+    }
+
+    /**
+     * Returns the composite attached to the appender
+     *
+     * @return null if none is attached
+     */
+    public static CompositeFilter getAttached(Appender<ILoggingEvent> appender) {
+        for (Filter<ILoggingEvent> f : appender.getCopyOfAttachedFiltersList()) {
+            if (f instanceof CompositeFilter) {
+                return (CompositeFilter) f;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        for (Filter<ILoggingEvent> f : filters) {
+            final FilterReply reply = f.decide(event);
+            if (reply != FilterReply.NEUTRAL) {
+                return reply;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    /**
+     * Appends the filter unless already present
+     *
+     * @return false if the filter was already present
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized boolean add(Filter<ILoggingEvent> filter) {
+        final List<Filter<ILoggingEvent>> list = new ArrayList<Filter<ILoggingEvent>>(Arrays.asList(filters));
+        if (list.contains(filter)) {
+            return false;
+        }
+        list.add(filter);
+        filters = list.toArray(new Filter[list.size()]);
+        return true;
+    }
+
+    /**
+     * @return false if the filter was not present
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized boolean remove(Filter<ILoggingEvent> filter) {
+        final List<Filter<ILoggingEvent>> list = new ArrayList<Filter<ILoggingEvent>>(Arrays.asList(filters));
+        if (!list.remove(filter)) {
+            return false;
+        }
+        filters = list.toArray(new Filter[list.size()]);
+        return true;
+    }
+
+    public List<Filter<ILoggingEvent>> getFilters() {
+        return Arrays.asList(filters.clone());
+    }
+
+    public boolean contains(Filter<ILoggingEvent> filter) {
+        return Arrays.asList(filters).contains(filter);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+/**
+ * TurboFilter which dispatches to a list of filters, each limited to a set of levels
+ * and logger name prefixes. The first filter returning a reply other than NEUTRAL
+ * decides, like for filters added to the LoggerContext directly.
+ * <p>
+ * The filters applicable to a logger name are resolved through a {@link CategoryIndex}
+ * built whenever the filters change, so the scope check costs one memoized lookup per
+ * call irrespective of the number of filters. Filters outside the scope of a call are
+ * not invoked at all. The composite does not own the filters, so stopping it, like
+ * upon a context reset, leaves them running.
+ */
+public class CompositeTurboFilter extends TurboFilter {
+    private volatile Dispatcher dispatcher = new Dispatcher(Collections.<ScopedFilter>emptyList());
+
+    public CompositeTurboFilter() {
+        setName("SlingCompositeTurboFilter");
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+                              Object[] params, Throwable t) {
+        final Dispatcher d = dispatcher;
+        final ScopedFilter[] filters = d.getFilters(logger.getName());
+        final int levelBit = level != null ? 1 << Util.levelIndex(level) : ScopedFilter.ALL_LEVELS;
+        for (ScopedFilter f : filters) {
+            if ((f.levelMask & levelBit) == 0) {
+                continue;
+            }
+            final FilterReply reply = f.filter.decide(marker, logger, level, format, params, t);
+            if (reply != FilterReply.NEUTRAL) {
+                return reply;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    /**
+     * Replaces the filters. Calls in progress complete with the old filters
+     *
+     * @param filters filters in the order in which they are to be consulted
+     */
+    public void setFilters(List<ScopedFilter> filters) {
+        dispatcher = new Dispatcher(new ArrayList<ScopedFilter>(filters));
+    }
+
+    public List<ScopedFilter> getFilters() {
+        return dispatcher.all;
+    }
+
+    public boolean isEmpty() {
+        return dispatcher.all.isEmpty();
+    }
+
+    /**
+     * A filter along with the levels and loggers it applies to
+     */
+    public static class ScopedFilter {
+        static final int ALL_LEVELS = -1;
+
+        final TurboFilter filter;
+
+        final int levelMask;
+
+        final Set<String> loggers;
+
+        /**
+         * @param levels levels the filter is consulted for. All levels if empty
+         * @param loggers names of loggers the filter is consulted for, including
+         *                their descendants. All loggers if empty or if the root
+         *                logger is included
+         */
+        public ScopedFilter(TurboFilter filter, Collection<Level> levels, Collection<String> loggers) {
+            this.filter = filter;
+            int mask = levels.isEmpty() ? ALL_LEVELS : 0;
+            for (Level l : levels) {
+                mask |= 1 << Util.levelIndex(l);
+            }
+            this.levelMask = mask;
+            final Set<String> names = new LinkedHashSet<String>();
+            for (String logger : loggers) {
+                if (CategoryIndex.ROOT.equalsIgnoreCase(logger)) {
+                    names.clear();
+                    break;
+                }
+                names.add(logger);
+            }
+            this.loggers = Collections.unmodifiableSet(names);
+        }
+
+        public TurboFilter getFilter() {
+            return filter;
+        }
+
+        boolean isGlobal() {
+            return loggers.isEmpty();
+        }
+
+        /**
+         * Checks if the filter applies to the given category. Categories are only
+         * compared among each other, so a category matches if it is one of the loggers
+         * or a descendant of one
+         */
+        boolean appliesTo(String category) {
+            if (isGlobal()) {
+                return true;
+            }
+            for (String logger : loggers) {
+                if (category.equals(logger) || category.startsWith(logger + ".")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Immutable view of the filters optimized for dispatch
+     */
+    private static class Dispatcher {
+        final List<ScopedFilter> all;
+
+        /**
+         * Filters without logger scope. Used for loggers outside of any scope
+         */
+        final ScopedFilter[] global;
+
+        /**
+         * Null if no filter is limited to some loggers
+         */
+        final CategoryIndex<ScopedFilter[]> index;
+
+        Dispatcher(List<ScopedFilter> filters) {
+            this.all = Collections.unmodifiableList(filters);
+
+            final Set<String> categories = new LinkedHashSet<String>();
+            final List<ScopedFilter> global = new ArrayList<ScopedFilter>();
+            for (ScopedFilter f : filters) {
+                if (f.isGlobal()) {
+                    global.add(f);
+                }
+                categories.addAll(f.loggers);
+            }
+            this.global = global.toArray(new ScopedFilter[global.size()]);
+
+            if (categories.isEmpty()) {
+                this.index = null;
+                return;
+            }
+
+            //Each category gets all filters applicable to it in order so that the
+            //most specific match of the index is the complete list
+            final Map<String, ScopedFilter[]> byCategory = new HashMap<String, ScopedFilter[]>();
+            for (String category : categories) {
+                final List<ScopedFilter> applicable = new ArrayList<ScopedFilter>();
+                for (ScopedFilter f : filters) {
+                    if (f.appliesTo(category)) {
+                        applicable.add(f);
+                    }
+                }
+                byCategory.put(category, applicable.toArray(new ScopedFilter[applicable.size()]));
+            }
+            this.index = new CategoryIndex<ScopedFilter[]>(byCategory, this.global);
+        }
+
+        ScopedFilter[] getFilters(String loggerName) {
+            return index == null ? global : index.get(loggerName);
+        }
+    }
+}
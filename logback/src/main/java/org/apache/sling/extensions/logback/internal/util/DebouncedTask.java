@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a task once a burst of requests for it has settled. The task is run after
+ * no new request arrived for the quiet period, but at the latest after the max delay
+ * counted from the first request of the burst. Requests arriving while the task runs
+ * lead to one more run after it.
+ * <p>
+ * The executor must run the scheduled checks one after the other, like a single
+ * threaded ScheduledExecutorService does, so that runs of the task do not overlap.
+ */
+public class DebouncedTask {
+    private final ScheduledExecutorService executor;
+
+    private final Runnable task;
+
+    private final long quietPeriodNanos;
+
+    private final long maxDelayNanos;
+
+    private final Object lock = new Object();
+
+    /**
+     * Time of the first request which is not yet served by a run
+     */
+    private long firstRequestTime;
+
+    private long lastRequestTime;
+
+    private boolean pending;
+
+    private boolean scheduled;
+
+    private long requestCount;
+
+    private long runCount;
+
+    /**
+     * @param quietPeriod time in millis without requests after which the task is run
+     * @param maxDelay max time in millis by which the task is deferred after the first
+     *                 request of a burst
+     */
+    public DebouncedTask(ScheduledExecutorService executor, Runnable task, long quietPeriod, long maxDelay) {
+        this.executor = executor;
+        this.task = task;
+        this.quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, quietPeriod));
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(quietPeriod, maxDelay));
+    }
+
+    /**
+     * Requests a run of the task
+     */
+    public void request() {
+        synchronized (lock) {
+            final long now = System.nanoTime();
+            if (!pending) {
+                pending = true;
+                firstRequestTime = now;
+            }
+            lastRequestTime = now;
+            requestCount++;
+
+            if (!scheduled) {
+                scheduled = schedule(quietPeriodNanos);
+            }
+        }
+    }
+
+    /**
+     * Number of requests made so far
+     */
+    public long getRequestCount() {
+        synchronized (lock) {
+            return requestCount;
+        }
+    }
+
+    /**
+     * Number of times the task got run so far
+     */
+    public long getRunCount() {
+        synchronized (lock) {
+            return runCount;
+        }
+    }
+
+    private boolean schedule(long delayNanos) {
+        try {
+            executor.schedule(new Check(), delayNanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            //Executor got shut down. Nothing to run the task on anymore
+            return false;
+        }
+    }
+
+    private class Check implements Runnable {
+        public void run() {
+            synchronized (lock) {
+                final long now = System.nanoTime();
+                final long deadline = Math.min(lastRequestTime + quietPeriodNanos,
+                        firstRequestTime + maxDelayNanos);
+                if (deadline - now > 0) {
+                    scheduled = schedule(deadline - now);
+                    return;
+                }
+
+                //Requests from here on are served by the next run
+                pending = false;
+                scheduled = false;
+                runCount++;
+            }
+            task.run();
+        }
+    }
+}
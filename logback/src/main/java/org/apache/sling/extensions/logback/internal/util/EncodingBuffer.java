@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reusable storage to lay out an event as text and convert it to bytes without
+ * allocating per event. UTF-8, US-ASCII and ISO-8859-1 are encoded directly while
+ * other charsets go through a cached {@link CharsetEncoder}. Unmappable or malformed
+ * input is replaced in the same way as {@link String#getBytes(java.nio.charset.Charset)}
+ * does.
+ * <p>
+ * Instances are not thread safe. Buffers grown by an unusually large event are
+ * dropped once the event is written so that a single large stack trace does not
+ * pin memory for the lifetime of the appender.
+ */
+public class EncodingBuffer {
+    private static final int INITIAL_SIZE = 256;
+
+    private static final int MAX_RETAINED_SIZE = 16 * 1024;
+
+    private static final byte REPLACEMENT = (byte) '?';
+
+    private static final int MODE_UTF8 = 0;
+
+    private static final int MODE_ASCII = 1;
+
+    private static final int MODE_LATIN1 = 2;
+
+    private static final int MODE_GENERIC = 3;
+
+    private final int mode;
+
+    private final CharsetEncoder encoder;
+
+    private StringBuilder text = new StringBuilder(INITIAL_SIZE);
+
+    private char[] chars = new char[INITIAL_SIZE];
+
+    private byte[] bytes = new byte[INITIAL_SIZE * 3];
+
+    private CharBuffer charBuffer;
+
+    private ByteBuffer byteBuffer;
+
+    private int length;
+
+    public EncodingBuffer(Charset charset) {
+        String name = charset.name();
+        if ("UTF-8".equals(name)) {
+            mode = MODE_UTF8;
+            encoder = null;
+        } else if ("US-ASCII".equals(name)) {
+            mode = MODE_ASCII;
+            encoder = null;
+        } else if ("ISO-8859-1".equals(name)) {
+            mode = MODE_LATIN1;
+            encoder = null;
+        } else {
+            mode = MODE_GENERIC;
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+
+    /**
+     * Returns the emptied text buffer into which the event has to be laid out
+     */
+    public StringBuilder getText() {
+        text.setLength(0);
+        return text;
+    }
+
+    /**
+     * Encodes the current content of the text buffer. The result can be read
+     * via {@link #getBytes()} and {@link #getLength()}
+     */
+    public void encode() {
+        final int len = text.length();
+        if (chars.length < len) {
+            chars = new char[len];
+        }
+        text.getChars(0, len, chars, 0);
+
+        switch (mode) {
+            case MODE_UTF8:
+                encodeUtf8(len);
+                break;
+            case MODE_ASCII:
+                encodeSingleByte(len, 0x80);
+                break;
+            case MODE_LATIN1:
+                encodeSingleByte(len, 0x100);
+                break;
+            default:
+                encodeGeneric(len);
+        }
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Releases buffers which were grown beyond the retained size limit
+     */
+    public void trim() {
+        if (text.capacity() > MAX_RETAINED_SIZE) {
+            text = new StringBuilder(INITIAL_SIZE);
+        }
+        if (chars.length > MAX_RETAINED_SIZE) {
+            chars = new char[INITIAL_SIZE];
+            charBuffer = null;
+        }
+        if (bytes.length > MAX_RETAINED_SIZE * 3) {
+            bytes = new byte[INITIAL_SIZE * 3];
+            byteBuffer = null;
+        }
+    }
+
+    private void encodeUtf8(final int len) {
+        ensureByteCapacity(len * 3);
+        final char[] src = chars;
+        final byte[] dst = bytes;
+        int j = 0;
+        for (int i = 0; i < len; i++) {
+            char c = src[i];
+            if (c < 0x80) {
+                dst[j++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[j++] = (byte) (0xc0 | (c >> 6));
+                dst[j++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(src[i + 1])) {
+                    int cp = Character.toCodePoint(c, src[++i]);
+                    dst[j++] = (byte) (0xf0 | (cp >> 18));
+                    dst[j++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    dst[j++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    dst[j++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    dst[j++] = REPLACEMENT;
+                }
+            } else {
+                dst[j++] = (byte) (0xe0 | (c >> 12));
+                dst[j++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                dst[j++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        length = j;
+    }
+
+    private void encodeSingleByte(final int len, final int limit) {
+        ensureByteCapacity(len);
+        final char[] src = chars;
+        final byte[] dst = bytes;
+        int j = 0;
+        for (int i = 0; i < len; i++) {
+            char c = src[i];
+            if (c < limit) {
+                dst[j++] = (byte) c;
+            } else {
+                //A surrogate pair is a single unmappable character
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(src[i + 1])) {
+                    i++;
+                }
+                dst[j++] = REPLACEMENT;
+            }
+        }
+        length = j;
+    }
+
+    private void encodeGeneric(final int len) {
+        if (charBuffer == null || charBuffer.array() != chars) {
+            charBuffer = CharBuffer.wrap(chars);
+        }
+        charBuffer.clear();
+        charBuffer.limit(len);
+
+        ensureByteCapacity((int) (len * encoder.maxBytesPerChar()));
+        if (byteBuffer == null || byteBuffer.array() != bytes) {
+            byteBuffer = ByteBuffer.wrap(bytes);
+        }
+
+        while (true) {
+            byteBuffer.clear();
+            encoder.reset();
+            CoderResult result = encoder.encode(charBuffer, byteBuffer, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(byteBuffer);
+            }
+            if (!result.isOverflow()) {
+                break;
+            }
+            charBuffer.rewind();
+            bytes = new byte[bytes.length * 2];
+            byteBuffer = ByteBuffer.wrap(bytes);
+        }
+        length = byteBuffer.position();
+    }
+
+    private void ensureByteCapacity(int required) {
+        if (bytes.length < required) {
+            bytes = new byte[required];
+        }
+    }
+}
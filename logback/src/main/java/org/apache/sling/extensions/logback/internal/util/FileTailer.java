@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
+
+/**
+ * Copies the end of a log file. The start of the requested part is found by reading
+ * the file backwards in blocks from the end, so the cost depends on the amount of
+ * data returned and not on the size of the file.
+ * <p>
+ * Lines logged within a time range can be copied from the active and rolled over
+ * files as well. The part of a file to read is then located through its
+ * {@link TimestampIndex}.
+ */
+public final class FileTailer {
+    private static final int BLOCK_SIZE = 8192;
+
+    private FileTailer() {
+    }
+
+    /**
+     * Writes the end of the active file of the appender using the charset of its encoder
+     *
+     * @see #tail(File, long, int, long, Charset, Writer)
+     */
+    public static void tail(FileAppender<?> appender, int lines, long maxBytes, Writer out) throws IOException {
+        final File file = new File(appender.getFile());
+        final long end = appender instanceof SlingRollingFileAppender
+                ? ((SlingRollingFileAppender<?>) appender).getCurrentFileLength() : file.length();
+        tail(file, end, lines, maxBytes, getCharset(appender), out);
+    }
+
+    /**
+     * Writes the lines of the active and rolled over files of the appender which got
+     * logged within the time range. Rolled over files are skipped if the time range
+     * recorded for them in the {@link RotatedFileIndex} does not overlap. Within a file
+     * only the part located by its {@link TimestampIndex} is read, or the whole file if
+     * there is none.
+     * <p>
+     * If the date pattern of the lines is known the lines outside the range are
+     * dropped. Lines without a timestamp like those of stack traces go along with the
+     * preceding line. Otherwise the output extends to the granularity of the index.
+     *
+     * @param from start of the range in millis, inclusive
+     * @param to end of the range in millis, inclusive
+     */
+    public static void copyTimeRange(SlingRollingFileAppender<?> appender, long from, long to, Writer out)
+            throws IOException {
+        final TimestampIndex timestampIndex = appender.getTimestampIndex();
+        final DateFormat format = timestampIndex != null ? timestampIndex.newDateFormat() : null;
+        final Charset charset = getCharset(appender);
+
+        final RotatedFileIndex index = appender.getLogWriter() != null
+                ? appender.getLogWriter().getRotatedFileIndex() : null;
+        long activeSince = 0;
+        if (index != null) {
+            for (RotatedFileIndex.Segment s : index.getSegments()) {
+                if (s.getLastTimestamp() >= from && s.getFirstTimestamp() <= to && s.getFile().exists()) {
+                    final File file = s.getFile();
+                    final long length = s.isCompressed() ? -1 : file.length();
+                    copyTimeRange(file, length, timestampIndex, true, format, from, to, charset, out);
+                }
+                activeSince = Math.max(activeSince, s.getLastTimestamp());
+            }
+        }
+
+        if (to >= activeSince) {
+            copyTimeRange(new File(appender.getFile()), appender.getCurrentFileLength(), timestampIndex, false,
+                    format, from, to, charset, out);
+        }
+    }
+
+    /**
+     * @param dataLength length of the data in the file. Negative for compressed files
+     * @param timestampIndex null if the file is not indexed
+     * @param rebuild true if a missing or stale timestamp index should be rebuilt
+     * @param format format of the timestamps of the lines. Null if not known
+     */
+    static void copyTimeRange(File file, long dataLength, TimestampIndex timestampIndex,
+            boolean rebuild, DateFormat format, long from, long to, Charset charset, Writer out)
+            throws IOException {
+        final boolean compressed = file.getName().endsWith(BackgroundCompressor.GZ_SUFFIX);
+        final RandomAccessFile raf = compressed ? null : new RandomAccessFile(file, "r");
+        InputStream in = null;
+        try {
+            long end = -1;
+            if (raf != null) {
+                end = skipPadding(raf, Math.min(dataLength, raf.length()));
+            }
+
+            long start = 0;
+            final TimestampIndex.Entries entries = timestampIndex != null
+                    ? timestampIndex.read(file, end, rebuild) : null;
+            if (entries != null) {
+                start = entries.findStart(from);
+                final long indexedEnd = entries.findEnd(to);
+                if (indexedEnd >= 0) {
+                    end = end >= 0 ? Math.min(end, indexedEnd) : indexedEnd;
+                }
+            }
+
+            if (raf != null) {
+                raf.seek(start);
+                in = Channels.newInputStream(raf.getChannel());
+            } else {
+                in = new GZIPInputStream(new FileInputStream(file), BLOCK_SIZE);
+                skipFully(in, start);
+            }
+            if (end >= 0) {
+                in = new BoundedInputStream(in, end - start);
+            }
+            copyLines(new BufferedReader(new InputStreamReader(in, charset), BLOCK_SIZE), format, from, to, out);
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+            if (raf != null) {
+                raf.close();
+            }
+        }
+    }
+
+    private static void copyLines(BufferedReader reader, DateFormat format, long from, long to, Writer out)
+            throws IOException {
+        final ParsePosition pos = new ParsePosition(0);
+        boolean include = format == null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (format != null) {
+                pos.setIndex(0);
+                final Date date = format.parse(line, pos);
+                if (date != null) {
+                    include = date.getTime() >= from && date.getTime() <= to;
+                }
+            }
+            if (include) {
+                out.write(line);
+                out.write('\n');
+            }
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long n = in.skip(remaining);
+            if (n <= 0) {
+                if (in.read() == -1) {
+                    return;
+                }
+                remaining--;
+            } else {
+                remaining -= n;
+            }
+        }
+    }
+
+    /**
+     * Returns the charset used by the encoder of the appender. Falls back to the
+     * platform default like the encoder does
+     */
+    static Charset getCharset(FileAppender<?> appender) {
+        Charset charset = null;
+        if (appender.getEncoder() instanceof LayoutWrappingEncoder) {
+            charset = ((LayoutWrappingEncoder<?>) appender.getEncoder()).getCharset();
+        }
+        return charset != null ? charset : Charset.defaultCharset();
+    }
+
+    /**
+     * Writes the end of the file to the writer
+     *
+     * @param end length of the data in the file. Trailing NUL bytes used as padding
+     *            by memory mapped files are skipped
+     * @param lines max number of lines to write. Zero or less for no limit
+     * @param maxBytes max number of bytes to read. Zero or less for no limit. If the
+     *                 limit starts within a line the data is written from the next line on
+     */
+    public static void tail(File file, long end, int lines, long maxBytes, Charset charset, Writer out)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long dataEnd = skipPadding(raf, Math.min(end, raf.length()));
+            long start = 0;
+            if (maxBytes > 0 && dataEnd > maxBytes) {
+                start = nextLineStart(raf, dataEnd - maxBytes, dataEnd);
+            }
+            if (lines > 0) {
+                start = Math.max(start, findLinesStart(raf, dataEnd, lines));
+            }
+            copy(raf, start, dataEnd, charset, out);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the offset at which the last given number of lines before end start. A
+     * line separator directly before end terminates the last line
+     */
+    static long findLinesStart(RandomAccessFile raf, long end, int lines) throws IOException {
+        final byte[] block = new byte[BLOCK_SIZE];
+        long pos = end;
+        int found = 0;
+        while (pos > 0) {
+            final int len = (int) Math.min(BLOCK_SIZE, pos);
+            pos -= len;
+            raf.seek(pos);
+            raf.readFully(block, 0, len);
+            for (int i = len - 1; i >= 0; i--) {
+                //The separator of the last line does not start a new line
+                if (block[i] == '\n' && pos + i != end - 1) {
+                    if (++found == lines) {
+                        return pos + i + 1;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the offset following the first line separator at or after the given
+     * offset. If the offset is the start of a line it is returned as is
+     */
+    static long nextLineStart(RandomAccessFile raf, long offset, long end) throws IOException {
+        if (offset <= 0) {
+            return 0;
+        }
+        final byte[] block = new byte[BLOCK_SIZE];
+        long pos = offset - 1;
+        while (pos < end) {
+            final int len = (int) Math.min(BLOCK_SIZE, end - pos);
+            raf.seek(pos);
+            raf.readFully(block, 0, len);
+            for (int i = 0; i < len; i++) {
+                if (block[i] == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += len;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the end of the data ignoring trailing NUL bytes
+     */
+    static long skipPadding(RandomAccessFile raf, long end) throws IOException {
+        final byte[] block = new byte[BLOCK_SIZE];
+        long pos = end;
+        while (pos > 0) {
+            final int len = (int) Math.min(BLOCK_SIZE, pos);
+            raf.seek(pos - len);
+            raf.readFully(block, 0, len);
+            for (int i = len - 1; i >= 0; i--) {
+                if (block[i] != 0) {
+                    return pos - len + i + 1;
+                }
+            }
+            pos -= len;
+        }
+        return 0;
+    }
+
+    private static void copy(RandomAccessFile raf, long start, long end, Charset charset, Writer out)
+            throws IOException {
+        raf.seek(start);
+        final InputStream in = new BoundedInputStream(Channels.newInputStream(raf.getChannel()), end - start);
+        final Reader reader = new InputStreamReader(in, charset);
+        final char[] buffer = new char[BLOCK_SIZE];
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * Reads up to the given number of bytes from the wrapped stream
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
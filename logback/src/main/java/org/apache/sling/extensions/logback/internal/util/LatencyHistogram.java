@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with power of two buckets. Bucket <code>i</code> counts the
+ * durations d with 2<sup>i-1</sup> &lt;= d &lt; 2<sup>i</sup> nanos, so percentiles are
+ * reported as the upper bound of the bucket they fall into, which is precise to a
+ * factor of two. That is enough to tell a microsecond write from a millisecond one.
+ * <p>
+ * Like {@link StripedCounter} each stripe has its own row of buckets so that
+ * concurrent writers do not contend.
+ */
+public class LatencyHistogram {
+    /**
+     * Bucket 40 covers durations of about 9 minutes and longer
+     */
+    static final int BUCKETS = 41;
+
+    /**
+     * Row length rounded up so that rows do not share cache lines
+     */
+    private static final int ROW = (BUCKETS / StripedCounter.PADDING + 1) * StripedCounter.PADDING;
+
+    private final AtomicLongArray counts = new AtomicLongArray(StripedCounter.stripes() * ROW);
+
+    private final StripedCounter totalNanos = new StripedCounter();
+
+    public void record(long nanos) {
+        counts.incrementAndGet(StripedCounter.stripe() * ROW + bucket(nanos));
+        totalNanos.add(Math.max(0, nanos));
+    }
+
+    /**
+     * Number of recorded durations per bucket
+     */
+    public long[] getCounts() {
+        final long[] result = new long[BUCKETS];
+        final int stripes = StripedCounter.stripes();
+        for (int s = 0; s < stripes; s++) {
+            for (int b = 0; b < BUCKETS; b++) {
+                result[b] += counts.get(s * ROW + b);
+            }
+        }
+        return result;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (long c : getCounts()) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Mean of the recorded durations in nanos. Zero if nothing was recorded
+     */
+    public long getMean() {
+        final long count = getCount();
+        return count == 0 ? 0 : totalNanos.sum() / count;
+    }
+
+    /**
+     * Upper bound in nanos of the bucket containing the given percentile of the
+     * recorded durations. Zero if nothing was recorded
+     *
+     * @param percentile value between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+        return percentile(getCounts(), percentile);
+    }
+
+    static long percentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, percentile) / 100));
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return upperBound(b);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    static long upperBound(int bucket) {
+        return 1L << bucket;
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import ch.qos.logback.core.FileAppender;
+
+/**
+ * Searches the active and the rolled over files of a log file for lines matching a
+ * pattern. The files are searched in parallel on a bounded pool of daemon threads
+ * while the matches are written out file by file, from the oldest rolled over file to
+ * the active file, so the output is in the order in which the lines got logged.
+ * <p>
+ * Plain files are memory mapped and decoded chunk by chunk and the pattern is applied
+ * to a whole chunk at a time. Each chunk is unmapped once decoded so that the search
+ * does not keep a rollover from renaming or deleting the file. Only the lines
+ * containing a match are materialized.
+ * Compressed files are streamed through a decompressor and handled in the same way.
+ * <p>
+ * A search stops once the max number of matches got written or the timeout elapsed.
+ * Pending file searches are then cancelled. As matching cannot be interrupted, the
+ * chunk is handed to the pattern through a view which aborts the match once the search
+ * is done, so that a pattern with catastrophic backtracking does not keep the search
+ * threads busy.
+ */
+public class LogSearcher {
+    /**
+     * Upper bound on the number of matches returned by a single search
+     */
+    public static final int MAX_RESULTS_LIMIT = 10000;
+
+    /**
+     * Matched lines longer than this are cut off
+     */
+    static final int MAX_LINE_LENGTH = 2000;
+
+    /**
+     * Size of the region of a plain file mapped and decoded at a time
+     */
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Max number of file searches waiting for a thread. Further searches are rejected
+     */
+    private static final int MAX_QUEUED = 1000;
+
+    /**
+     * Time in seconds after which an idle search thread terminates
+     */
+    private static final long KEEP_ALIVE = 60;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param maxThreads max number of files searched concurrently
+     */
+    public LogSearcher(int maxThreads) {
+        final int threads = Math.max(1, maxThreads);
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Sling Logback Search " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Searches the active file of the appender and, for OSGi config based writers, its
+     * rolled over files as listed by the {@link RotatedFileIndex}
+     *
+     * @see #search(List, Charset, Pattern, int, long, Writer)
+     * @throws java.util.concurrent.RejectedExecutionException if too many searches are running
+     */
+    public Result search(FileAppender<?> appender, Pattern pattern, int maxResults, long timeout, Writer out)
+            throws IOException {
+        final List<Source> sources = new ArrayList<Source>();
+        if (appender instanceof SlingRollingFileAppender) {
+            final SlingRollingFileAppender<?> rfa = (SlingRollingFileAppender<?>) appender;
+            final RotatedFileIndex index = rfa.getLogWriter() != null
+                    ? rfa.getLogWriter().getRotatedFileIndex() : null;
+            if (index != null) {
+                for (RotatedFileIndex.Segment s : index.getSegments()) {
+                    sources.add(new Source(s.getFile(), Long.MAX_VALUE));
+                }
+            }
+            sources.add(new Source(new File(rfa.getFile()), rfa.getCurrentFileLength()));
+        } else {
+            sources.add(new Source(new File(appender.getFile()), Long.MAX_VALUE));
+        }
+        return search(sources, FileTailer.getCharset(appender), pattern, maxResults, timeout, out);
+    }
+
+    /**
+     * Writes the lines of the files matching the pattern as
+     * <code>&lt;file name&gt;:&lt;line number&gt;: &lt;line&gt;</code>. The pattern should be
+     * compiled with {@link Pattern#MULTILINE} for <code>^</code> and <code>$</code> to
+     * match at line boundaries
+     *
+     * @param sources files to search in the order in which their matches are written
+     * @param maxResults max number of matches to write. Limited to {@link #MAX_RESULTS_LIMIT}
+     * @param timeout time in millis after which the search is stopped
+     */
+    Result search(List<Source> sources, Charset charset, Pattern pattern, int maxResults, long timeout,
+            Writer out) throws IOException {
+        final Search search = new Search(pattern, charset,
+                Math.max(1, Math.min(maxResults, MAX_RESULTS_LIMIT)),
+                System.currentTimeMillis() + timeout);
+        final List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>(sources.size());
+        try {
+            for (Source s : sources) {
+                futures.add(executor.submit(new FileSearch(search, s)));
+            }
+
+            final Result result = new Result();
+            for (int i = 0; i < futures.size() && !search.stopped; i++) {
+                final Source source = sources.get(i);
+                final long remaining = search.deadline - System.currentTimeMillis();
+                try {
+                    final List<String> hits = futures.get(i).get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                    for (String hit : hits) {
+                        if (result.matchCount == search.maxResults) {
+                            break;
+                        }
+                        out.write(hit);
+                        out.write('\n');
+                        result.matchCount++;
+                    }
+                    result.searchedFiles++;
+                    out.flush();
+                } catch (TimeoutException e) {
+                    result.timedOut = true;
+                    break;
+                } catch (ExecutionException e) {
+                    //Rolled over files may get removed while the search is running
+                    if (!(e.getCause() instanceof FileNotFoundException)) {
+                        out.write("Error searching " + source.file.getName() + ": " + e.getCause() + "\n");
+                    }
+                }
+
+                if (result.matchCount == search.maxResults) {
+                    result.truncated = true;
+                    break;
+                }
+                //File searches stop at the deadline so the file may be incomplete
+                if (System.currentTimeMillis() > search.deadline) {
+                    result.timedOut = true;
+                    break;
+                }
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Search interrupted");
+        } finally {
+            search.stopped = true;
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Summary of a search
+     */
+    public static final class Result {
+        private int matchCount;
+
+        private int searchedFiles;
+
+        private boolean truncated;
+
+        private boolean timedOut;
+
+        public int getMatchCount() {
+            return matchCount;
+        }
+
+        /**
+         * Number of files whose matches got written
+         */
+        public int getSearchedFiles() {
+            return searchedFiles;
+        }
+
+        /**
+         * True if the search stopped because the max number of matches was reached
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * True if the search stopped before all files were searched because the
+         * timeout elapsed
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+    }
+
+    /**
+     * File to search along with the length of its data. Files ending with
+     * {@link BackgroundCompressor#GZ_SUFFIX} are decompressed
+     */
+    static final class Source {
+        final File file;
+
+        final long end;
+
+        /**
+         * @param end length of the data in the file. Trailing NUL bytes used as padding
+         *            by memory mapped files are skipped
+         */
+        Source(File file, long end) {
+            this.file = file;
+            this.end = end;
+        }
+
+        boolean isCompressed() {
+            return file.getName().endsWith(BackgroundCompressor.GZ_SUFFIX);
+        }
+    }
+
+    /**
+     * State shared by the file searches of one search
+     */
+    private static final class Search {
+        final Pattern pattern;
+
+        final Charset charset;
+
+        final int maxResults;
+
+        final long deadline;
+
+        volatile boolean stopped;
+
+        Search(Pattern pattern, Charset charset, int maxResults, long deadline) {
+            this.pattern = pattern;
+            this.charset = charset;
+            this.maxResults = maxResults;
+            this.deadline = deadline;
+        }
+
+        boolean isDone() {
+            return stopped || Thread.currentThread().isInterrupted()
+                    || System.currentTimeMillis() > deadline;
+        }
+    }
+
+    /**
+     * Collects the matching lines of a single file, at most the max number of matches
+     * of the search
+     */
+    private static final class FileSearch implements Callable<List<String>> {
+        private final Search search;
+
+        private final Source source;
+
+        private final Matcher matcher;
+
+        private final List<String> hits = new ArrayList<String>();
+
+        /**
+         * Number of the line at which the current chunk starts
+         */
+        private int lineNumber = 1;
+
+        FileSearch(Search search, Source source) {
+            this.search = search;
+            this.source = source;
+            this.matcher = search.pattern.matcher("");
+        }
+
+        public List<String> call() throws IOException {
+            if (!search.isDone()) {
+                if (source.isCompressed()) {
+                    searchCompressed();
+                } else {
+                    searchMapped();
+                }
+            }
+            return hits;
+        }
+
+        private void searchMapped() throws IOException {
+            final RandomAccessFile raf = new RandomAccessFile(source.file, "r");
+            try {
+                final FileChannel channel = raf.getChannel();
+                final long end = FileTailer.skipPadding(raf, Math.min(source.end, channel.size()));
+                final CharsetDecoder decoder = newDecoder();
+                long pos = 0;
+                while (pos < end) {
+                    final MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                            Math.min(CHUNK_SIZE, end - pos));
+                    final CharBuffer chars;
+                    int len = bytes.limit();
+                    try {
+                        //Decode up to the last complete line so that no line spans two chunks
+                        if (pos + len < end) {
+                            int last = len - 1;
+                            while (last >= 0 && bytes.get(last) != '\n') {
+                                last--;
+                            }
+                            if (last >= 0) {
+                                len = last + 1;
+                            }
+                        }
+                        bytes.limit(len);
+                        chars = decoder.decode(bytes);
+                    } finally {
+                        //Release the chunk right away as a mapped file cannot be renamed or
+                        //deleted on some platforms, which would make a rollover fail
+                        Unmapper.unmap(bytes);
+                    }
+                    if (!scan(chars)) {
+                        return;
+                    }
+                    pos += len;
+                }
+            } finally {
+                raf.close();
+            }
+        }
+
+        private void searchCompressed() throws IOException {
+            final Reader reader = new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(source.file)), newDecoder());
+            try {
+                final char[] buffer = new char[CHUNK_SIZE / 2];
+                int len = 0;
+                int n;
+                while ((n = reader.read(buffer, len, buffer.length - len)) != -1) {
+                    len += n;
+                    if (len < buffer.length) {
+                        continue;
+                    }
+                    int last = len - 1;
+                    while (last >= 0 && buffer[last] != '\n') {
+                        last--;
+                    }
+                    final int chunkLength = last >= 0 ? last + 1 : len;
+                    if (!scan(CharBuffer.wrap(buffer, 0, chunkLength))) {
+                        return;
+                    }
+                    System.arraycopy(buffer, chunkLength, buffer, 0, len - chunkLength);
+                    len -= chunkLength;
+                }
+                if (len > 0) {
+                    scan(CharBuffer.wrap(buffer, 0, len));
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        /**
+         * Applies the pattern to the chunk and records the lines containing a match
+         *
+         * @return false if the search should stop
+         */
+        private boolean scan(CharBuffer chunk) {
+            final int length = chunk.remaining();
+            matcher.reset(new AbortableCharSequence(chunk, search));
+            int counted = 0;
+            int from = 0;
+            while (from < length && find(from)) {
+                final int start = matcher.start();
+                int lineStart = start;
+                while (lineStart > from && chunk.get(lineStart - 1) != '\n') {
+                    lineStart--;
+                }
+                int lineEnd = start;
+                while (lineEnd < length && chunk.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+
+                lineNumber += countLines(chunk, counted, lineStart);
+                counted = lineStart;
+                hits.add(format(chunk, lineStart, lineEnd));
+
+                if (hits.size() >= search.maxResults || search.isDone()) {
+                    return false;
+                }
+                from = lineEnd + 1;
+            }
+            lineNumber += countLines(chunk, counted, length);
+            return !search.isDone();
+        }
+
+        /**
+         * @return false if there is no further match or the search is done
+         */
+        private boolean find(int from) {
+            try {
+                return matcher.find(from);
+            } catch (SearchAbortedException e) {
+                return false;
+            }
+        }
+
+        private String format(CharBuffer chunk, int lineStart, int lineEnd) {
+            int end = lineEnd;
+            if (end > lineStart && chunk.get(end - 1) == '\r') {
+                end--;
+            }
+            final StringBuilder sb = new StringBuilder();
+            sb.append(source.file.getName()).append(':').append(lineNumber).append(": ");
+            sb.append(chunk, lineStart, Math.min(end, lineStart + MAX_LINE_LENGTH));
+            if (end - lineStart > MAX_LINE_LENGTH) {
+                sb.append("...");
+            }
+            return sb.toString();
+        }
+
+        private CharsetDecoder newDecoder() {
+            return search.charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        private static int countLines(CharBuffer chunk, int from, int to) {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (chunk.get(i) == '\n') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Thrown from within the pattern matching to abort it
+     */
+    private static final class SearchAbortedException extends RuntimeException {
+        SearchAbortedException() {
+            super("Search aborted");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * View of a chunk which aborts the matching once the search is done. The state of
+     * the search is checked every {@link #CHECK_INTERVAL} reads
+     */
+    private static final class AbortableCharSequence implements CharSequence {
+        private static final int CHECK_INTERVAL = 4096;
+
+        private final CharSequence chars;
+
+        private final Search search;
+
+        private int reads;
+
+        AbortableCharSequence(CharSequence chars, Search search) {
+            this.chars = chars;
+            this.search = search;
+        }
+
+        public int length() {
+            return chars.length();
+        }
+
+        public char charAt(int index) {
+            if (++reads == CHECK_INTERVAL) {
+                reads = 0;
+                if (search.isDone()) {
+                    throw new SearchAbortedException();
+                }
+            }
+            return chars.charAt(index);
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return new AbortableCharSequence(chars.subSequence(start, end), search);
+        }
+
+        @Override
+        public String toString() {
+            return chars.toString();
+        }
+    }
+}
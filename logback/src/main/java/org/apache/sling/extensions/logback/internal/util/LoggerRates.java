@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts events per logger name and level and derives the event rate of each logger
+ * over the last 1, 5 and 15 minutes as exponentially weighted moving averages, like
+ * the load average of Unix systems.
+ * <p>
+ * The loggers are tracked in a fixed number of slots following the space saving
+ * algorithm. Counting an event of a tracked logger is a map lookup and an atomic
+ * increment. A logger not yet tracked takes a free slot or replaces the logger with
+ * the lowest count among a sample of slots and inherits that count, so a logger which
+ * starts flooding is not evicted again right away and quickly rises to the top. No
+ * locks are taken. Events counted concurrently with the eviction of their logger are
+ * lost, which is fine for finding the noisiest loggers.
+ * <p>
+ * The rates are updated by {@link #tick()} which is expected to be invoked
+ * periodically, e.g. every {@link #TICK_INTERVAL} seconds, from a single thread.
+ */
+public class LoggerRates {
+    /**
+     * Suggested interval in seconds between two invocations of {@link #tick()}
+     */
+    public static final int TICK_INTERVAL = 5;
+
+    /**
+     * Number of levels counted. The level index passed to {@link #mark(String, int)}
+     * must be lower than this
+     */
+    public static final int LEVELS = 5;
+
+    /**
+     * Number of slots inspected to find the logger to evict
+     */
+    private static final int EVICTION_SAMPLE = 16;
+
+    /**
+     * Number of attempts to claim a slot before an event of a new logger is dropped
+     */
+    private static final int MAX_ADMISSION_ATTEMPTS = 4;
+
+    public enum Window {
+        ONE_MINUTE(1), FIVE_MINUTES(5), FIFTEEN_MINUTES(15);
+
+        private final long nanos;
+
+        private Window(int minutes) {
+            this.nanos = TimeUnit.MINUTES.toNanos(minutes);
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicReferenceArray<Entry> slots;
+
+    /**
+     * Number of slots handed out so far. Once it reaches the number of slots new
+     * loggers replace existing ones
+     */
+    private final AtomicInteger usedSlots = new AtomicInteger();
+
+    private long lastTick = System.nanoTime();
+
+    public LoggerRates(int maxLoggers) {
+        this.slots = new AtomicReferenceArray<Entry>(Math.max(1, maxLoggers));
+    }
+
+    /**
+     * Counts an event
+     *
+     * @param loggerName name of the logger the event was logged to
+     * @param level index of the level of the event
+     */
+    public void mark(String loggerName, int level) {
+        Entry e = entries.get(loggerName);
+        if (e == null) {
+            e = admit(loggerName);
+            if (e == null) {
+                return;
+            }
+        }
+        e.counts.incrementAndGet(level);
+    }
+
+    public void tick() {
+        tick(System.nanoTime());
+    }
+
+    /**
+     * Updates the rates with the events counted since the last tick
+     */
+    void tick(long now) {
+        final long elapsed = now - lastTick;
+        if (elapsed <= 0) {
+            return;
+        }
+        lastTick = now;
+
+        final double[] alpha = new double[Window.values().length];
+        for (Window w : Window.values()) {
+            alpha[w.ordinal()] = 1 - Math.exp(-(double) elapsed / w.nanos);
+        }
+
+        for (int i = 0; i < slots.length(); i++) {
+            Entry e = slots.get(i);
+            if (e != null) {
+                e.update(elapsed, alpha);
+            }
+        }
+    }
+
+    /**
+     * Returns the loggers with the highest rate over the given window in descending
+     * order of the rate
+     */
+    public List<Entry> getTop(int n, final Window window) {
+        final List<Entry> result = new ArrayList<Entry>(slots.length());
+        for (int i = 0; i < slots.length(); i++) {
+            Entry e = slots.get(i);
+            if (e != null) {
+                result.add(e);
+            }
+        }
+        Collections.sort(result, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                return Double.compare(e2.getRate(window), e1.getRate(window));
+            }
+        });
+        return result.size() > n ? new ArrayList<Entry>(result.subList(0, n)) : result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Places a new logger into a free slot or in place of the logger with the lowest
+     * count among a sample of slots
+     *
+     * @return null if no slot could be claimed due to contention
+     */
+    private Entry admit(String loggerName) {
+        final Entry e = new Entry(loggerName);
+        final Entry existing = entries.putIfAbsent(loggerName, e);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (usedSlots.get() < slots.length()) {
+            int index = usedSlots.getAndIncrement();
+            if (index < slots.length()) {
+                slots.set(index, e);
+                return e;
+            }
+        }
+
+        final int length = slots.length();
+        final int sample = Math.min(EVICTION_SAMPLE, length);
+        int start = ((loggerName.hashCode() * 31 + (int) System.nanoTime()) & Integer.MAX_VALUE) % length;
+        for (int attempt = 0; attempt < MAX_ADMISSION_ATTEMPTS; attempt++) {
+            int victimIndex = -1;
+            Entry victim = null;
+            long victimCount = Long.MAX_VALUE;
+            for (int i = 0; i < sample; i++) {
+                int index = (start + i) % length;
+                Entry candidate = slots.get(index);
+                if (candidate == null) {
+                    //Slot handed out but not yet filled
+                    continue;
+                }
+                long count = candidate.getEstimatedCount();
+                if (count < victimCount) {
+                    victimIndex = index;
+                    victim = candidate;
+                    victimCount = count;
+                }
+            }
+
+            if (victim != null) {
+                e.inheritedCount = victimCount;
+                if (slots.compareAndSet(victimIndex, victim, e)) {
+                    entries.remove(victim.getName(), victim);
+                    return e;
+                }
+            }
+            start = (start + sample) % length;
+        }
+
+        entries.remove(loggerName, e);
+        return null;
+    }
+
+    public static class Entry {
+        private final String name;
+
+        private final AtomicLongArray counts = new AtomicLongArray(LEVELS);
+
+        /**
+         * Rates in events per second. Only written by the thread invoking tick
+         */
+        private final double[] rates = new double[Window.values().length];
+
+        private boolean ratesInitialized;
+
+        private long lastTotal;
+
+        /**
+         * Count of the logger this one replaced. An upper bound for the events of this
+         * logger which were not counted
+         */
+        private volatile long inheritedCount;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Number of events counted for the given level index
+         */
+        public long getCount(int level) {
+            return counts.get(level);
+        }
+
+        public long getTotalCount() {
+            long total = 0;
+            for (int i = 0; i < LEVELS; i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+
+        /**
+         * Count used to pick the logger to evict. Includes the count inherited from
+         * the replaced logger
+         */
+        long getEstimatedCount() {
+            return inheritedCount + getTotalCount();
+        }
+
+        /**
+         * Event rate per second over the given window
+         */
+        public double getRate(Window window) {
+            synchronized (rates) {
+                return rates[window.ordinal()];
+            }
+        }
+
+        private void update(long elapsed, double[] alpha) {
+            final long total = getTotalCount();
+            final double rate = (total - lastTotal) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            lastTotal = total;
+            synchronized (rates) {
+                for (int i = 0; i < rates.length; i++) {
+                    rates[i] = ratesInitialized ? rates[i] + alpha[i] * (rate - rates[i]) : rate;
+                }
+                ratesInitialized = true;
+            }
+        }
+    }
+}
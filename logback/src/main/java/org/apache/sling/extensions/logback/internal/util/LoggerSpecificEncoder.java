@@ -20,60 +20,314 @@
 package org.apache.sling.extensions.logback.internal.util;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.CoreConstants;
 import ch.qos.logback.core.Layout;
 import ch.qos.logback.core.pattern.PatternLayoutEncoderBase;
 import org.apache.sling.extensions.logback.internal.LogConfig;
 
+/**
+ * Encoder used by the appenders created for OSGi configured log writers. It picks the
+ * layout of the most specific category configured for the event's logger.
+ *
+ * <p>Events are laid out and converted to bytes using an {@link EncodingBuffer} owned by
+ * this encoder, so no String or byte array is created per event when the layout is an
+ * {@link AppendablePatternLayout}. Encoding happens under the appender's lock and each
+ * appender has its own encoder, so one buffer per encoder is sufficient</p>
+ *
+ * <p>With immediate flush disabled via {@link #setFlushPolicy(int, boolean)} the
+ * stream is flushed once the given number of bytes got written since the last flush
+ * or optionally for ERROR events. Flushing after a time limit is left to the appender
+ * which periodically invokes {@link #flush()}</p>
+ *
+ * <p>Events, bytes, flushes and write errors along with the time taken to encode and
+ * write each event are recorded in the {@link AppenderMetrics} of the encoder</p>
+ *
+ * <p>If enabled via {@link #setCollapseRepeats(boolean)} consecutive identical events
+ * are written once. The number of suppressed repeats is written as a separate line when
+ * a different event arrives, when the stream is closed and at least every
+ * {@link #REPEAT_SUMMARY_INTERVAL} millis while the repeats continue</p>
+ *
+ * <p>If a {@link TimestampIndex.Recorder} is set the offsets of the events written are
+ * recorded in the timestamp index of the file. The recorder is closed along with the
+ * stream</p>
+ */
 public class LoggerSpecificEncoder extends PatternLayoutEncoderBase<ILoggingEvent> {
-    private Map<String,Layout<ILoggingEvent>> layoutByCategory =
-            new ConcurrentHashMap<String, Layout<ILoggingEvent>>();
+    /**
+     * Max time in millis for which repeats are suppressed before their count is written
+     */
+    public static final long REPEAT_SUMMARY_INTERVAL = 10000;
+
+    private final Map<String,Layout<ILoggingEvent>> layoutByCategory =
+            new HashMap<String, Layout<ILoggingEvent>>();
 
     private final Layout<ILoggingEvent> defaultLayout;
 
+    /**
+     * Index built from layoutByCategory. It is replaced as a whole whenever a config
+     * is added or removed so readers always see a consistent view along with its memoized lookups
+     */
+    private volatile CategoryIndex<Layout<ILoggingEvent>> layoutIndex;
+
+    private EncodingBuffer buffer;
+
+    /**
+     * Number of bytes after which the stream is flushed. Zero if only time based
+     * flushing is done. Only used if immediate flush is disabled
+     */
+    private int flushBytes;
+
+    private boolean flushOnError = true;
+
+    /**
+     * Bytes written since the last flush
+     */
+    private long pendingBytes;
+
+    private AppenderMetrics metrics = new AppenderMetrics();
+
+    /**
+     * Null unless repeated events are collapsed
+     */
+    private RepeatCollapser repeatCollapser;
+
+    /**
+     * Null unless a timestamp index is recorded for the current stream
+     */
+    private TimestampIndex.Recorder timestampRecorder;
+
     public LoggerSpecificEncoder(Layout<ILoggingEvent> defaultLayout) {
         this.defaultLayout = defaultLayout;
+        this.layoutIndex = new CategoryIndex<Layout<ILoggingEvent>>(layoutByCategory, defaultLayout);
     }
 
-    public void doEncode(ILoggingEvent event) throws IOException {
-        String txt = getLayout(event.getLoggerName()).doLayout(event);
-        outputStream.write(convertToBytes(txt));
-        if (isImmediateFlush())
-            outputStream.flush();
+    public synchronized void doEncode(ILoggingEvent event) throws IOException {
+        final long start = System.nanoTime();
+        if (repeatCollapser != null && collapse(event)) {
+            return;
+        }
+
+        final Layout<ILoggingEvent> layout = getLayout(event.getLoggerName());
+        final EncodingBuffer buffer = getBuffer();
+        final StringBuilder text = buffer.getText();
+        if (layout instanceof AppendablePatternLayout) {
+            ((AppendablePatternLayout) layout).doLayout(event, text);
+        } else {
+            text.append(layout.doLayout(event));
+        }
+
+        buffer.encode();
+        final int length = buffer.getLength();
+        try {
+            if (timestampRecorder != null) {
+                timestampRecorder.beforeEvent(event.getTimeStamp());
+            }
+            outputStream.write(buffer.getBytes(), 0, length);
+            pendingBytes += length;
+            if (timestampRecorder != null) {
+                timestampRecorder.written(length);
+            }
+            buffer.trim();
+            if (isImmediateFlush() || isFlushRequired(event)) {
+                outputStream.flush();
+                pendingBytes = 0;
+                metrics.flushed();
+            }
+        } catch (IOException e) {
+            metrics.errorOccurred();
+            throw e;
+        }
+        metrics.eventWritten(length, System.nanoTime() - start);
     }
 
-    private Layout<ILoggingEvent> getLayout(String loggerName) {
-        //TODO Handle layout inheritance wrt logger names
-        Layout<ILoggingEvent> layout = layoutByCategory.get(loggerName);
-        if(layout == null){
-            layout = defaultLayout;
+    @Override
+    public synchronized void init(OutputStream os) throws IOException {
+        super.init(os);
+        pendingBytes = 0;
+        if (repeatCollapser != null) {
+            repeatCollapser.clear();
         }
-        return layout;
     }
 
-    private byte[] convertToBytes(String s) {
-        Charset charset = getCharset();
-        if (charset == null) {
-            return s.getBytes();
-        } else {
+    @Override
+    public synchronized void close() throws IOException {
+        if (repeatCollapser != null && outputStream != null) {
+            writeRepeatSummary(repeatCollapser.take());
+        }
+        super.close();
+        pendingBytes = 0;
+        if (timestampRecorder != null) {
+            final TimestampIndex.Recorder recorder = timestampRecorder;
+            timestampRecorder = null;
+            recorder.close();
+        }
+    }
+
+    /**
+     * Flushes the stream if any data was written since the last flush. A summary of
+     * repeats which are suppressed for longer than the summary interval is written first
+     */
+    public synchronized void flush() throws IOException {
+        if (repeatCollapser != null && outputStream != null) {
+            writeRepeatSummary(repeatCollapser.takeIfDue(System.currentTimeMillis()));
+        }
+        if (pendingBytes > 0 && outputStream != null) {
+            pendingBytes = 0;
             try {
-                return s.getBytes(charset.name());
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalStateException(
-                        "An existing charset cannot possibly be unsupported.");
+                outputStream.flush();
+            } catch (IOException e) {
+                metrics.errorOccurred();
+                throw e;
             }
+            metrics.flushed();
+        }
+        if (timestampRecorder != null) {
+            timestampRecorder.flush();
         }
     }
 
-    public void addLogConfig(LogConfig config){
-        Layout<ILoggingEvent> layout = config.createLayout();
-        for(String category : config.getCategories()){
-            layoutByCategory.put(category,layout);
+    public AppenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to update. Allows the metrics of a writer to survive the
+     * recreation of its appender upon a reset
+     */
+    public void setMetrics(AppenderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Switches from flushing per event to flushing in groups
+     *
+     * @param flushBytes number of bytes after which the stream is flushed. Zero or less
+     *                   to only flush when {@link #flush()} is invoked
+     * @param flushOnError true if ERROR events should be flushed immediately
+     */
+    public void setFlushPolicy(int flushBytes, boolean flushOnError) {
+        this.flushBytes = Math.max(0, flushBytes);
+        this.flushOnError = flushOnError;
+        setImmediateFlush(false);
+    }
+
+    /**
+     * Enables collapsing of consecutive identical events
+     */
+    public synchronized void setCollapseRepeats(boolean collapseRepeats) {
+        if (collapseRepeats) {
+            if (repeatCollapser == null) {
+                repeatCollapser = new RepeatCollapser(REPEAT_SUMMARY_INTERVAL);
+            }
+        } else {
+            repeatCollapser = null;
+        }
+    }
+
+    public boolean isCollapseRepeats() {
+        return repeatCollapser != null;
+    }
+
+    /**
+     * Sets the recorder of the timestamp index of the current stream. Must be set after
+     * the stream got initialized as {@link #close()} closes it
+     */
+    public synchronized void setTimestampRecorder(TimestampIndex.Recorder timestampRecorder) {
+        this.timestampRecorder = timestampRecorder;
+    }
+
+    public Layout<ILoggingEvent> getDefaultLayout() {
+        return defaultLayout;
+    }
+
+    /**
+     * Returns true if the event repeats the last event and must not be written. Otherwise
+     * writes out the summary of the repeats of the previous event
+     */
+    private boolean collapse(ILoggingEvent event) throws IOException {
+        if (repeatCollapser.isRepeat(event)) {
+            writeRepeatSummary(repeatCollapser.takeIfDue(event.getTimeStamp()));
+            return true;
+        }
+        writeRepeatSummary(repeatCollapser.remember(event));
+        return false;
+    }
+
+    private void writeRepeatSummary(int count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        final EncodingBuffer buffer = getBuffer();
+        buffer.getText().append(RepeatCollapser.getSummary(count)).append(CoreConstants.LINE_SEPARATOR);
+        buffer.encode();
+        final int length = buffer.getLength();
+        try {
+            outputStream.write(buffer.getBytes(), 0, length);
+            pendingBytes += length;
+            if (timestampRecorder != null) {
+                timestampRecorder.written(length);
+            }
+            if (isImmediateFlush()) {
+                outputStream.flush();
+                pendingBytes = 0;
+                metrics.flushed();
+            }
+        } catch (IOException e) {
+            metrics.errorOccurred();
+            throw e;
+        }
+    }
+
+    private boolean isFlushRequired(ILoggingEvent event) {
+        return (flushBytes > 0 && pendingBytes >= flushBytes)
+                || (flushOnError && event.getLevel().toInt() >= Level.ERROR_INT);
+    }
+
+    Layout<ILoggingEvent> getLayout(String loggerName) {
+        return layoutIndex.get(loggerName);
+    }
+
+    private EncodingBuffer getBuffer() {
+        if (buffer == null) {
+            Charset charset = getCharset();
+            if (charset == null) {
+                charset = Charset.defaultCharset();
+            }
+            buffer = new EncodingBuffer(charset);
+        }
+        return buffer;
+    }
+
+    /**
+     * Routes events of the categories of the given config to the passed layout. The
+     * layout may be shared with other encoders
+     */
+    public void addLogConfig(LogConfig config, Layout<ILoggingEvent> layout){
+        updateLogConfig(null, config, layout);
+    }
+
+    /**
+     * Drops the categories of the removed config and routes the categories of the
+     * added config to the passed layout. Both changes become visible to writers at
+     * once. Either config may be null
+     */
+    public void updateLogConfig(LogConfig removed, LogConfig added, Layout<ILoggingEvent> layout){
+        synchronized (layoutByCategory){
+            if(removed != null){
+                layoutByCategory.keySet().removeAll(removed.getCategories());
+            }
+            if(added != null){
+                for(String category : added.getCategories()){
+                    layoutByCategory.put(category,layout);
+                }
+            }
+            layoutIndex = new CategoryIndex<Layout<ILoggingEvent>>(layoutByCategory, defaultLayout);
         }
     }
 }
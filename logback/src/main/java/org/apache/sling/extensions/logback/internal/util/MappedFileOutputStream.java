@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * OutputStream which appends to a file through a memory mapped window. The window
+ * covers a fixed size chunk starting at the current end of data and is remapped
+ * once it is filled. Writes are plain memory copies and the data is visible to
+ * readers of the file right away, hence {@link #flush()} does nothing.
+ * <p>
+ * While the stream is open the file extends up to the end of the mapped chunk and
+ * is padded with zero bytes. On {@link #close()} it is truncated to the length of
+ * the written data. If the process dies before that the padding remains. Therefore
+ * trailing zero bytes are skipped when a file is opened for appending.
+ * <p>
+ * Instances are not thread safe. They are used under the lock of the appender.
+ */
+public class MappedFileOutputStream extends OutputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final int SCAN_BLOCK_SIZE = 8 * 1024;
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private final int chunkSize;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * Length of the data written to the file
+     */
+    private volatile long position;
+
+    public MappedFileOutputStream(File file, boolean append) throws IOException {
+        this(file, append, DEFAULT_CHUNK_SIZE);
+    }
+
+    public MappedFileOutputStream(File file, boolean append, int chunkSize) throws IOException {
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        try {
+            if (append) {
+                position = findEndOfData();
+            } else {
+                channel.truncate(0);
+            }
+            map();
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureAvailable();
+        buffer.put((byte) b);
+        position++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureAvailable();
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+            position += n;
+        }
+    }
+
+    /**
+     * Does nothing as data written to the mapped region is already handed over to
+     * the operating system
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        //Release the mapping first as a mapped file cannot be truncated on some platforms
+        unmap(buffer);
+        buffer = null;
+        try {
+            channel.truncate(position);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the length of the data written to the file. Unlike {@link File#length()}
+     * this does not include the padding of the mapped chunk
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private void ensureAvailable() throws IOException {
+        checkOpen();
+        if (!buffer.hasRemaining()) {
+            unmap(buffer);
+            buffer = null;
+            map();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream for " + file + " is closed");
+        }
+    }
+
+    /**
+     * Maps the next chunk at the current position. The file is extended as required
+     */
+    private void map() throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkSize);
+    }
+
+    /**
+     * Determines the end of the data by skipping the zero padding which is left over
+     * if the file was not closed properly. The padding is at most one chunk long.
+     */
+    private long findEndOfData() throws IOException {
+        final long size = channel.size();
+        final long limit = Math.max(0, size - chunkSize);
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+        long end = size;
+        while (end > limit) {
+            long start = Math.max(limit, end - SCAN_BLOCK_SIZE);
+            block.clear();
+            block.limit((int) (end - start));
+            while (block.hasRemaining()) {
+                if (channel.read(block, start + block.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) != 0) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return end;
+    }
+
+    /**
+     * Returns true if mappings can be released explicitly. If not they are released once
+     * the buffer is garbage collected, which may make truncating or renaming the file
+     * fail on some platforms
+     */
+    public static boolean isUnmapSupported() {
+        return Unmapper.isSupported();
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        Unmapper.unmap(buffer);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Appender which records {@link AppenderMetrics} for the wrapped appender. It takes
+ * the name of the wrapped appender.
+ * <p>
+ * The wrapped appender is owned by someone else, like the bundle which registered it
+ * as a service, so stopping this appender does not stop the wrapped one.
+ */
+public class MeteredAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements DelegatingAppender {
+    private final Appender<ILoggingEvent> delegate;
+
+    private final AppenderMetrics metrics;
+
+    public MeteredAppender(Appender<ILoggingEvent> delegate, AppenderMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        setName(delegate.getName());
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        final long start = System.nanoTime();
+        try {
+            delegate.doAppend(event);
+        } catch (RuntimeException e) {
+            metrics.errorOccurred();
+            throw e;
+        }
+        metrics.eventWritten(0, System.nanoTime() - start);
+    }
+
+    public Appender<ILoggingEvent> getDelegate() {
+        return delegate;
+    }
+
+    public AppenderMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Filter which records the number of evaluations, denials and the time taken by the
+ * wrapped filter. Filters run on the logging thread for every event reaching the
+ * appender, so slow ones directly add to the latency of logging calls.
+ * <p>
+ * The wrapped filter is owned by someone else, so stopping this filter does not stop
+ * the wrapped one.
+ */
+public class MeteredFilter extends Filter<ILoggingEvent> {
+    private final Filter<ILoggingEvent> delegate;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final StripedCounter denied = new StripedCounter();
+
+    public MeteredFilter(Filter<ILoggingEvent> delegate) {
+        this.delegate = delegate;
+        setName(delegate.getName());
+    }
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        final long start = System.nanoTime();
+        final FilterReply reply = delegate.decide(event);
+        latency.record(System.nanoTime() - start);
+        if (reply == FilterReply.DENY) {
+            denied.increment();
+        }
+        return reply;
+    }
+
+    public Filter<ILoggingEvent> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Time taken per evaluation. The count of the histogram is the number of evaluations
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getDeniedCount() {
+        return denied.sum();
+    }
+}
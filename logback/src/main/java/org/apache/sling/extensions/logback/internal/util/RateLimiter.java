@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free rate limiter based on the generic cell rate algorithm, which behaves like
+ * a token bucket refilled continuously. Instead of a token count it keeps the
+ * theoretical arrival time of the next permit, so acquiring a permit is a single CAS
+ * and no refill task is needed.
+ * <p>
+ * Up to <code>burst</code> permits can be taken at once after a quiet period, after
+ * which permits are handed out at the configured rate.
+ */
+public class RateLimiter {
+    /**
+     * Nanos between two permits
+     */
+    private final long interval;
+
+    /**
+     * How far the theoretical arrival time may run ahead of the current time
+     */
+    private final long tolerance;
+
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * Creates a limiter allowing a burst of one second worth of permits
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, (int) Math.ceil(permitsPerSecond));
+    }
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System.nanoTime());
+    }
+
+    RateLimiter(double permitsPerSecond, int burst, long now) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+        }
+        this.interval = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.tolerance = interval * (Math.max(1, burst) - 1);
+        this.theoreticalArrival = new AtomicLong(now);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long now) {
+        while (true) {
+            final long tat = theoreticalArrival.get();
+            //Compare as difference as nanoTime values may overflow
+            final long base = tat - now > 0 ? tat : now;
+            if (base - now > tolerance) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, base + interval)) {
+                return true;
+            }
+        }
+    }
+}
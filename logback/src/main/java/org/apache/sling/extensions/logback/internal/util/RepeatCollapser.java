@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+
+/**
+ * Detects runs of identical events written by a writer. Events are considered identical
+ * if they have the same logger, level, message template and throwable class. The
+ * formatted message and arguments are not compared, so a message logged in a loop with
+ * a changing counter is still collapsed.
+ * <p>
+ * Only the key of the last written event is kept. It is compared via a precomputed hash
+ * first so that the common case of a different event costs a few int compares. The
+ * strings involved cache their hash codes hence computing the key hash does not touch
+ * the string content.
+ * <p>
+ * Instances are not thread safe and are expected to be used under the lock of the encoder.
+ */
+public class RepeatCollapser {
+    private final long summaryInterval;
+
+    private int hash;
+
+    private String loggerName;
+
+    private Level level;
+
+    private String message;
+
+    private String throwableClass;
+
+    /**
+     * Number of repeats suppressed since the last summary
+     */
+    private int repeatCount;
+
+    /**
+     * Time of the first repeat suppressed since the last summary
+     */
+    private long firstRepeatTime;
+
+    /**
+     * @param summaryInterval millis after which a summary is due while repeats continue
+     */
+    public RepeatCollapser(long summaryInterval) {
+        this.summaryInterval = summaryInterval;
+    }
+
+    /**
+     * Returns true if the event repeats the last remembered event in which case it is
+     * counted as suppressed. Otherwise {@link #remember(ILoggingEvent)} has to be invoked
+     * once the event is written
+     */
+    public boolean isRepeat(ILoggingEvent event) {
+        if (loggerName == null) {
+            return false;
+        }
+
+        final String throwable = throwableClass(event);
+        if (hash != hash(event.getLoggerName(), event.getLevel(), event.getMessage(), throwable)
+                || level != event.getLevel()
+                || !equal(loggerName, event.getLoggerName())
+                || !equal(message, event.getMessage())
+                || !equal(throwableClass, throwable)) {
+            return false;
+        }
+
+        if (repeatCount++ == 0) {
+            firstRepeatTime = event.getTimeStamp();
+        }
+        return true;
+    }
+
+    /**
+     * Remembers the event as the last written one
+     *
+     * @return number of suppressed repeats of the previous event which have not been reported yet
+     */
+    public int remember(ILoggingEvent event) {
+        loggerName = event.getLoggerName();
+        level = event.getLevel();
+        message = event.getMessage();
+        throwableClass = throwableClass(event);
+        hash = hash(loggerName, level, message, throwableClass);
+        return take();
+    }
+
+    /**
+     * Returns the number of suppressed repeats if the summary interval passed since the
+     * first of them. The count is reset in that case
+     */
+    public int takeIfDue(long now) {
+        if (repeatCount > 0 && now - firstRepeatTime >= summaryInterval) {
+            return take();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of suppressed repeats not yet reported and resets the count
+     */
+    public int take() {
+        int count = repeatCount;
+        repeatCount = 0;
+        return count;
+    }
+
+    /**
+     * Forgets the last event. Used when the underlying stream changes
+     */
+    public void clear() {
+        loggerName = null;
+        level = null;
+        message = null;
+        throwableClass = null;
+        repeatCount = 0;
+    }
+
+    public static String getSummary(int count) {
+        return "Last message repeated " + count + (count == 1 ? " time" : " times");
+    }
+
+    private static String throwableClass(ILoggingEvent event) {
+        IThrowableProxy tp = event.getThrowableProxy();
+        return tp != null ? tp.getClassName() : null;
+    }
+
+    private static int hash(String loggerName, Level level, String message, String throwableClass) {
+        int h = loggerName != null ? loggerName.hashCode() : 0;
+        h = 31 * h + (level != null ? level.toInt() : 0);
+        h = 31 * h + (message != null ? message.hashCode() : 0);
+        h = 31 * h + (throwableClass != null ? throwableClass.hashCode() : 0);
+        return h;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
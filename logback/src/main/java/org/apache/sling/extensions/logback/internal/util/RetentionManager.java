@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.qos.logback.core.Context;
+import org.apache.sling.extensions.logback.internal.LogbackManager;
+
+/**
+ * Caps the total size of the rolled over files of all log writers. Once the cap is
+ * exceeded the oldest rolled over files across all writers are deleted. The newest
+ * rolled over file of each writer is kept.
+ * <p>
+ * Indexes are registered by the absolute path of their active file. A writer recreated
+ * for the same file replaces the index of its predecessor so that the files are not
+ * counted twice. Indexes are held weakly so that the index of a removed writer does not
+ * need to be unregistered.
+ */
+public class RetentionManager {
+    private final Map<String, WeakReference<RotatedFileIndex>> indexes =
+            new LinkedHashMap<String, WeakReference<RotatedFileIndex>>();
+
+    private final long maxTotalSize;
+
+    /**
+     * @param maxTotalSize max total size of the rolled over files. Zero or less for no limit
+     */
+    public RetentionManager(long maxTotalSize) {
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * Returns the retention manager of the LogbackManager associated with the context
+     *
+     * @return null if the context is not managed by the LogbackManager
+     */
+    public static RetentionManager getInstance(Context context) {
+        LogbackManager manager = context != null
+                ? (LogbackManager) context.getObject(LogbackManager.class.getName()) : null;
+        return manager != null ? manager.getRetentionManager() : null;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    /**
+     * Registers the index replacing any index registered earlier for the same active file
+     */
+    public synchronized void register(RotatedFileIndex index) {
+        WeakReference<RotatedFileIndex> previous = indexes.put(index.getActiveFile().getPath(),
+                new WeakReference<RotatedFileIndex>(index));
+        RotatedFileIndex old = previous != null ? previous.get() : null;
+        if (old != null && old != index) {
+            old.setRetentionManager(null);
+        }
+        index.setRetentionManager(this);
+    }
+
+    public synchronized long getTotalSize() {
+        long total = 0;
+        for (RotatedFileIndex index : getIndexes()) {
+            total += index.getTotalSize();
+        }
+        return total;
+    }
+
+    /**
+     * Deletes the oldest rolled over files till the total size is within the limit
+     */
+    public synchronized void enforce() {
+        if (maxTotalSize <= 0) {
+            return;
+        }
+
+        long total = getTotalSize();
+        List<RotatedFileIndex> candidates = getIndexes();
+        while (total > maxTotalSize) {
+            RotatedFileIndex oldestIndex = null;
+            RotatedFileIndex.Segment oldest = null;
+            for (RotatedFileIndex index : candidates) {
+                List<RotatedFileIndex.Segment> segments = index.getSegments();
+                if (segments.size() < 2) {
+                    continue;
+                }
+                RotatedFileIndex.Segment s = segments.get(0);
+                if (oldest == null || s.getLastTimestamp() < oldest.getLastTimestamp()) {
+                    oldest = s;
+                    oldestIndex = index;
+                }
+            }
+
+            if (oldest == null) {
+                return;
+            }
+
+            long deleted = oldestIndex.deleteOldest(oldest);
+            if (deleted == 0) {
+                //Could not be deleted. Do not try the same writer again
+                candidates.remove(oldestIndex);
+            }
+            total -= deleted;
+        }
+    }
+
+    /**
+     * Returns the live indexes dropping the entries of collected ones
+     */
+    private List<RotatedFileIndex> getIndexes() {
+        List<RotatedFileIndex> result = new ArrayList<RotatedFileIndex>(indexes.size());
+        for (Iterator<WeakReference<RotatedFileIndex>> it = indexes.values().iterator(); it.hasNext(); ) {
+            RotatedFileIndex index = it.next().get();
+            if (index == null) {
+                it.remove();
+            } else {
+                result.add(index);
+            }
+        }
+        return result;
+    }
+}
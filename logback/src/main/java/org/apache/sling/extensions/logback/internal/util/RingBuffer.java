@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock free queue for multiple producers and a single consumer. Each slot
+ * carries a sequence number which tells producers and the consumer whether the
+ * slot is free to be written or ready to be read. Producers claim a slot with a
+ * single CAS on the enqueue position and never block each other while copying the
+ * element. Based on the bounded MPMC queue design by Dmitry Vyukov.
+ *
+ * @param <E> element type
+ */
+public class RingBuffer<E> {
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong enqueuePosition = new AtomicLong();
+
+    /**
+     * Only written by the consumer. Volatile so that producers can read the size
+     */
+    private volatile long dequeuePosition;
+
+    /**
+     * @param requestedCapacity minimum capacity. It is rounded up to the next power of two
+     */
+    public RingBuffer(int requestedCapacity) {
+        int c = 1;
+        while (c < requestedCapacity) {
+            c <<= 1;
+        }
+        this.capacity = c;
+        this.mask = c - 1;
+        this.elements = new AtomicReferenceArray<E>(c);
+        this.sequences = new AtomicLongArray(c);
+        for (int i = 0; i < c; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds the element to the queue
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(E e) {
+        long pos = enqueuePosition.get();
+        while (true) {
+            final int index = (int) (pos & mask);
+            final long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, e);
+                    //Publish the element. A full volatile write so that a following
+                    //read of the consumer state is not reordered before it
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = enqueuePosition.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the head of the queue. Must only be called from the single consumer thread
+     *
+     * @return null if the queue is empty
+     */
+    public E poll() {
+        final long pos = dequeuePosition;
+        final int index = (int) (pos & mask);
+        if (sequences.get(index) - (pos + 1) < 0) {
+            return null;
+        }
+
+        E e = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, pos + capacity);
+        dequeuePosition = pos + 1;
+        return e;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Approximate number of elements in the queue
+     */
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition;
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
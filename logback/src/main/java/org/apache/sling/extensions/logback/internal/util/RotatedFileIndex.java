@@ -0,0 +1,445 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the rolled over files of a log file. For each file its size, the time
+ * range covered by it and whether it is compressed is recorded.
+ * <p>
+ * The index is built lazily from a scan of the log directory upon first use. The
+ * rolling policies keep it up to date by reporting the files they create, rename and
+ * delete, so later queries do not touch the file system. The segments are published
+ * as an immutable list ordered from oldest to newest.
+ * <p>
+ * If a max total size is set the oldest segments are deleted once the rolled over
+ * files of the log file exceed it. A {@link RetentionManager} can additionally cap
+ * the size of the rolled over files of all log files.
+ * <p>
+ * The {@link TimestampIndex} sidecars of the files are moved and deleted along with
+ * the files reported as renamed or removed.
+ * <p>
+ * Only files whose names match the file name pattern of the rolling policy are taken
+ * as rolled over files, so that the files of other writers sharing the name of the
+ * active file as prefix are left alone. Without a pattern the fixed window naming
+ * <code>&lt;file&gt;&lt;n&gt;</code> is assumed.
+ */
+public class RotatedFileIndex {
+    private final File activeFile;
+
+    private volatile Pattern rolledFileNames;
+
+    private volatile List<Segment> segments;
+
+    /**
+     * Time at which the active file was started. Used as the start of the next segment
+     */
+    private long activeSince;
+
+    private volatile long maxTotalSize;
+
+    private volatile RetentionManager retentionManager;
+
+    public RotatedFileIndex(File activeFile) {
+        this.activeFile = activeFile.getAbsoluteFile();
+        this.rolledFileNames = compileNamePattern(this.activeFile.getPath() + "%i");
+    }
+
+    public File getActiveFile() {
+        return activeFile;
+    }
+
+    /**
+     * Sets the file name pattern of the rolling policy like <code>logs/error.log%i</code>
+     * or <code>logs/error.log.%d{yyyy-MM-dd}</code>. The directory is rescanned upon next
+     * use if the pattern changed
+     */
+    public void setFileNamePattern(String fileNamePattern) {
+        Pattern pattern = compileNamePattern(fileNamePattern);
+        synchronized (this) {
+            if (!pattern.pattern().equals(rolledFileNames.pattern())) {
+                rolledFileNames = pattern;
+                segments = null;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the name is one of a rolled over file as per the file name pattern
+     */
+    public boolean isRolledFile(String name) {
+        return rolledFileNames.matcher(name).matches();
+    }
+
+    /**
+     * Compiles the name part of a file name pattern of a rolling policy into a regular
+     * expression matching the names of the rolled over files, compressed or not.
+     * <code>%i</code> matches a number and <code>%d{...}</code> a date formatted as per
+     * the date pattern
+     */
+    public static Pattern compileNamePattern(String fileNamePattern) {
+        final String pattern = new File(fileNamePattern).getName();
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '%' && i + 1 < pattern.length() && pattern.charAt(i + 1) == 'i') {
+                appendLiteral(regex, literal);
+                regex.append("\\d+");
+                i += 2;
+            } else if (c == '%' && i + 1 < pattern.length() && pattern.charAt(i + 1) == 'd') {
+                appendLiteral(regex, literal);
+                String datePattern = "yyyy-MM-dd";
+                i += 2;
+                if (i < pattern.length() && pattern.charAt(i) == '{') {
+                    int end = pattern.indexOf('}', i);
+                    if (end < 0) {
+                        end = pattern.length();
+                    }
+                    String option = pattern.substring(i + 1, end);
+                    //Drop the time zone option like in %d{yyyy-MM-dd, UTC}
+                    int comma = option.indexOf(',');
+                    option = (comma >= 0 ? option.substring(0, comma) : option).trim();
+                    if (option.length() > 0) {
+                        datePattern = option;
+                    }
+                    i = end + 1;
+                }
+                appendDateRegex(regex, datePattern);
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        appendLiteral(regex, literal);
+        regex.append("(").append(Pattern.quote(BackgroundCompressor.GZ_SUFFIX)).append(")?");
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Returns the rolled over files ordered from oldest to newest
+     */
+    public List<Segment> getSegments() {
+        List<Segment> result = segments;
+        if (result == null) {
+            synchronized (this) {
+                load();
+                result = segments;
+            }
+        }
+        return result;
+    }
+
+    public long getTotalSize() {
+        long total = 0;
+        for (Segment s : getSegments()) {
+            total += s.size;
+        }
+        return total;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    /**
+     * Sets the max total size of the rolled over files. Zero or less for no limit
+     */
+    public void setMaxTotalSize(long maxTotalSize) {
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    public void setRetentionManager(RetentionManager retentionManager) {
+        this.retentionManager = retentionManager;
+    }
+
+    /**
+     * Records a file created by a rollover. Segments whose files got deleted by other
+     * means are dropped and the size limits are enforced
+     *
+     * @param rollTime time at which the active file got rolled over
+     */
+    public void rolled(File file, long rollTime) {
+        synchronized (this) {
+            Map<String, Segment> map = load();
+            for (Segment s : segments) {
+                if (!s.file.exists()) {
+                    map.remove(s.file.getPath());
+                }
+            }
+
+            File f = file.getAbsoluteFile();
+            map.put(f.getPath(), new Segment(f, f.length(), Math.min(activeSince, rollTime), rollTime));
+            activeSince = Math.max(activeSince, rollTime);
+            publish(map);
+            enforceMaxTotalSize();
+        }
+
+        RetentionManager rm = retentionManager;
+        if (rm != null) {
+            rm.enforce();
+        }
+    }
+
+    /**
+     * Records the rename of a rolled over file, like by a shift of the window or by
+     * the compression of the file
+     */
+    public synchronized void renamed(File from, File to) {
+        TimestampIndex.move(from, to);
+        Map<String, Segment> map = load();
+        File f = to.getAbsoluteFile();
+        Segment s = map.remove(from.getAbsolutePath());
+        if (s != null) {
+            map.put(f.getPath(), new Segment(f, f.length(), s.firstTimestamp, s.lastTimestamp));
+        } else if (f.exists()) {
+            map.put(f.getPath(), new Segment(f, f.length(), 0, f.lastModified()));
+        }
+        publish(map);
+    }
+
+    public synchronized void removed(File file) {
+        TimestampIndex.delete(file);
+        Map<String, Segment> map = load();
+        if (map.remove(file.getAbsolutePath()) != null) {
+            publish(map);
+        }
+    }
+
+    /**
+     * Deletes the segment if it is still the oldest one. Used by the RetentionManager
+     *
+     * @return size of the deleted file or zero if nothing was deleted
+     */
+    synchronized long deleteOldest(Segment segment) {
+        List<Segment> current = getSegments();
+        if (current.isEmpty() || current.get(0) != segment) {
+            return 0;
+        }
+        return delete(segment);
+    }
+
+    private void enforceMaxTotalSize() {
+        final long max = maxTotalSize;
+        if (max <= 0) {
+            return;
+        }
+
+        final List<Segment> current = segments;
+        long total = getTotalSize();
+        //Always keep the newest segment
+        for (int i = 0; i < current.size() - 1 && total > max; i++) {
+            total -= delete(current.get(i));
+        }
+    }
+
+    private long delete(Segment segment) {
+        if (segment.file.exists() && !segment.file.delete()) {
+            return 0;
+        }
+        TimestampIndex.delete(segment.file);
+        Map<String, Segment> map = toMap(segments);
+        map.remove(segment.file.getPath());
+        publish(map);
+        return segment.size;
+    }
+
+    /**
+     * Returns a mutable copy of the segments, scanning the directory if not yet loaded
+     */
+    private Map<String, Segment> load() {
+        if (segments == null) {
+            segments = scan();
+            activeSince = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).lastTimestamp;
+        }
+        return toMap(segments);
+    }
+
+    private void publish(Map<String, Segment> map) {
+        List<Segment> list = new ArrayList<Segment>(map.values());
+        Collections.sort(list, SEGMENT_ORDER);
+        segments = Collections.unmodifiableList(list);
+    }
+
+    private static Map<String, Segment> toMap(List<Segment> segments) {
+        Map<String, Segment> map = new LinkedHashMap<String, Segment>();
+        for (Segment s : segments) {
+            map.put(s.file.getPath(), s);
+        }
+        return map;
+    }
+
+    /**
+     * Finds the rolled over files by their names. The time range of a file is taken from
+     * the modification times of it and its predecessor
+     */
+    private List<Segment> scan() {
+        final Pattern names = rolledFileNames;
+        File dir = activeFile.getParentFile();
+        File[] files = dir != null ? dir.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return names.matcher(name).matches();
+            }
+        }) : null;
+
+        List<Segment> result = new ArrayList<Segment>();
+        if (files == null) {
+            return Collections.unmodifiableList(result);
+        }
+
+        List<File> sorted = new ArrayList<File>();
+        for (File f : files) {
+            if (f.isFile()) {
+                sorted.add(f);
+            }
+        }
+        Collections.sort(sorted, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        long previous = 0;
+        for (File f : sorted) {
+            long lastModified = f.lastModified();
+            result.add(new Segment(f, f.length(), previous, lastModified));
+            previous = lastModified;
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static void appendLiteral(StringBuilder regex, StringBuilder literal) {
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Appends a regular expression matching dates formatted as per the SimpleDateFormat
+     * pattern. Numeric fields match digits, textual fields like month names match letters
+     */
+    private static void appendDateRegex(StringBuilder regex, String datePattern) {
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < datePattern.length()) {
+            char c = datePattern.charAt(i);
+            if (c == '\'') {
+                int end = datePattern.indexOf('\'', i + 1);
+                if (end < 0) {
+                    end = datePattern.length();
+                }
+                //'' is an escaped quote
+                literal.append(end == i + 1 ? "'" : datePattern.substring(i + 1, end));
+                i = end + 1;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int end = i;
+                while (end < datePattern.length() && datePattern.charAt(end) == c) {
+                    end++;
+                }
+                appendLiteral(regex, literal);
+                boolean numeric = "yMdHhkKmsSDFwWu".indexOf(c) >= 0 && !(c == 'M' && end - i > 2);
+                regex.append(numeric ? "\\d+" : "[\\w+\\-:]+");
+                i = end;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        appendLiteral(regex, literal);
+    }
+
+    private static final Comparator<Segment> SEGMENT_ORDER = new Comparator<Segment>() {
+        public int compare(Segment s1, Segment s2) {
+            if (s1.lastTimestamp != s2.lastTimestamp) {
+                return s1.lastTimestamp < s2.lastTimestamp ? -1 : 1;
+            }
+            return s1.file.getPath().compareTo(s2.file.getPath());
+        }
+    };
+
+    /**
+     * A rolled over file
+     */
+    public static final class Segment {
+        private final File file;
+
+        private final long size;
+
+        private final long firstTimestamp;
+
+        private final long lastTimestamp;
+
+        Segment(File file, long size, long firstTimestamp, long lastTimestamp) {
+            this.file = file;
+            this.size = size;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Time from which on events got written to the file. Zero if not known
+         */
+        public long getFirstTimestamp() {
+            return firstTimestamp;
+        }
+
+        /**
+         * Time at which the file got rolled over
+         */
+        public long getLastTimestamp() {
+            return lastTimestamp;
+        }
+
+        public boolean isCompressed() {
+            return file.getName().endsWith(BackgroundCompressor.GZ_SUFFIX);
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{" +
+                    "file=" + file +
+                    ", size=" + size +
+                    ", firstTimestamp=" + firstTimestamp +
+                    ", lastTimestamp=" + lastTimestamp +
+                    '}';
+        }
+    }
+}
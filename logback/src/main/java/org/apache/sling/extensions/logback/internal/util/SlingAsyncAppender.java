@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Appender which hands events over to a {@link RingBuffer} and writes them to the
+ * wrapped appender from a dedicated thread. The logging thread only pays for
+ * preparing the event for deferred processing and a CAS on the ring buffer.
+ * <p>
+ * When the buffer is full the {@link OverflowPolicy} decides whether the logging
+ * thread waits for space or whether the event is discarded. Discarded events are
+ * counted and reported by {@link #getDroppedCount()} and {@link #getDroppedDebugCount()}.
+ * <p>
+ * The appender takes the name of the wrapped appender so that it can be referred
+ * to in the same way as a synchronous writer.
+ */
+public class SlingAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements DelegatingAppender {
+
+    public enum OverflowPolicy {
+        /**
+         * Logging thread waits till space is available in the buffer
+         */
+        BLOCK,
+        /**
+         * TRACE and DEBUG events are discarded once the buffer is filled up to
+         * {@link #DISCARD_THRESHOLD_PERCENT}. Other events wait for space
+         */
+        DROP_DEBUG,
+        /**
+         * Any event is discarded if the buffer is full
+         */
+        DROP_ALL;
+
+        /**
+         * Parses the policy name ignoring case. Both <code>drop_debug</code> and
+         * <code>dropDebug</code> are accepted
+         *
+         * @return defaultPolicy if the value is null or not a known policy
+         */
+        public static OverflowPolicy fromString(String value, OverflowPolicy defaultPolicy) {
+            if (value == null) {
+                return defaultPolicy;
+            }
+            String name = value.trim().replace("_", "").replace("-", "").toUpperCase(Locale.ENGLISH);
+            for (OverflowPolicy p : values()) {
+                if (p.name().replace("_", "").equals(name)) {
+                    return p;
+                }
+            }
+            return defaultPolicy;
+        }
+    }
+
+    public static final int DISCARD_THRESHOLD_PERCENT = 80;
+
+    /**
+     * Max time in millis for which stop waits for the worker to drain pending events
+     */
+    private static final long MAX_FLUSH_TIME = 1000;
+
+    /**
+     * Park time of the worker when idle. The worker is unparked by the producers
+     * so this only bounds the latency of a missed wakeup
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Appender<ILoggingEvent> delegate;
+
+    private final RingBuffer<ILoggingEvent> buffer;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int discardThreshold;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong droppedDebugCount = new AtomicLong();
+
+    private volatile Worker worker;
+
+    public SlingAsyncAppender(Appender<ILoggingEvent> delegate, int queueSize, OverflowPolicy overflowPolicy) {
+        this.delegate = delegate;
+        this.buffer = new RingBuffer<ILoggingEvent>(queueSize);
+        this.overflowPolicy = overflowPolicy;
+        this.discardThreshold = buffer.capacity() * DISCARD_THRESHOLD_PERCENT / 100;
+        setName(delegate.getName());
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        Worker w = new Worker();
+        w.setDaemon(true);
+        w.setName("Sling Logback Async Writer [" + getName() + "]");
+        worker = w;
+        super.start();
+        w.start();
+    }
+
+    /**
+     * Signals the worker to write out the queued events and waits at most
+     * {@link #MAX_FLUSH_TIME} for it. The wrapped appender is stopped by the worker once
+     * it wrote its last event, so it is never closed while the worker still writes to it
+     */
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+
+        Worker w = worker;
+        worker = null;
+        if (w == null) {
+            delegate.stop();
+            return;
+        }
+
+        w.running = false;
+        LockSupport.unpark(w);
+        try {
+            w.join(MAX_FLUSH_TIME);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (w.isAlive()) {
+            addWarn("Max flush time of " + MAX_FLUSH_TIME + " ms exceeded. " + buffer.size() +
+                    " queued events are still being written to " + delegate.getName());
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        //Capture the thread name, MDC etc. before the event leaves the logging thread
+        event.prepareForDeferredProcessing();
+
+        final boolean discardable = isDiscardable(event);
+        if (overflowPolicy == OverflowPolicy.DROP_DEBUG && discardable
+                && buffer.size() >= discardThreshold) {
+            droppedDebugCount.incrementAndGet();
+            return;
+        }
+
+        while (!buffer.offer(event)) {
+            if (overflowPolicy == OverflowPolicy.DROP_ALL
+                    || (overflowPolicy == OverflowPolicy.DROP_DEBUG && discardable)) {
+                drop(discardable);
+                return;
+            }
+
+            Worker w = worker;
+            if (w == null || !w.isAlive() || !isStarted()) {
+                //Nobody would drain the buffer
+                drop(discardable);
+                return;
+            }
+            LockSupport.unpark(w);
+            LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+        }
+
+        Worker w = worker;
+        if (w != null && w.parked) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    public Appender<ILoggingEvent> getDelegate() {
+        return delegate;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getQueueSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Number of events currently waiting to be written
+     */
+    public int getPendingCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Number of discarded events with level INFO or higher
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Number of discarded TRACE and DEBUG events
+     */
+    public long getDroppedDebugCount() {
+        return droppedDebugCount.get();
+    }
+
+    private void drop(boolean discardable) {
+        if (discardable) {
+            droppedDebugCount.incrementAndGet();
+        } else {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    private static boolean isDiscardable(ILoggingEvent event) {
+        return event.getLevel().toInt() <= Level.DEBUG_INT;
+    }
+
+    private class Worker extends Thread {
+        volatile boolean running = true;
+
+        volatile boolean parked;
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    if (!drain()) {
+                        parked = true;
+                        //Recheck after publishing the parked state so that an event
+                        //added concurrently is not left waiting for the timeout
+                        if (buffer.isEmpty() && running) {
+                            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        }
+                        parked = false;
+                    }
+                }
+
+                //Write out whatever got queued before stop
+                drain();
+            } finally {
+                //Only this thread writes to the delegate, so it is the one to close it
+                delegate.stop();
+            }
+        }
+
+        /**
+         * @return true if any event was written
+         */
+        private boolean drain() {
+            boolean written = false;
+            ILoggingEvent event;
+            while ((event = buffer.poll()) != null) {
+                written = true;
+                try {
+                    delegate.doAppend(event);
+                } catch (RuntimeException e) {
+                    addError("Error occurred while writing event to " + delegate.getName(), e);
+                }
+            }
+            return written;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
+import ch.qos.logback.core.rolling.FixedWindowRollingPolicy;
+import ch.qos.logback.core.rolling.RolloverFailure;
+
+/**
+ * Fixed window rolling policy which optionally compresses the rolled over files in the
+ * background.
+ * <p>
+ * With compression enabled a rollover only renames the active file to a uniquely named
+ * pending file which is cheap and does not block the logging thread. The pending file
+ * is then compressed by the {@link BackgroundCompressor} and placed at the first index
+ * of the window once the archives present got shifted. Pending files left over by a
+ * shutdown are picked up again when the policy is started. If the compressor is not
+ * available the files are rolled over uncompressed.
+ * <p>
+ * Changes to the rolled over files are reported to the {@link RotatedFileIndex} if set.
+ */
+public class SlingFixedWindowRollingPolicy extends FixedWindowRollingPolicy {
+    static final String PENDING_SUFFIX = ".pending";
+
+    private boolean compress;
+
+    private BackgroundCompressor compressor;
+
+    /**
+     * Runs the compressions of this policy one after the other so that the archives
+     * are shifted in the order of rollover
+     */
+    private Executor compressionExecutor;
+
+    private RotatedFileIndex index;
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * Enables gzip compression of rolled over files. Must be set before the policy
+     * is started
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public void setIndex(RotatedFileIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Sets the compressor to use instead of the one of the LogbackManager
+     */
+    void setCompressor(BackgroundCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        if (index != null) {
+            index.setFileNamePattern(getFileNamePattern());
+        }
+        if (!compress || !isStarted()) {
+            return;
+        }
+
+        if (compressor == null) {
+            compressor = BackgroundCompressor.getInstance(getContext());
+        }
+        if (compressor == null) {
+            addWarn("No compressor available. Rolled over files of [" + getActiveFileName()
+                    + "] are not compressed");
+            return;
+        }
+        compressionExecutor = compressor.newSerialExecutor();
+        for (File pending : findPendingFiles()) {
+            submit(pending, pending.lastModified());
+        }
+    }
+
+    @Override
+    public void rollover() throws RolloverFailure {
+        final long rollTime = System.currentTimeMillis();
+        if (compressionExecutor == null) {
+            super.rollover();
+            final File target = new File(fileNamePattern.convertInt(getMinIndex()));
+            if (index != null) {
+                shiftIndex();
+            }
+            TimestampIndex.move(new File(getActiveFileName()), target);
+            if (index != null) {
+                index.rolled(target, rollTime);
+            }
+            return;
+        }
+
+        File active = new File(getActiveFileName());
+        File pending = newPendingFile(active);
+        if (!active.renameTo(pending)) {
+            throw new RolloverFailure("Failed to rename [" + active + "] to [" + pending + "]");
+        }
+        //Moved right away as the active file gets reopened after this returns
+        TimestampIndex.move(active, pending);
+        submit(pending, rollTime);
+    }
+
+    private void submit(final File pending, final long rollTime) {
+        try {
+            compressionExecutor.execute(new Runnable() {
+                public void run() {
+                    archive(pending, rollTime);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            addWarn("Compressor is shut down. [" + pending + "] is archived uncompressed");
+            shift();
+            File target = new File(fileNamePattern.convertInt(getMinIndex()));
+            if (rename(pending, target)) {
+                TimestampIndex.move(pending, target);
+                if (index != null) {
+                    index.rolled(target, rollTime);
+                }
+            }
+        }
+    }
+
+    private void archive(File pending, long rollTime) {
+        File compressed = new File(pending.getPath() + BackgroundCompressor.GZ_SUFFIX);
+        try {
+            compressor.compress(pending, compressed);
+        } catch (IOException e) {
+            addError("Failed to compress [" + pending + "]", e);
+        }
+
+        shift();
+        File target = new File(fileNamePattern.convertInt(getMinIndex()));
+        boolean placed;
+        if (compressed.exists()) {
+            target = new File(target.getPath() + BackgroundCompressor.GZ_SUFFIX);
+            placed = rename(compressed, target);
+            if (pending.exists() && !pending.delete()) {
+                addWarn("Failed to delete [" + pending + "]");
+            }
+        } else {
+            //Keep the data even if it could not be compressed
+            placed = rename(pending, target);
+        }
+
+        if (placed) {
+            TimestampIndex.move(pending, target);
+            if (index != null) {
+                index.rolled(target, rollTime);
+            }
+        }
+    }
+
+    /**
+     * Frees the first index by moving each archive, compressed or not, one index up.
+     * Archives at the max index are deleted
+     */
+    private synchronized void shift() {
+        final int minIndex = getMinIndex();
+        final int maxIndex = getMaxIndex();
+        final String[] suffixes = {"", BackgroundCompressor.GZ_SUFFIX};
+        for (String suffix : suffixes) {
+            File last = new File(fileNamePattern.convertInt(maxIndex) + suffix);
+            if (!last.exists()) {
+                continue;
+            }
+            if (!last.delete()) {
+                addWarn("Failed to delete [" + last + "]");
+            } else if (index != null) {
+                index.removed(last);
+            }
+        }
+
+        for (int i = maxIndex - 1; i >= minIndex; i--) {
+            for (String suffix : suffixes) {
+                File archive = new File(fileNamePattern.convertInt(i) + suffix);
+                if (archive.exists()) {
+                    File next = new File(fileNamePattern.convertInt(i + 1) + suffix);
+                    if (rename(archive, next) && index != null) {
+                        index.renamed(archive, next);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the shift done by the base class to the index
+     */
+    private void shiftIndex() {
+        final int minIndex = getMinIndex();
+        final int maxIndex = getMaxIndex();
+        index.removed(new File(fileNamePattern.convertInt(maxIndex)));
+        for (int i = maxIndex - 1; i >= minIndex; i--) {
+            index.renamed(new File(fileNamePattern.convertInt(i)), new File(fileNamePattern.convertInt(i + 1)));
+        }
+    }
+
+    private boolean rename(File from, File to) {
+        if (!from.renameTo(to)) {
+            addError("Failed to rename [" + from + "] to [" + to + "]");
+            return false;
+        }
+        return true;
+    }
+
+    private static File newPendingFile(File active) {
+        long id = System.currentTimeMillis();
+        File pending;
+        do {
+            pending = new File(active.getPath() + "." + id++ + PENDING_SUFFIX);
+        } while (pending.exists());
+        return pending;
+    }
+
+    /**
+     * Returns the pending files of the active file in the order they got created
+     */
+    private File[] findPendingFiles() {
+        final File active = new File(getActiveFileName()).getAbsoluteFile();
+        final Pattern names = Pattern.compile(Pattern.quote(active.getName()) + "\\.\\d+"
+                + Pattern.quote(PENDING_SUFFIX));
+        File[] files = active.getParentFile().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return names.matcher(name).matches();
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+}
@@ -19,8 +19,18 @@
 
 package org.apache.sling.extensions.logback.internal.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.qos.logback.core.encoder.Encoder;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import org.apache.sling.extensions.logback.internal.LogWriter;
+import org.apache.sling.extensions.logback.internal.LogbackManager;
 
 /**
  * Custom class to allow the SlingLogPanel to differentiate between
@@ -28,8 +38,33 @@ import org.apache.sling.extensions.logback.internal.LogWriter;
  * @param <E>
  */
 public class SlingRollingFileAppender<E> extends RollingFileAppender<E> {
+    /**
+     * Set once the missing support for releasing mappings got reported
+     */
+    private static final AtomicBoolean UNMAP_FALLBACK_REPORTED = new AtomicBoolean();
+
     private LogWriter logWriter;
 
+    /**
+     * Interval in millis at which buffered data is flushed. Zero if the encoder
+     * flushes on its own
+     */
+    private long flushInterval;
+
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Scheduler used for the flushes. If null the scheduler of the LogbackManager is used
+     */
+    private ScheduledExecutorService scheduler;
+
+    private boolean memoryMapped;
+
+    /**
+     * Null unless a timestamp index is recorded for the log files
+     */
+    private TimestampIndex timestampIndex;
+
     public LogWriter getLogWriter() {
         return logWriter;
     }
@@ -37,4 +72,122 @@ public class SlingRollingFileAppender<E> extends RollingFileAppender<E> {
     public void setLogWriter(LogWriter logWriter) {
         this.logWriter = logWriter;
     }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Enables writing through a {@link MappedFileOutputStream}. Must be set before
+     * the appender is started
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public TimestampIndex getTimestampIndex() {
+        return timestampIndex;
+    }
+
+    /**
+     * Enables recording a timestamp index for the active file. Requires a
+     * {@link LoggerSpecificEncoder}. Must be set before the appender is started
+     */
+    public void setTimestampIndex(TimestampIndex timestampIndex) {
+        this.timestampIndex = timestampIndex;
+    }
+
+    /**
+     * Returns the length of the data written to the active file. For memory mapped
+     * files this excludes the padding of the mapped region
+     */
+    public long getCurrentFileLength() {
+        OutputStream os = getOutputStream();
+        if (os instanceof MappedFileOutputStream) {
+            return ((MappedFileOutputStream) os).getPosition();
+        }
+        return new File(getFile()).length();
+    }
+
+    @Override
+    public void openFile(String fileName) throws IOException {
+        if (!memoryMapped) {
+            super.openFile(fileName);
+        } else {
+            File file = new File(fileName);
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                addError("Failed to create parent directories for [" + file.getAbsolutePath() + "]");
+            }
+            if (!MappedFileOutputStream.isUnmapSupported() && UNMAP_FALLBACK_REPORTED.compareAndSet(false, true)) {
+                addWarn("Memory mapped regions cannot be released explicitly on this JVM. They are released " +
+                        "upon garbage collection which may make a rollover fail on some platforms");
+            }
+            setOutputStream(new MappedFileOutputStream(file, isAppend()));
+        }
+
+        if (timestampIndex != null && getEncoder() instanceof LoggerSpecificEncoder) {
+            try {
+                ((LoggerSpecificEncoder) getEncoder()).setTimestampRecorder(
+                        timestampIndex.open(new File(fileName), getCurrentFileLength(), isAppend()));
+            } catch (IOException e) {
+                addWarn("Failed to open timestamp index of [" + fileName + "]", e);
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        if (isStarted() && flushInterval > 0) {
+            scheduleFlush();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        super.stop();
+    }
+
+    /**
+     * Sets the scheduler used for the flushes instead of the one of the LogbackManager.
+     * Must be set before the appender is started
+     */
+    void setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    private void scheduleFlush() {
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler == null) {
+            LogbackManager manager = (LogbackManager) getContext().getObject(LogbackManager.class.getName());
+            if (manager == null) {
+                addWarn("No scheduler available. Buffered data of [" + getFile() + "] would only be flushed " +
+                        "as per the size threshold");
+                return;
+            }
+            scheduler = manager.getScheduler();
+        }
+
+        flushTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                Encoder<E> encoder = getEncoder();
+                if (encoder instanceof LoggerSpecificEncoder) {
+                    try {
+                        ((LoggerSpecificEncoder) encoder).flush();
+                    } catch (IOException e) {
+                        addError("Failed to flush [" + getFile() + "]", e);
+                    }
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
 }
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ch.qos.logback.core.rolling.RollingPolicyBase;
+import ch.qos.logback.core.rolling.RolloverFailure;
+
+/**
+ * Size based rolling policy which names the rolled over files with an increasing
+ * sequence number like <code>error.log.41</code>, <code>error.log.42</code>. Unlike
+ * the fixed window policy a rollover is a single rename irrespective of the number of
+ * files kept.
+ * <p>
+ * Files exceeding the max count are deleted in the background along with the optional
+ * compression of the rolled over file. If no {@link BackgroundCompressor} is available
+ * they are deleted by the rolling thread, which then lists the log directory upon each
+ * rollover. The sequence continues from the highest number found in the log directory
+ * when the policy is started. Numbers taken by files created by other means are
+ * skipped.
+ */
+public class SlingSequenceRollingPolicy extends RollingPolicyBase {
+    private int maxCount = 1;
+
+    private boolean compress;
+
+    private long nextSequence;
+
+    private RotatedFileIndex index;
+
+    private BackgroundCompressor compressor;
+
+    /**
+     * Runs the housekeeping of this policy one after the other. Null if the housekeeping
+     * is done by the rolling thread
+     */
+    private Executor housekeepingExecutor;
+
+    private Pattern segmentPattern;
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Sets the number of rolled over files to keep
+     */
+    public void setMaxCount(int maxCount) {
+        this.maxCount = Math.max(1, maxCount);
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public void setIndex(RotatedFileIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Sets the compressor to use instead of the one of the LogbackManager
+     */
+    void setCompressor(BackgroundCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public String getActiveFileName() {
+        return getParentsRawFileProperty();
+    }
+
+    @Override
+    public void start() {
+        if (getActiveFileName() == null) {
+            addError("The File property must be set before using " + getClass().getSimpleName());
+            return;
+        }
+
+        File active = new File(getActiveFileName());
+        segmentPattern = Pattern.compile(Pattern.quote(active.getName()) + "\\.(\\d+)("
+                + Pattern.quote(BackgroundCompressor.GZ_SUFFIX) + ")?");
+        if (index != null) {
+            index.setFileNamePattern(active.getPath() + ".%i");
+        }
+        List<Segment> segments = findSegments();
+        nextSequence = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).sequence + 1;
+
+        if (compressor == null) {
+            compressor = BackgroundCompressor.getInstance(getContext());
+        }
+        if (compressor != null) {
+            housekeepingExecutor = compressor.newSerialExecutor();
+        } else if (compress) {
+            addWarn("No compressor available. Rolled over files of [" + getActiveFileName()
+                    + "] are not compressed");
+        }
+        super.start();
+    }
+
+    public void rollover() throws RolloverFailure {
+        final long rollTime = System.currentTimeMillis();
+        File active = new File(getActiveFileName());
+        File target = new File(active.getPath() + "." + nextSequence);
+        while (target.exists() || new File(target.getPath() + BackgroundCompressor.GZ_SUFFIX).exists()) {
+            //Taken by a file not created by this policy
+            nextSequence++;
+            target = new File(active.getPath() + "." + nextSequence);
+        }
+        final File rolled = target;
+        if (!active.renameTo(rolled)) {
+            throw new RolloverFailure("Failed to rename [" + active + "] to [" + rolled + "]");
+        }
+        nextSequence++;
+        TimestampIndex.move(active, rolled);
+
+        if (index != null) {
+            index.rolled(rolled, rollTime);
+        }
+
+        Runnable housekeeping = new Runnable() {
+            public void run() {
+                if (compress && compressor != null) {
+                    compress(rolled);
+                }
+                removeOldSegments();
+            }
+        };
+
+        if (housekeepingExecutor != null) {
+            try {
+                housekeepingExecutor.execute(housekeeping);
+                return;
+            } catch (RejectedExecutionException e) {
+                //Compressor shut down
+            }
+        }
+        removeOldSegments();
+    }
+
+    private void compress(File rolled) {
+        File compressed = new File(rolled.getPath() + BackgroundCompressor.GZ_SUFFIX);
+        try {
+            compressor.compress(rolled, compressed);
+            if (index != null) {
+                index.renamed(rolled, compressed);
+            }
+        } catch (IOException e) {
+            addError("Failed to compress [" + rolled + "]", e);
+        }
+    }
+
+    private void removeOldSegments() {
+        List<Segment> segments = findSegments();
+        for (int i = 0; i < segments.size() - maxCount; i++) {
+            File file = segments.get(i).file;
+            if (!file.delete()) {
+                addWarn("Failed to delete [" + file + "]");
+            } else if (index != null) {
+                index.removed(file);
+            }
+        }
+    }
+
+    /**
+     * Returns the rolled over files ordered by their sequence number
+     */
+    private List<Segment> findSegments() {
+        final List<Segment> segments = new ArrayList<Segment>();
+        final File active = new File(getActiveFileName()).getAbsoluteFile();
+        final String[] names = active.getParentFile().list();
+        if (names == null) {
+            return segments;
+        }
+
+        for (String name : names) {
+            Matcher m = segmentPattern.matcher(name);
+            if (m.matches()) {
+                try {
+                    segments.add(new Segment(new File(active.getParentFile(), name), Long.parseLong(m.group(1))));
+                } catch (NumberFormatException e) {
+                    //Too large to be one of ours
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static class Segment implements Comparable<Segment> {
+        final File file;
+
+        final long sequence;
+
+        Segment(File file, long sequence) {
+            this.file = file;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Segment o) {
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+
+import ch.qos.logback.core.rolling.TriggeringPolicyBase;
+
+/**
+ * Size based triggering policy which uses the length of the data written by the
+ * appender instead of {@link File#length()}. A memory mapped file is padded up to
+ * the end of the mapped chunk so its file length cannot be used.
+ */
+public class SlingSizeBasedTriggeringPolicy<E> extends TriggeringPolicyBase<E> {
+    private final SlingRollingFileAppender<E> appender;
+
+    private final long maxFileSize;
+
+    public SlingSizeBasedTriggeringPolicy(SlingRollingFileAppender<E> appender, long maxFileSize) {
+        this.appender = appender;
+        this.maxFileSize = maxFileSize;
+    }
+
+    public boolean isTriggeringEvent(File activeFile, E event) {
+        return appender.getCurrentFileLength() >= maxFileSize;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+}
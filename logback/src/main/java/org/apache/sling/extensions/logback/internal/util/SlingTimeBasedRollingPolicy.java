@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
+import ch.qos.logback.core.rolling.RolloverFailure;
+import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
+
+/**
+ * Time based rolling policy which optionally compresses the rolled over files in the
+ * background.
+ * <p>
+ * The rollover itself is done by {@link TimeBasedRollingPolicy} with a file name
+ * pattern without compression suffix, so it only renames the active file. The renamed
+ * file is then compressed by the {@link BackgroundCompressor}. As the archive remover
+ * of the base class does not know about the compressed files, compressed archives
+ * exceeding the max history are removed after each compression. Only files named as
+ * per the file name pattern are considered archives.
+ * <p>
+ * Changes to the rolled over files are reported to the {@link RotatedFileIndex} if set.
+ */
+public class SlingTimeBasedRollingPolicy<E> extends TimeBasedRollingPolicy<E> {
+    private boolean compress;
+
+    private BackgroundCompressor compressor;
+
+    private Executor compressionExecutor;
+
+    private RotatedFileIndex index;
+
+    private Pattern archiveNames;
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * Enables gzip compression of rolled over files. Must be set before the policy
+     * is started
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public void setIndex(RotatedFileIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Sets the compressor to use instead of the one of the LogbackManager
+     */
+    void setCompressor(BackgroundCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        if (index != null) {
+            index.setFileNamePattern(getFileNamePattern());
+        }
+        if (!compress || !isStarted()) {
+            return;
+        }
+
+        archiveNames = RotatedFileIndex.compileNamePattern(getFileNamePattern());
+        if (compressor == null) {
+            compressor = BackgroundCompressor.getInstance(getContext());
+        }
+        if (compressor == null) {
+            addWarn("No compressor available. Rolled over files of [" + getActiveFileName()
+                    + "] are not compressed");
+            return;
+        }
+        compressionExecutor = compressor.newSerialExecutor();
+    }
+
+    @Override
+    public void rollover() throws RolloverFailure {
+        final long rollTime = System.currentTimeMillis();
+        final File rolled = new File(getTimeBasedFileNamingAndTriggeringPolicy().getElapsedPeriodsFileName());
+        super.rollover();
+        TimestampIndex.move(new File(getActiveFileName()), rolled);
+        if (index != null) {
+            index.rolled(rolled, rollTime);
+        }
+
+        if (compressionExecutor == null) {
+            return;
+        }
+
+        try {
+            compressionExecutor.execute(new Runnable() {
+                public void run() {
+                    compress(rolled);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            addWarn("Compressor is shut down. [" + rolled + "] is archived uncompressed");
+        }
+    }
+
+    private void compress(File rolled) {
+        if (!rolled.exists()) {
+            return;
+        }
+
+        File compressed = new File(rolled.getPath() + BackgroundCompressor.GZ_SUFFIX);
+        try {
+            compressor.compress(rolled, compressed);
+            if (index != null) {
+                index.renamed(rolled, compressed);
+            }
+        } catch (IOException e) {
+            addError("Failed to compress [" + rolled + "]", e);
+        }
+        removeOldArchives();
+    }
+
+    /**
+     * Keeps the newest max history compressed archives of the active file
+     */
+    private void removeOldArchives() {
+        final int maxHistory = getMaxHistory();
+        if (maxHistory <= 0) {
+            return;
+        }
+
+        final File active = new File(getActiveFileName()).getAbsoluteFile();
+        final Pattern names = archiveNames;
+        File[] archives = active.getParentFile().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(BackgroundCompressor.GZ_SUFFIX) && names.matcher(name).matches();
+            }
+        });
+        if (archives == null || archives.length <= maxHistory) {
+            return;
+        }
+
+        //Newest first
+        Arrays.sort(archives, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? 1 : (m1 == m2 ? 0 : -1);
+            }
+        });
+        for (int i = maxHistory; i < archives.length; i++) {
+            if (!archives[i].delete()) {
+                addWarn("Failed to delete old archive [" + archives[i] + "]");
+            } else if (index != null) {
+                index.removed(archives[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter which spreads updates from different threads over separate cells so that
+ * concurrent writers do not contend on a single cache line. Reading the value sums
+ * up all cells and is therefore more costly than an update.
+ * <p>
+ * The cell used by a thread is picked from its id. Threads mapping to the same cell
+ * still update it atomically, they just contend on it.
+ */
+public class StripedCounter {
+    /**
+     * Number of longs between two cells. Keeps each cell on its own cache line
+     */
+    static final int PADDING = 16;
+
+    private static final int MAX_STRIPES = 64;
+
+    private static final int STRIPES = stripeCount(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.addAndGet(stripe() * PADDING, delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Index of the stripe used by the current thread
+     */
+    static int stripe() {
+        return mix(Thread.currentThread().getId()) & (STRIPES - 1);
+    }
+
+    static int stripes() {
+        return STRIPES;
+    }
+
+    /**
+     * Power of two close to twice the number of processors bounded by {@link #MAX_STRIPES}
+     */
+    static int stripeCount(int processors) {
+        int n = 1;
+        while (n < 2 * processors && n < MAX_STRIPES) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static int mix(long id) {
+        //Thread ids are mostly sequential. Spread them so that the low bits differ
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(sum());
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import ch.qos.logback.core.CoreConstants;
+
+/**
+ * Sparse index of the event timestamps of a log file kept in a sidecar file next to
+ * it. Every {@link #EVENT_INTERVAL} events or {@link #BYTE_INTERVAL} bytes the
+ * timestamp of the next event is recorded along with the offset at which the event
+ * starts. A time range can then be located by a binary search over the entries
+ * instead of scanning the file.
+ * <p>
+ * The entries of the active file are recorded by the encoder as the events get
+ * written. The sidecar follows its log file through the renames done upon rollover.
+ * Compressed files share the sidecar of the uncompressed file as the offsets refer to
+ * the uncompressed data.
+ * <p>
+ * A missing or stale sidecar of a rolled over file is rebuilt in the background by
+ * parsing the timestamps at the start of the lines. This requires the layout pattern
+ * to start with a date conversion.
+ */
+public class TimestampIndex {
+    public static final String SUFFIX = ".idx";
+
+    public static final int EVENT_INTERVAL = 1000;
+
+    public static final int BYTE_INTERVAL = 64 * 1024;
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Each entry is the timestamp followed by the offset, both as long
+     */
+    private static final int ENTRY_SIZE = 16;
+
+    /**
+     * Number of bytes at the start of a line decoded to parse the timestamp
+     */
+    private static final int MAX_DATE_LENGTH = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Pattern DATE_CONVERSION = Pattern.compile("^%(?:d|date)(?:\\{([^}]*)\\})?");
+
+    /**
+     * Date pattern of the lines. Null if it is not known
+     */
+    private final String datePattern;
+
+    private final Charset charset;
+
+    /**
+     * Executor used for rebuilding sidecars. Null if they are not rebuilt
+     */
+    private final Executor executor;
+
+    private final Set<File> rebuilding = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+    /**
+     * @param datePattern pattern of the timestamp at the start of the lines as used by
+     *                    {@link SimpleDateFormat}. Null if not known
+     * @param executor executor rebuilding stale sidecars. Null to not rebuild them
+     */
+    public TimestampIndex(String datePattern, Charset charset, Executor executor) {
+        this.datePattern = datePattern;
+        this.charset = charset;
+        this.executor = executor;
+    }
+
+    /**
+     * Extracts the date pattern from a layout pattern starting with a date conversion
+     * like <code>%d{dd.MM.yyyy HH:mm:ss.SSS}</code>
+     *
+     * @return null if the layout pattern does not start with a date
+     */
+    public static String getDatePattern(String layoutPattern) {
+        if (layoutPattern == null) {
+            return null;
+        }
+        Matcher m = DATE_CONVERSION.matcher(layoutPattern);
+        if (!m.find()) {
+            return null;
+        }
+        String pattern = m.group(1);
+        if (pattern != null) {
+            pattern = pattern.trim();
+            if (pattern.startsWith("\"") || pattern.startsWith("'")) {
+                //Quoted to allow for commas within the pattern
+                int end = pattern.indexOf(pattern.charAt(0), 1);
+                pattern = end > 0 ? pattern.substring(1, end) : pattern.substring(1);
+            } else {
+                //Options following the pattern like the time zone are not supported
+                pattern = pattern.split(",")[0].trim();
+            }
+        }
+        if (pattern == null || pattern.length() == 0 || CoreConstants.ISO8601_STR.equals(pattern)) {
+            return CoreConstants.ISO8601_PATTERN;
+        }
+        return pattern;
+    }
+
+    public String getDatePattern() {
+        return datePattern;
+    }
+
+    /**
+     * Returns a new format for parsing the timestamps of the lines. Formats are not
+     * thread safe
+     *
+     * @return null if the date pattern is not known
+     */
+    public DateFormat newDateFormat() {
+        if (datePattern == null) {
+            return null;
+        }
+        try {
+            DateFormat format = new SimpleDateFormat(datePattern);
+            format.setLenient(false);
+            return format;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the sidecar of the log file. A compressed file shares the sidecar of the
+     * uncompressed file
+     */
+    public static File getIndexFile(File logFile) {
+        String path = logFile.getPath();
+        if (path.endsWith(BackgroundCompressor.GZ_SUFFIX)) {
+            path = path.substring(0, path.length() - BackgroundCompressor.GZ_SUFFIX.length());
+        }
+        return new File(path + SUFFIX);
+    }
+
+    /**
+     * Moves the sidecar along with a rename of its log file. A sidecar left at the
+     * target by an earlier file is removed if the source has none
+     */
+    public static void move(File from, File to) {
+        final File source = getIndexFile(from);
+        final File target = getIndexFile(to);
+        if (source.equals(target)) {
+            return;
+        }
+        if (target.exists()) {
+            target.delete();
+        }
+        if (source.exists()) {
+            source.renameTo(target);
+        }
+    }
+
+    public static void delete(File logFile) {
+        final File idx = getIndexFile(logFile);
+        if (idx.exists()) {
+            idx.delete();
+        }
+    }
+
+    /**
+     * Opens the sidecar of the active file for recording
+     *
+     * @param offset length of the data in the log file
+     * @param append true if the log file is appended to. An existing sidecar is then
+     *               continued if it is consistent with the data length
+     */
+    public Recorder open(File logFile, long offset, boolean append) throws IOException {
+        final File idx = getIndexFile(logFile);
+        boolean keep = false;
+        if (append && offset > 0 && idx.exists()) {
+            Entries entries = load(idx);
+            keep = entries != null && entries.getLastOffset() <= offset;
+        }
+        return new Recorder(idx, offset, keep);
+    }
+
+    /**
+     * Reads the entries of the sidecar of the log file. If the sidecar is missing or
+     * stale a rebuild is scheduled if requested
+     *
+     * @param dataLength length of the data in the log file. Negative if not known as
+     *                   for compressed files
+     * @param rebuild true if a missing or stale sidecar should be rebuilt. Must be
+     *                false for the active file as its sidecar is being recorded
+     * @return null if no valid sidecar is present
+     */
+    public Entries read(File logFile, long dataLength, boolean rebuild) {
+        final File idx = getIndexFile(logFile);
+        Entries entries = null;
+        if (idx.exists()) {
+            try {
+                entries = load(idx);
+            } catch (IOException e) {
+                //Treated as missing
+            }
+        }
+        if (entries != null && dataLength >= 0 && entries.getLastOffset() > dataLength) {
+            entries = null;
+        }
+        if (entries == null && rebuild) {
+            scheduleRebuild(logFile);
+        }
+        return entries;
+    }
+
+    /**
+     * Recreates the sidecar of the log file from the timestamps found at the start of
+     * the lines
+     *
+     * @return false if the date pattern is not known
+     */
+    boolean rebuild(File logFile) throws IOException {
+        final DateFormat format = newDateFormat();
+        if (format == null) {
+            return false;
+        }
+
+        final File idx = getIndexFile(logFile);
+        final File tmp = new File(idx.getPath() + TMP_SUFFIX);
+        final Recorder recorder = new Recorder(tmp, 0, false);
+        InputStream in = new FileInputStream(logFile);
+        try {
+            if (logFile.getName().endsWith(BackgroundCompressor.GZ_SUFFIX)) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            final byte[] prefix = new byte[MAX_DATE_LENGTH];
+            final ParsePosition pos = new ParsePosition(0);
+            int prefixLength = 0;
+            int lineLength = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    final byte b = buffer[i];
+                    if (prefixLength < prefix.length) {
+                        prefix[prefixLength++] = b;
+                    }
+                    lineLength++;
+                    if (b == '\n') {
+                        pos.setIndex(0);
+                        Date date = format.parse(new String(prefix, 0, prefixLength, charset), pos);
+                        if (date != null) {
+                            recorder.beforeEvent(date.getTime());
+                        }
+                        recorder.written(lineLength);
+                        prefixLength = 0;
+                        lineLength = 0;
+                    }
+                }
+            }
+        } finally {
+            in.close();
+            recorder.close();
+        }
+
+        if (idx.exists() && !idx.delete()) {
+            tmp.delete();
+            throw new IOException("Failed to delete stale index " + idx);
+        }
+        if (!tmp.renameTo(idx)) {
+            tmp.delete();
+            throw new IOException("Failed to rename " + tmp + " to " + idx);
+        }
+        return true;
+    }
+
+    private void scheduleRebuild(final File logFile) {
+        if (executor == null || datePattern == null || !logFile.exists() || !rebuilding.add(logFile)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        //The file may have been rolled or deleted since
+                        if (logFile.exists()) {
+                            rebuild(logFile);
+                        }
+                    } catch (IOException ignore) {
+                        //Tried again upon next read
+                    } finally {
+                        rebuilding.remove(logFile);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuilding.remove(logFile);
+        }
+    }
+
+    static Entries load(File idx) throws IOException {
+        final long length = idx.length();
+        if (length == 0 || length % ENTRY_SIZE != 0 || length / ENTRY_SIZE > Integer.MAX_VALUE) {
+            return null;
+        }
+        final int count = (int) (length / ENTRY_SIZE);
+        final long[] timestamps = new long[count];
+        final long[] offsets = new long[count];
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idx)));
+        try {
+            for (int i = 0; i < count; i++) {
+                timestamps[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+        } finally {
+            in.close();
+        }
+        return new Entries(timestamps, offsets);
+    }
+
+    /**
+     * Entries of a sidecar ordered by offset. The timestamps are mostly ascending. Events
+     * logged concurrently may be written slightly out of order, so the offsets returned
+     * include one entry of margin
+     */
+    public static final class Entries {
+        private final long[] timestamps;
+
+        private final long[] offsets;
+
+        Entries(long[] timestamps, long[] offsets) {
+            this.timestamps = timestamps;
+            this.offsets = offsets;
+        }
+
+        public int size() {
+            return offsets.length;
+        }
+
+        public long getLastOffset() {
+            return offsets[offsets.length - 1];
+        }
+
+        /**
+         * Returns the offset from which on all events logged at or after the given time
+         * are found
+         */
+        public long findStart(long timestamp) {
+            //Last entry before the time, one more for margin
+            int i = lastBefore(timestamp) - 1;
+            return i >= 0 ? offsets[i] : 0;
+        }
+
+        /**
+         * Returns the offset up to which all events logged at or before the given time
+         * are found
+         *
+         * @return -1 if the events may extend to the end of the file
+         */
+        public long findEnd(long timestamp) {
+            if (timestamp == Long.MAX_VALUE) {
+                return -1;
+            }
+            //First entry after the time, one more for margin
+            int i = lastBefore(timestamp + 1) + 2;
+            return i < offsets.length ? offsets[i] : -1;
+        }
+
+        /**
+         * Returns the index of the last entry before the given time or -1
+         */
+        private int lastBefore(long timestamp) {
+            int low = 0;
+            int high = timestamps.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid] < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low - 1;
+        }
+    }
+
+    /**
+     * Records the entries of the sidecar of the active file. Used under the lock of the
+     * encoder
+     */
+    public static final class Recorder {
+        private final DataOutputStream out;
+
+        /**
+         * Offset in the log file at which the next event starts
+         */
+        private long position;
+
+        private long lastEntryPosition;
+
+        private int eventsSinceEntry;
+
+        private boolean empty;
+
+        Recorder(File idx, long position, boolean append) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idx, append)));
+            this.position = position;
+            this.empty = !append;
+        }
+
+        /**
+         * Records an entry if due before an event with the given timestamp is written
+         */
+        public void beforeEvent(long timestamp) throws IOException {
+            if (empty || ++eventsSinceEntry >= EVENT_INTERVAL || position - lastEntryPosition >= BYTE_INTERVAL) {
+                out.writeLong(timestamp);
+                out.writeLong(position);
+                lastEntryPosition = position;
+                eventsSinceEntry = 0;
+                empty = false;
+            }
+        }
+
+        /**
+         * Advances the offset by the number of bytes written to the log file
+         */
+        public void written(int length) {
+            position += length;
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
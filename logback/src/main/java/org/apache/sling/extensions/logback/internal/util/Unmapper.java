@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Releases a mapping right away instead of waiting for the buffer to be garbage
+ * collected. There is no public API for this hence JVM internals are used on a
+ * best effort basis. They are looked up once. Under OSGi this requires the optional
+ * import of <code>sun.misc</code>
+ */
+public final class Unmapper {
+    private static final Unmapper INSTANCE = new Unmapper();
+
+    private Object unsafe;
+
+    private Method invokeCleaner;
+
+    private Method cleaner;
+
+    private Method clean;
+
+    private Unmapper() {
+        try {
+            //Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method m = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            invokeCleaner = m;
+            return;
+        } catch (Exception ignore) {
+            //Try the pre Java 9 way
+        }
+
+        try {
+            Method cleanerMethod = ByteBuffer.allocateDirect(1).getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Method cleanMethod = cleanerMethod.getReturnType().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            cleaner = cleanerMethod;
+            clean = cleanMethod;
+        } catch (Exception ignore) {
+            //Mappings are released once the buffers are garbage collected
+        }
+    }
+
+    /**
+     * Returns true if mappings can be released explicitly. If not they are released once
+     * the buffer is garbage collected, which may make truncating, renaming or deleting
+     * the file fail on some platforms
+     */
+    public static boolean isSupported() {
+        return INSTANCE.invokeCleaner != null || INSTANCE.clean != null;
+    }
+
+    /**
+     * Releases the mapping of the buffer. The buffer must not be accessed afterwards
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        INSTANCE.release(buffer);
+    }
+
+    private void release(MappedByteBuffer buffer) {
+        try {
+            if (invokeCleaner != null) {
+                invokeCleaner.invoke(unsafe, buffer);
+            } else if (cleaner != null) {
+                Object c = cleaner.invoke(buffer);
+                if (c != null) {
+                    clean.invoke(c);
+                }
+            }
+        } catch (Exception ignore) {
+            //Mapping is released once the buffer is garbage collected
+        }
+    }
+}
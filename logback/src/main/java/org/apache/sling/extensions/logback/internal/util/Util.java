@@ -26,6 +26,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
 import org.xml.sax.InputSource;
 
 public class Util {
@@ -60,6 +63,83 @@ public class Util {
         return valuesList;
     }
 
+    /**
+     * Converts the config value to int. Returns the default value if the value is
+     * null or cannot be converted
+     */
+    public static int toInt(Object value, int defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException nfe) {
+                // don't care
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Converts the config value to double. Returns the default value if the value is
+     * null or cannot be converted
+     */
+    public static double toDouble(Object value, double defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value != null) {
+            try {
+                return Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException nfe) {
+                // don't care
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Converts the config value to boolean. Returns the default value if the value
+     * is null
+     */
+    public static boolean toBoolean(Object value, boolean defaultValue) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value != null) {
+            return Boolean.parseBoolean(value.toString().trim());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Maps the level to a small index. TRACE and finer map to 0, DEBUG to 1, INFO to 2,
+     * WARN to 3 and ERROR and higher to 4
+     */
+    public static int levelIndex(Level level) {
+        final int value = level.toInt();
+        if (value >= Level.ERROR_INT) {
+            return 4;
+        } else if (value >= Level.WARN_INT) {
+            return 3;
+        } else if (value >= Level.INFO_INT) {
+            return 2;
+        } else if (value >= Level.DEBUG_INT) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the innermost appender wrapped by the given appender if it is an async
+     * or metered appender otherwise the passed appender
+     */
+    public static Appender<ILoggingEvent> unwrap(Appender<ILoggingEvent> appender) {
+        Appender<ILoggingEvent> a = appender;
+        while (a instanceof DelegatingAppender) {
+            a = ((DelegatingAppender) a).getDelegate();
+        }
+        return a;
+    }
+
     public static void close(InputSource is) {
         Closeable c = is.getByteStream();
         if(c == null){
@@ -93,6 +93,42 @@ public class ITAppenderServices extends LogTestBase {
         assertFalse(bar.isDebugEnabled());
     }
 
+    @Test
+    public void testModifiedAppenderService() throws Exception {
+        TestAppender ta = new TestAppender();
+        Dictionary<String,Object> props = new Hashtable<String, Object>();
+        props.put("loggers", new String[] {"foo.mod1:DEBUG", "foo.mod2:DEBUG"});
+        ServiceRegistration sr =
+                bundleContext.registerService(Appender.class.getName(),ta,props);
+        delay();
+
+        Logger mod1 = LoggerFactory.getLogger("foo.mod1");
+        Logger mod2 = LoggerFactory.getLogger("foo.mod2");
+        Logger mod3 = LoggerFactory.getLogger("foo.mod3");
+        assertTrue(mod1.isDebugEnabled());
+        assertFalse(mod3.isDebugEnabled());
+
+        props.put("loggers", new String[] {"foo.mod2:DEBUG", "foo.mod3:DEBUG"});
+        sr.setProperties(props);
+        delay();
+
+        //Unbound loggers are reverted and a logger bound before and after is attached once
+        assertFalse(mod1.isDebugEnabled());
+        assertTrue(mod2.isDebugEnabled());
+        assertTrue(mod3.isDebugEnabled());
+
+        mod1.debug("Test message");
+        mod2.debug("Test message");
+        mod3.debug("Test message");
+        assertEquals(2,ta.events.size());
+
+        sr.unregister();
+        delay();
+
+        assertFalse(mod2.isDebugEnabled());
+        assertFalse(mod3.isDebugEnabled());
+    }
+
 
     private static class TestAppender extends AppenderBase<ILoggingEvent> {
         final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
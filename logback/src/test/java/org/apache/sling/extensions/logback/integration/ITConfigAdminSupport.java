@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.ops4j.pax.exam.CoreOptions.composite;
 import static org.ops4j.pax.exam.CoreOptions.mavenBundle;
@@ -117,6 +118,36 @@ public class ITConfigAdminSupport extends LogTestBase {
         assertFalse(itr.hasNext());
     }
 
+    @Test
+    public void testRemoveLoggerConfig() throws Exception {
+        Configuration config = ca.createFactoryConfiguration(FACTORY_PID_CONFIGS, null);
+        Dictionary<String, Object> p = new Hashtable<String, Object>();
+        p.put(LOG_LOGGERS, new String[]{"foo2.bar"});
+        p.put(LOG_LEVEL, "DEBUG");
+        config.update(p);
+
+        delay();
+
+        Logger slf4jLogger = LoggerFactory.getLogger("foo2.bar");
+        assertTrue(slf4jLogger.isDebugEnabled());
+
+        //Change only the level
+        p.put(LOG_LEVEL, "TRACE");
+        config.update(p);
+
+        delay();
+
+        assertTrue(slf4jLogger.isTraceEnabled());
+
+        //Removing the config should make the logger inherit the level again
+        config.delete();
+
+        delay();
+
+        assertNull(((ch.qos.logback.classic.Logger) slf4jLogger).getLevel());
+        assertFalse(slf4jLogger.isDebugEnabled());
+    }
+
     @Test
     public void testChangeGlobalConfig() throws Exception {
         //Set log level to debug for Root logger
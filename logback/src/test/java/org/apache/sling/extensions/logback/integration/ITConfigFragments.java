@@ -19,6 +19,8 @@
 
 package org.apache.sling.extensions.logback.integration;
 
+import java.io.StringReader;
+import java.util.Hashtable;
 import java.util.Properties;
 
 import javax.inject.Inject;
@@ -31,11 +33,13 @@ import org.ops4j.pax.exam.junit.PaxExam;
 import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
 import org.ops4j.pax.exam.spi.reactors.PerClass;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -130,6 +134,103 @@ public class ITConfigFragments extends LogTestBase {
         assertNotNull(logger.getAppender("FOO-RESET-FILE-2"));
     }
 
+    @Test
+    public void testProviderEventsCachedTillReset() throws Exception {
+        CountingConfigProvider ccp = new CountingConfigProvider("foo.cache.1", "DEBUG");
+        bundleContext.registerService(ConfigProvider.class.getName(),ccp,null);
+
+        delay();
+
+        ch.qos.logback.classic.Logger logger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("foo.cache.1");
+        assertTrue(logger.isDebugEnabled());
+        final int parseCount = ccp.count;
+        assertTrue(parseCount > 0);
+
+        //Without a RESET event the provider is not asked again upon a reconfiguration
+        //triggered by some other fragment. The cached events are played instead
+        ccp.level = "INFO";
+        registerStringFragment("foo.cache.other.1", "TRACE");
+
+        delay();
+
+        assertTrue(((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("foo.cache.other.1")).isTraceEnabled());
+        assertEquals(parseCount, ccp.count);
+        assertTrue(logger.isDebugEnabled());
+
+        //The RESET event drops the cached events
+        eventAdmin.sendEvent(new Event(RESET_EVENT_TOPIC,new Properties()));
+
+        delay();
+
+        assertEquals(parseCount + 1, ccp.count);
+        assertFalse(logger.isDebugEnabled());
+        assertTrue(logger.isInfoEnabled());
+    }
+
+    @Test
+    public void testModifiedProviderParsedAgain() throws Exception {
+        CountingConfigProvider ccp = new CountingConfigProvider("foo.cache.2", "DEBUG");
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("configVersion", 1);
+        ServiceRegistration reg = bundleContext.registerService(ConfigProvider.class.getName(),ccp,props);
+
+        delay();
+
+        ch.qos.logback.classic.Logger logger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("foo.cache.2");
+        assertTrue(logger.isDebugEnabled());
+        final int parseCount = ccp.count;
+
+        //Modifying the service properties signals a changed config
+        ccp.level = "WARN";
+        props.put("configVersion", 2);
+        reg.setProperties(props);
+
+        delay();
+
+        assertEquals(parseCount + 1, ccp.count);
+        assertFalse(logger.isInfoEnabled());
+        assertTrue(logger.isWarnEnabled());
+
+        //Fragments which did not change stay cached
+        registerStringFragment("foo.cache.other.2", "TRACE");
+
+        delay();
+
+        assertEquals(parseCount + 1, ccp.count);
+        assertTrue(logger.isWarnEnabled());
+    }
+
+    private void registerStringFragment(String loggerName, String level){
+        Properties props = new Properties();
+        props.setProperty("logbackConfig","true");
+        bundleContext.registerService(String.class.getName(),
+                CountingConfigProvider.createConfig(loggerName, level),props);
+    }
+
+    private static class CountingConfigProvider implements ConfigProvider {
+        final String loggerName;
+        volatile String level;
+        volatile int count;
+
+        CountingConfigProvider(String loggerName, String level) {
+            this.loggerName = loggerName;
+            this.level = level;
+        }
+
+        public InputSource getConfigSource() {
+            count++;
+            return new InputSource(new StringReader(createConfig(loggerName, level)));
+        }
+
+        static String createConfig(String loggerName, String level){
+            return "<included>\n" +
+                    "  <logger name=\"" + loggerName + "\" level=\"" + level + "\"/>\n" +
+                    "</included>";
+        }
+    }
+
     private static class FileConfigProvider implements ConfigProvider {
         String fileName = "test-config-provider.xml";
         public InputSource getConfigSource() {
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.integration;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class ITFilterSupport extends LogTestBase {
+
+    @Inject
+    private BundleContext bundleContext;
+
+    static {
+        // uncomment to enable debugging of this test class
+//                paxRunnerVmOption = DEBUG_VM_OPTION;
+
+    }
+
+    @Test
+    public void testTurboFilter() throws Exception {
+        Logger bar = LoggerFactory.getLogger("turbofilter.foo.bar");
+        assertTrue(bar.isInfoEnabled());
+
+        DenyingTurboFilter stf = new DenyingTurboFilter();
+        ServiceRegistration sr = bundleContext.registerService(TurboFilter.class.getName(), stf, null);
+
+        delay();
+
+        //Filter denies all calls
+        assertFalse(bar.isInfoEnabled());
+
+        sr.unregister();
+        delay();
+
+        assertTrue(bar.isInfoEnabled());
+    }
+
+    @Test
+    public void testScopedTurboFilter() throws Exception {
+        DenyingTurboFilter stf = new DenyingTurboFilter();
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put("loggers", "turbofilter.scoped");
+        props.put("levels", new String[]{"WARN", "ERROR"});
+        ServiceRegistration sr = bundleContext.registerService(TurboFilter.class.getName(), stf, props);
+
+        delay();
+
+        Logger scoped = LoggerFactory.getLogger("turbofilter.scoped.Foo");
+        Logger other = LoggerFactory.getLogger("turbofilter.other");
+
+        assertFalse(scoped.isWarnEnabled());
+        assertTrue(scoped.isInfoEnabled());
+        assertTrue(other.isWarnEnabled());
+
+        //Filter is only consulted for the call within its scope
+        assertEquals(1, stf.calls);
+
+        sr.unregister();
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        TestAppender ta = new TestAppender();
+        ta.setName("TestAppender");
+        Dictionary<String, Object> appenderProps = new Hashtable<String, Object>();
+        appenderProps.put("loggers", new String[]{"filter.foo.bar:INFO", "filter.foo.baz:INFO"});
+        ServiceRegistration asr = bundleContext.registerService(Appender.class.getName(), ta, appenderProps);
+
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put("appenders", "TestAppender");
+        ServiceRegistration fsr = bundleContext.registerService(Filter.class.getName(), new SimpleFilter(), props);
+
+        delay();
+
+        LoggerFactory.getLogger("filter.foo.bar").info("Denied by filter");
+        LoggerFactory.getLogger("filter.foo.baz").info("Passed by filter");
+        assertEquals(1, ta.events.size());
+        assertEquals("filter.foo.baz", ta.events.get(0).getLoggerName());
+
+        //Filter is detached upon unregistration
+        fsr.unregister();
+        delay();
+
+        LoggerFactory.getLogger("filter.foo.bar").info("Passed without filter");
+        assertEquals(2, ta.events.size());
+
+        asr.unregister();
+    }
+
+    private static class SimpleFilter extends Filter<ILoggingEvent> {
+
+        @Override
+        public FilterReply decide(ILoggingEvent event) {
+            if (event.getLoggerName().equals("filter.foo.bar")) {
+                return FilterReply.DENY;
+            }
+            return FilterReply.NEUTRAL;
+        }
+    }
+
+    private static class TestAppender extends AppenderBase<ILoggingEvent> {
+        final List<ILoggingEvent> events = new ArrayList<ILoggingEvent>();
+
+        @Override
+        protected void append(ILoggingEvent eventObject) {
+            events.add(eventObject);
+        }
+    }
+
+    private static class DenyingTurboFilter extends TurboFilter {
+        int calls;
+
+        @Override
+        public FilterReply decide(Marker marker, ch.qos.logback.classic.Logger logger, Level level,
+                                  String format, Object[] params, Throwable t) {
+            calls++;
+            return FilterReply.DENY;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.extensions.logback.internal;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.joran.event.BodyEvent;
+import ch.qos.logback.core.joran.event.SaxEvent;
+import ch.qos.logback.core.joran.event.SaxEventRecorder;
+import ch.qos.logback.core.joran.event.StartEvent;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TestConfigSnapshot {
+
+    @Test
+    public void testRoundTrip() throws Exception{
+        LoggerContext context = new LoggerContext();
+        File file = File.createTempFile("snapshot", ".bin");
+        file.delete();
+        try{
+            String xml = "<configuration>\n" +
+                    "  <appender name=\"FILE\" class=\"ch.qos.logback.core.FileAppender\">\n" +
+                    "    <file>${sling.home}/logs/foo.log</file>\n" +
+                    "  </appender>\n" +
+                    "</configuration>";
+            SaxEventRecorder recorder = new SaxEventRecorder(context);
+            List<SaxEvent> events = recorder.recordEvents(new InputSource(new StringReader(xml)));
+
+            ConfigSnapshot snapshot = new ConfigSnapshot(context, file);
+            snapshot.putEvents("main", 42, events);
+            snapshot.commit();
+
+            ConfigSnapshot loaded = new ConfigSnapshot(context, file);
+            assertNull(loaded.getEvents("main", 43));
+
+            List<SaxEvent> replayed = loaded.getEvents("main", 42);
+            assertNotNull(replayed);
+            assertEquals(events.size(), replayed.size());
+            for(int i = 0; i < events.size(); i++){
+                SaxEvent expected = events.get(i);
+                SaxEvent actual = replayed.get(i);
+                assertEquals(expected.getClass(), actual.getClass());
+                assertEquals(expected.qName, actual.qName);
+                assertEquals(expected.locator.getLineNumber(), actual.locator.getLineNumber());
+                if(expected instanceof StartEvent){
+                    assertEquals(((StartEvent) expected).attributes.getValue("name"),
+                            ((StartEvent) actual).attributes.getValue("name"));
+                } else if(expected instanceof BodyEvent){
+                    assertEquals(((BodyEvent) expected).getText(), ((BodyEvent) actual).getText());
+                }
+            }
+
+            //Entries not used till the next commit are dropped
+            loaded.commit();
+            assertEquals(0, loaded.size());
+        } finally {
+            file.delete();
+        }
+    }
+}
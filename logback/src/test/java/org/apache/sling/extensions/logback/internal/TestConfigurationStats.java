@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestConfigurationStats {
+
+    @Test
+    public void historyMostRecentFirst(){
+        ConfigurationStats stats = new ConfigurationStats();
+        assertEquals(0, stats.getConfigurationCount());
+        assertEquals(0, stats.getLastConfigurationTime());
+        assertEquals(0, stats.getHistory().length);
+
+        for (int i = 0; i < ConfigurationStats.HISTORY_SIZE + 5; i++) {
+            stats.beginPass("pass-" + i);
+            stats.endPass(i);
+        }
+
+        List<ConfigurationStats.Pass> passes = stats.getPasses();
+        assertEquals(ConfigurationStats.HISTORY_SIZE, passes.size());
+        assertEquals(ConfigurationStats.HISTORY_SIZE + 5, stats.getConfigurationCount());
+        assertEquals("pass-" + (ConfigurationStats.HISTORY_SIZE + 4), passes.get(0).getTrigger());
+        assertEquals("pass-5", passes.get(passes.size() - 1).getTrigger());
+        assertEquals(ConfigurationStats.HISTORY_SIZE + 4, passes.get(0).getAppenderCount());
+    }
+
+    @Test
+    public void phasesOfCurrentPass() throws Exception{
+        ConfigurationStats stats = new ConfigurationStats();
+
+        //Ignored while no pass is running
+        stats.fragmentParsed();
+        stats.phaseCompleted("reset", System.nanoTime());
+        stats.endPass(1);
+        assertEquals(0, stats.getConfigurationCount());
+
+        stats.beginPass("startup");
+        stats.phaseCompleted("reset", System.nanoTime() - 1000000);
+        stats.phaseCompleted("configure", System.nanoTime() - 3000000);
+        stats.phaseCompleted("reset", System.nanoTime() - 1000000);
+        stats.fragmentParsed();
+        stats.fragmentParsed();
+        stats.consoleAppenderAttached();
+        Thread.sleep(5);
+        stats.consoleAppenderDetached();
+        //Detach without attach is ignored
+        stats.consoleAppenderDetached();
+        stats.endPass(3);
+
+        ConfigurationStats.Pass pass = stats.getPasses().get(0);
+        assertEquals("startup", pass.getTrigger());
+        assertEquals(2, pass.getFragmentsParsed());
+        assertEquals(3, pass.getAppenderCount());
+        assertTrue(pass.getConsoleNanos() >= 5000000);
+        assertTrue(pass.getDurationNanos() >= pass.getConsoleNanos());
+
+        Map<String, Long> phases = pass.getPhases();
+        assertEquals(2, phases.size());
+        assertEquals("reset", phases.keySet().iterator().next());
+        assertTrue(phases.get("reset") >= 2000000);
+        assertTrue(phases.get("configure") >= 3000000);
+
+        String entry = stats.getHistory()[0];
+        assertTrue(entry, entry.contains("[startup]"));
+        assertTrue(entry, entry.contains("reset="));
+        assertTrue(entry, entry.contains("configure="));
+        assertTrue(entry, entry.contains("appenders=3"));
+        assertTrue(entry, entry.contains("fragmentsParsed=2"));
+    }
+
+    @Test
+    public void maxConfigurationTime() throws Exception{
+        ConfigurationStats stats = new ConfigurationStats();
+        stats.beginPass("slow");
+        Thread.sleep(20);
+        stats.endPass(0);
+        stats.beginPass("fast");
+        stats.endPass(0);
+
+        assertTrue(stats.getMaxConfigurationTime() >= 20);
+        assertEquals(stats.getPasses().get(0).getDuration(), stats.getLastConfigurationTime());
+        assertTrue(stats.getLastConfigurationTime() <= stats.getMaxConfigurationTime());
+    }
+
+    @Test
+    public void exposedAsMBean() throws Exception{
+        ConfigurationStats stats = new ConfigurationStats();
+        stats.beginPass("startup");
+        stats.endPass(2);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.apache.sling.extensions.logback:type=ConfigurationStats,name=test");
+        server.registerMBean(stats, name);
+        try {
+            assertEquals(1L, server.getAttribute(name, "ConfigurationCount"));
+            assertEquals(stats.getLastConfigurationTime(), server.getAttribute(name, "LastConfigurationTime"));
+            String[] history = (String[]) server.getAttribute(name, "History");
+            assertEquals(1, history.length);
+            assertTrue(history[0], history[0].contains("[startup]"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.sling.extensions.logback.internal;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import ch.qos.logback.classic.Level;
@@ -27,6 +28,8 @@ import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 public class TestLogConfig {
 
@@ -46,6 +49,25 @@ public class TestLogConfig {
         assertEquals(convertedPattern, logConfig.createLayout().getPattern());
     }
 
+    @Test
+    public void testSharedLayout(){
+        String pattern = "{0,date,dd.MM.yyyy HH:mm:ss.SSS} *{4}* [{2}] {3} {5}";
+        String convertedPattern = "%d{dd.MM.yyyy HH:mm:ss.SSS} *%level* [%thread] %logger %message%n";
+        LayoutRegistry registry = new LayoutRegistry();
+
+        LogConfig legacy = createConfig(pattern);
+        LogConfig converted = createConfig(convertedPattern);
+        LogConfig other = createConfig("%message%n");
+
+        //Configs whose patterns translate to the same Logback pattern share the layout
+        assertSame(registry.getLayout(legacy), registry.getLayout(converted));
+        assertNotSame(registry.getLayout(legacy), registry.getLayout(other));
+        assertEquals(2, registry.size());
+
+        registry.retain(Arrays.asList(other));
+        assertEquals(1, registry.size());
+    }
+
     private LogConfig createConfig(String pattern){
         return new LogConfig(new DummyLogWriterProvider(),
                 pattern,
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal;
+
+import ch.qos.logback.classic.Level;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRateLimitFilter {
+
+    @Test
+    public void samplePercentages(){
+        assertEquals(100, sample(1, 10000));
+        assertEquals(4000, sample(40, 10000));
+        assertEquals(7000, sample(70, 10000));
+        assertEquals(9900, sample(99, 10000));
+        assertEquals(10000, sample(100, 10000));
+    }
+
+    @Test
+    public void sampledEventsSpreadEvenly(){
+        RateLimitFilter.RateLimit limit = new RateLimitFilter.RateLimit("foo", Level.INFO, 0, 40);
+        //First event passes and every window of 5 events has 2 passing
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            sb.append(limit.tryAcquire() ? 'x' : '-');
+        }
+        assertEquals("x-x--x-x--", sb.toString());
+        assertEquals(6, limit.getSuppressedCount());
+    }
+
+    @Test
+    public void fractionalPercent(){
+        RateLimitFilter.RateLimit limit = new RateLimitFilter.RateLimit("foo", Level.INFO, 0, 0.5);
+        assertTrue(limit.tryAcquire());
+        assertEquals(5, sample(0.5, 1000));
+    }
+
+    private static int sample(double samplePercent, int events){
+        RateLimitFilter.RateLimit limit = new RateLimitFilter.RateLimit("foo", Level.INFO, 0, samplePercent);
+        int passed = 0;
+        for (int i = 0; i < events; i++) {
+            if (limit.tryAcquire()) {
+                passed++;
+            }
+        }
+        return passed;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestBackgroundCompressor {
+
+    @Test
+    public void compress() throws Exception{
+        byte[] data = "Test message\nTest message\n".getBytes("UTF-8");
+        File source = File.createTempFile("compress", ".log");
+        File target = new File(source.getPath() + BackgroundCompressor.GZ_SUFFIX);
+        OutputStream out = new FileOutputStream(source);
+        out.write(data);
+        out.close();
+
+        BackgroundCompressor compressor = new BackgroundCompressor(1, Thread.MIN_PRIORITY);
+        try {
+            compressor.compress(source, target);
+
+            assertFalse(source.exists());
+            assertFalse(new File(target.getPath() + ".tmp").exists());
+            assertArrayEquals(data, gunzip(target));
+            assertEquals(1, compressor.getCompressedCount());
+        } finally {
+            compressor.shutdown();
+            target.delete();
+        }
+    }
+
+    @Test
+    public void serialExecutor() throws Exception{
+        BackgroundCompressor compressor = new BackgroundCompressor(4, Thread.NORM_PRIORITY);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(100);
+        try {
+            Executor executor = compressor.newSerialExecutor();
+            for (int i = 0; i < 100; i++) {
+                final int id = i;
+                executor.execute(new Runnable() {
+                    public void run() {
+                        order.add(id);
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            compressor.shutdown();
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, order.get(i).intValue());
+        }
+    }
+
+    private static byte[] gunzip(File file) throws Exception{
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestCategoryIndex {
+
+    @Test
+    public void mostSpecificCategory(){
+        Map<String,String> values = new HashMap<String, String>();
+        values.put("com.foo", "foo");
+        values.put("com.foo.bar", "bar");
+        CategoryIndex<String> index = new CategoryIndex<String>(values, null);
+
+        assertEquals("foo", index.get("com.foo"));
+        assertEquals("foo", index.get("com.foo.Baz"));
+        assertEquals("bar", index.get("com.foo.bar"));
+        assertEquals("bar", index.get("com.foo.bar.Baz"));
+
+        //Prefix match must be on segment boundary
+        assertNull(index.get("com.foobar"));
+        assertNull(index.get("com"));
+
+        //Memoized lookups return same result
+        assertEquals("bar", index.get("com.foo.bar.Baz"));
+    }
+
+    @Test
+    public void rootAndDefault(){
+        Map<String,String> values = new HashMap<String, String>();
+        values.put("com.foo", "foo");
+        assertEquals("default", new CategoryIndex<String>(values, "default").get("org.bar"));
+
+        values.put(CategoryIndex.ROOT, "root");
+        CategoryIndex<String> index = new CategoryIndex<String>(values, "default");
+        assertEquals("root", index.get("org.bar"));
+        assertEquals("root", index.get(CategoryIndex.ROOT));
+        assertEquals("foo", index.get("com.foo.Bar"));
+    }
+
+    @Test
+    public void boundedCache(){
+        Map<String,String> values = new HashMap<String, String>();
+        values.put("com.foo", "foo");
+        CategoryIndex<String> index = new CategoryIndex<String>(values, null, 2);
+        for(int i = 0; i < 10; i++){
+            assertEquals("foo", index.get("com.foo.C" + i));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompositeFilter {
+    private final LoggerContext context = new LoggerContext();
+
+    @Test
+    public void firstDecisiveReplyWins(){
+        CompositeFilter composite = new CompositeFilter();
+        Filter<ILoggingEvent> neutral = new FixedFilter(FilterReply.NEUTRAL);
+        Filter<ILoggingEvent> deny = new FixedFilter(FilterReply.DENY);
+        Filter<ILoggingEvent> accept = new FixedFilter(FilterReply.ACCEPT);
+
+        assertEquals(FilterReply.NEUTRAL, composite.decide(null));
+
+        assertTrue(composite.add(neutral));
+        assertTrue(composite.add(deny));
+        assertTrue(composite.add(accept));
+        assertFalse(composite.add(deny));
+        assertEquals(FilterReply.DENY, composite.decide(null));
+
+        assertTrue(composite.remove(deny));
+        assertFalse(composite.remove(deny));
+        assertEquals(FilterReply.ACCEPT, composite.decide(null));
+        assertEquals(2, composite.getFilters().size());
+    }
+
+    @Test
+    public void singleCompositePerAppender(){
+        ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+        appender.setContext(context);
+
+        assertEquals(null, CompositeFilter.getAttached(appender));
+        CompositeFilter composite = CompositeFilter.attachTo(appender);
+        assertTrue(composite.isStarted());
+        assertSame(composite, CompositeFilter.attachTo(appender));
+        assertSame(composite, CompositeFilter.getAttached(appender));
+        assertEquals(1, appender.getCopyOfAttachedFiltersList().size());
+    }
+
+    private static class FixedFilter extends Filter<ILoggingEvent> {
+        final FilterReply reply;
+
+        FixedFilter(FilterReply reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public FilterReply decide(ILoggingEvent event) {
+            return reply;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.apache.sling.extensions.logback.internal.util.CompositeTurboFilter.ScopedFilter;
+import org.junit.Test;
+import org.slf4j.Marker;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestCompositeTurboFilter {
+    private final LoggerContext context = new LoggerContext();
+
+    @Test
+    public void scopedDispatch(){
+        CountingFilter global = new CountingFilter(FilterReply.NEUTRAL);
+        CountingFilter foo = new CountingFilter(FilterReply.DENY);
+        CountingFilter fooBarDebug = new CountingFilter(FilterReply.ACCEPT);
+
+        CompositeTurboFilter composite = new CompositeTurboFilter();
+        composite.setFilters(Arrays.asList(
+                new ScopedFilter(fooBarDebug, Arrays.asList(Level.DEBUG), Arrays.asList("foo.bar")),
+                new ScopedFilter(global, Collections.<Level>emptyList(), Collections.<String>emptyList()),
+                new ScopedFilter(foo, Collections.<Level>emptyList(), Arrays.asList("foo"))
+        ));
+
+        assertEquals(FilterReply.NEUTRAL, decide(composite, "other", Level.DEBUG));
+        assertEquals(1, global.calls);
+        assertEquals(0, foo.calls);
+
+        //foo.barbaz is not a descendant of foo.bar
+        assertEquals(FilterReply.DENY, decide(composite, "foo.barbaz", Level.DEBUG));
+        assertEquals(0, fooBarDebug.calls);
+        assertEquals(1, foo.calls);
+
+        assertEquals(FilterReply.ACCEPT, decide(composite, "foo.bar.Baz", Level.DEBUG));
+        assertEquals(1, fooBarDebug.calls);
+        assertEquals(2, global.calls);
+
+        //Level outside the scope of the first filter
+        assertEquals(FilterReply.DENY, decide(composite, "foo.bar.Baz", Level.INFO));
+        assertEquals(1, fooBarDebug.calls);
+        assertEquals(2, foo.calls);
+    }
+
+    @Test
+    public void rootScopeIsGlobal(){
+        CountingFilter root = new CountingFilter(FilterReply.DENY);
+        CompositeTurboFilter composite = new CompositeTurboFilter();
+        composite.setFilters(Arrays.asList(
+                new ScopedFilter(root, Collections.<Level>emptyList(), Arrays.asList("ROOT", "foo"))
+        ));
+
+        assertEquals(FilterReply.DENY, decide(composite, "any.Logger", Level.INFO));
+    }
+
+    private FilterReply decide(TurboFilter filter, String loggerName, Level level){
+        Logger logger = context.getLogger(loggerName);
+        return filter.decide(null, logger, level, "message", null, null);
+    }
+
+    private static class CountingFilter extends TurboFilter {
+        final FilterReply reply;
+        int calls;
+
+        CountingFilter(FilterReply reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+                                  Object[] params, Throwable t) {
+            calls++;
+            return reply;
+        }
+    }
+}
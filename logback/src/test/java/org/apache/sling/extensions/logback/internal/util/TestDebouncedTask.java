@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestDebouncedTask {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void shutdown(){
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void burstCollapsed() throws Exception{
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        DebouncedTask task = new DebouncedTask(executor, new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+                latch.countDown();
+            }
+        }, 200, 10000);
+
+        for(int i = 0; i < 10; i++){
+            task.request();
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        assertEquals(1, runs.get());
+        assertEquals(10, task.getRequestCount());
+        assertEquals(1, task.getRunCount());
+    }
+
+    @Test
+    public void maxDelayBoundsDeferral() throws Exception{
+        final CountDownLatch latch = new CountDownLatch(1);
+        DebouncedTask task = new DebouncedTask(executor, new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 100, 300);
+
+        //Keep requesting within the quiet period for longer than the max delay
+        long end = System.currentTimeMillis() + 2000;
+        while(latch.getCount() > 0 && System.currentTimeMillis() < end){
+            task.request();
+            Thread.sleep(20);
+        }
+        assertEquals(0, latch.getCount());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class TestEncodingBuffer {
+    private static final String[] CHARSETS = {
+            "UTF-8", "US-ASCII", "ISO-8859-1", "windows-1252", "Shift_JIS", "UTF-16"
+    };
+
+    @Test
+    public void sameAsStringGetBytes() throws Exception{
+        for (String name : CHARSETS) {
+            Charset charset = Charset.forName(name);
+            //Reused across texts like an encoder does across events
+            EncodingBuffer buffer = new EncodingBuffer(charset);
+            for (String text : samples()) {
+                assertEncoding(buffer, charset, text);
+            }
+        }
+    }
+
+    @Test
+    public void bufferGrowthBoundary() throws Exception{
+        for (String name : CHARSETS) {
+            Charset charset = Charset.forName(name);
+            EncodingBuffer buffer = new EncodingBuffer(charset);
+            //Multi byte and supplementary characters placed right at the initial
+            //buffer size of 256 chars and at the retained size limit of 16k chars
+            for (int size : new int[]{254, 255, 256, 257, 16 * 1024 - 1, 16 * 1024, 16 * 1024 + 1}) {
+                assertEncoding(buffer, charset, repeat('a', size - 1) + "\u00e9");
+                assertEncoding(buffer, charset, repeat('a', size - 1) + "\u20ac");
+                assertEncoding(buffer, charset, repeat('a', size - 1) + "\ud83d\ude00");
+                assertEncoding(buffer, charset, repeat('\u4e2d', size));
+                buffer.trim();
+                assertEncoding(buffer, charset, "short after " + size);
+            }
+        }
+    }
+
+    private static List<String> samples() {
+        List<String> samples = new ArrayList<String>();
+        samples.add("");
+        samples.add("plain ascii message");
+        samples.add("latin1 caf\u00e9 \u00ff");
+        samples.add("euro \u20ac and cjk \u4e2d\u6587");
+        //Surrogate pair for U+1F600
+        samples.add("emoji \ud83d\ude00 end");
+        samples.add("\ud83d\ude00");
+        //Lone surrogates
+        samples.add("high \ud83d alone");
+        samples.add("low \ude00 alone");
+        samples.add("high at end \ud83d");
+        samples.add("\ude00\ud83d reversed");
+        samples.add("two highs \ud83d\ud83d\ude00");
+        //Unmappable in Latin-1 and ASCII
+        samples.add("\u0100\u0101 \u3042 \ufffd");
+        samples.add("control \u0000 \u007f \u0080 \u009f");
+        samples.add("max bmp \uffff");
+        return samples;
+    }
+
+    private static void assertEncoding(EncodingBuffer buffer, Charset charset, String text) throws Exception{
+        buffer.getText().append(text);
+        buffer.encode();
+        byte[] actual = Arrays.copyOf(buffer.getBytes(), buffer.getLength());
+        assertArrayEquals(charset.name() + " [" + escape(text) + "]", text.getBytes(charset), actual);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static String escape(String text) {
+        if (text.length() > 40) {
+            text = text.substring(text.length() - 40);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c < 0x20 || c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestFileTailer {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void lines() throws Exception{
+        File file = createFile(lines(1, 5000), 0);
+        try {
+            assertEquals(lines(4991, 5000), tail(file, 10, 0));
+            assertEquals(lines(5000, 5000), tail(file, 1, 0));
+            assertEquals(lines(1, 5000), tail(file, 10000, 0));
+            assertEquals(lines(1, 5000), tail(file, 0, 0));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void lastLineWithoutSeparator() throws Exception{
+        File file = createFile(lines(1, 3) + "partial", 0);
+        try {
+            assertEquals("line 3\npartial", tail(file, 2, 0));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void bytes() throws Exception{
+        File file = createFile(lines(1, 100), 0);
+        try {
+            //"line 99\n" and "line 100\n" are 17 bytes. A partial line 99 is dropped
+            assertEquals(lines(100, 100), tail(file, 0, 16));
+            assertEquals(lines(99, 100), tail(file, 0, 17));
+            assertEquals(lines(100, 100), tail(file, 1, 17));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void padding() throws Exception{
+        File file = createFile(lines(1, 20), 20000);
+        try {
+            assertEquals(lines(18, 20), tail(file, 3, 0));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String tail(File file, int lines, long bytes) throws IOException{
+        StringWriter sw = new StringWriter();
+        FileTailer.tail(file, file.length(), lines, bytes, UTF8, sw);
+        return sw.toString();
+    }
+
+    private static String lines(int from, int to){
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i <= to; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static File createFile(String content, int padding) throws IOException{
+        File file = File.createTempFile("tail", ".log");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes(UTF8));
+        out.write(new byte[padding]);
+        out.close();
+        return file;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void buckets(){
+        assertEquals(0, LatencyHistogram.bucket(0));
+        assertEquals(1, LatencyHistogram.bucket(1));
+        assertEquals(2, LatencyHistogram.bucket(2));
+        assertEquals(2, LatencyHistogram.bucket(3));
+        assertEquals(11, LatencyHistogram.bucket(1500));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentile(){
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentile(99));
+
+        for(int i = 0; i < 99; i++){
+            h.record(1000);
+        }
+        h.record(1000000);
+
+        assertEquals(100, h.getCount());
+        assertEquals(1024, h.getPercentile(50));
+        assertEquals(1024, h.getPercentile(99));
+        assertEquals(1L << 20, h.getPercentile(100));
+        assertEquals((99 * 1000 + 1000000) / 100, h.getMean());
+    }
+
+    @Test
+    public void concurrentUpdates() throws Exception{
+        final StripedCounter counter = new StripedCounter();
+        final LatencyHistogram h = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int t = 0; t < 4; t++){
+            threads.add(new Thread(){
+                @Override
+                public void run() {
+                    for(int i = 0; i < 10000; i++){
+                        counter.add(2);
+                        h.record(i);
+                    }
+                }
+            });
+        }
+        for(Thread t : threads){
+            t.start();
+        }
+        for(Thread t : threads){
+            t.join();
+        }
+
+        assertEquals(80000, counter.sum());
+        assertEquals(40000, h.getCount());
+    }
+}
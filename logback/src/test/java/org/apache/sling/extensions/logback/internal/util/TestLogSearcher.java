@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestLogSearcher {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private LogSearcher searcher;
+
+    private File rolled;
+
+    private File active;
+
+    @Before
+    public void setUp() throws IOException{
+        searcher = new LogSearcher(2);
+        rolled = File.createTempFile("search", ".log.0.gz");
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(rolled));
+        out.write(lines(1, 100, "old").getBytes(UTF8));
+        out.close();
+
+        active = File.createTempFile("search", ".log");
+        out = new FileOutputStream(active);
+        out.write(lines(1, 20, "new").getBytes(UTF8));
+        //Padding of memory mapped files
+        out.write(new byte[1000]);
+        out.close();
+    }
+
+    @After
+    public void tearDown(){
+        searcher.shutdown();
+        rolled.delete();
+        active.delete();
+    }
+
+    @Test
+    public void matchesInFileOrder() throws Exception{
+        StringWriter sw = new StringWriter();
+        LogSearcher.Result result = search(Pattern.quote("line 1"), 100, sw);
+
+        //line 1, 10-19 and 100 in the rolled file followed by line 1, 10-19 of the active file
+        assertEquals(12 + 11, result.getMatchCount());
+        assertEquals(2, result.getSearchedFiles());
+        assertFalse(result.isTruncated());
+        assertFalse(result.isTimedOut());
+
+        String[] hits = sw.toString().split("\n");
+        assertEquals(rolled.getName() + ":1: old line 1", hits[0]);
+        assertEquals(rolled.getName() + ":100: old line 100", hits[11]);
+        assertEquals(active.getName() + ":19: new line 19", hits[22]);
+    }
+
+    @Test
+    public void anchoredPattern() throws Exception{
+        StringWriter sw = new StringWriter();
+        LogSearcher.Result result = search("^new line 2$", 100, sw);
+        assertEquals(1, result.getMatchCount());
+        assertEquals(active.getName() + ":2: new line 2\n", sw.toString());
+    }
+
+    @Test
+    public void maxResults() throws Exception{
+        StringWriter sw = new StringWriter();
+        LogSearcher.Result result = search("line", 5, sw);
+        assertEquals(5, result.getMatchCount());
+        assertTrue(result.isTruncated());
+        assertEquals(rolled.getName() + ":5: old line 5", sw.toString().split("\n")[4]);
+    }
+
+    @Test
+    public void catastrophicPatternAborted() throws Exception{
+        File slow = File.createTempFile("search", ".log");
+        try {
+            OutputStream out = new FileOutputStream(slow);
+            for (int i = 0; i < 100; i++) {
+                out.write("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\n".getBytes(UTF8));
+            }
+            out.close();
+
+            LogSearcher single = new LogSearcher(1);
+            try {
+                StringWriter sw = new StringWriter();
+                LogSearcher.Result result = single.search(
+                        Arrays.asList(new LogSearcher.Source(slow, Long.MAX_VALUE)), UTF8,
+                        Pattern.compile("(.*a){20}b"), 10, 200, sw);
+                assertTrue(result.isTimedOut());
+
+                //The search thread is free again for the next search
+                long start = System.currentTimeMillis();
+                result = single.search(Arrays.asList(new LogSearcher.Source(active, Long.MAX_VALUE)), UTF8,
+                        Pattern.compile("new line 2$", Pattern.MULTILINE), 10, 5000, sw);
+                assertFalse(result.isTimedOut());
+                assertEquals(1, result.getMatchCount());
+                assertTrue(System.currentTimeMillis() - start < 5000);
+            } finally {
+                single.shutdown();
+            }
+        } finally {
+            slow.delete();
+        }
+    }
+
+    private LogSearcher.Result search(String regex, int maxResults, StringWriter sw) throws IOException{
+        return searcher.search(Arrays.asList(new LogSearcher.Source(rolled, Long.MAX_VALUE),
+                new LogSearcher.Source(active, Long.MAX_VALUE)), UTF8,
+                Pattern.compile(regex, Pattern.MULTILINE), maxResults, 10000, sw);
+    }
+
+    private static String lines(int from, int to, String prefix){
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i <= to; i++) {
+            sb.append(prefix).append(" line ").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestLoggerRates {
+
+    @Test
+    public void topByRate(){
+        LoggerRates rates = new LoggerRates(100);
+        long now = System.nanoTime();
+        rates.tick(now);
+
+        for(int i = 0; i < 50; i++){
+            rates.mark("a", 4);
+        }
+        for(int i = 0; i < 10; i++){
+            rates.mark("b", 2);
+        }
+        rates.mark("c", 0);
+
+        now += TimeUnit.SECONDS.toNanos(10);
+        rates.tick(now);
+
+        List<LoggerRates.Entry> top = rates.getTop(2, LoggerRates.Window.ONE_MINUTE);
+        assertEquals(2, top.size());
+        assertEquals("a", top.get(0).getName());
+        assertEquals("b", top.get(1).getName());
+        assertEquals(5.0, top.get(0).getRate(LoggerRates.Window.ONE_MINUTE), 0.001);
+        assertEquals(50, top.get(0).getCount(4));
+        assertEquals(0, top.get(0).getCount(2));
+
+        //Rates decay once the logger turns quiet. The short window decays faster
+        now += TimeUnit.SECONDS.toNanos(60);
+        rates.tick(now);
+        LoggerRates.Entry a = top.get(0);
+        assertTrue(a.getRate(LoggerRates.Window.ONE_MINUTE) < a.getRate(LoggerRates.Window.FIFTEEN_MINUTES));
+        assertTrue(a.getRate(LoggerRates.Window.ONE_MINUTE) < 5.0);
+    }
+
+    @Test
+    public void boundedSize(){
+        LoggerRates rates = new LoggerRates(20);
+        long now = System.nanoTime();
+        rates.tick(now);
+        for(int i = 0; i < 100; i++){
+            rates.mark("noisy", 3);
+        }
+        now += TimeUnit.SECONDS.toNanos(5);
+        rates.tick(now);
+
+        for(int i = 0; i < 1000; i++){
+            rates.mark("logger" + i, 2);
+        }
+
+        assertTrue(rates.size() <= 20);
+        assertEquals("noisy", rates.getTop(1, LoggerRates.Window.FIFTEEN_MINUTES).get(0).getName());
+    }
+
+    @Test
+    public void newFloodingLoggerNotEvicted(){
+        LoggerRates rates = new LoggerRates(10);
+        long now = System.nanoTime();
+        rates.tick(now);
+        for(int i = 0; i < 10; i++){
+            for(int j = 0; j < 1000; j++){
+                rates.mark("old" + i, 2);
+            }
+        }
+        now += TimeUnit.SECONDS.toNanos(5);
+        rates.tick(now);
+
+        //A logger starts flooding while loggers with dynamic names keep coming
+        for(int i = 0; i < 5000; i++){
+            rates.mark("flooder", 4);
+            rates.mark("churn" + i, 2);
+        }
+        now += TimeUnit.SECONDS.toNanos(5);
+        rates.tick(now);
+
+        assertEquals(10, rates.size());
+        LoggerRates.Entry top = rates.getTop(1, LoggerRates.Window.ONE_MINUTE).get(0);
+        assertEquals("flooder", top.getName());
+        assertEquals(5000, top.getCount(4));
+    }
+}
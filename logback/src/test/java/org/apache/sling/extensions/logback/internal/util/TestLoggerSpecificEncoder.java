@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.CoreConstants;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLoggerSpecificEncoder {
+    private final LoggerContext context = new LoggerContext();
+
+    private final Logger logger = context.getLogger("test");
+
+    private final FlushCountingStream stream = new FlushCountingStream();
+
+    private LoggerSpecificEncoder encoder;
+
+    @Before
+    public void createEncoder(){
+        AppendablePatternLayout layout = new AppendablePatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg%n");
+        layout.start();
+
+        encoder = new LoggerSpecificEncoder(layout);
+        encoder.setContext(context);
+        encoder.start();
+    }
+
+    @Test
+    public void immediateFlushByDefault() throws IOException{
+        encoder.init(stream);
+        encoder.doEncode(event(Level.INFO, "a"));
+        encoder.doEncode(event(Level.INFO, "b"));
+
+        assertEquals(2, stream.flushes);
+        assertEquals(2, encoder.getMetrics().getFlushCount());
+    }
+
+    @Test
+    public void flushAfterBytes() throws IOException{
+        final int lineLength = 3 + CoreConstants.LINE_SEPARATOR.length();
+        encoder.setFlushPolicy(2 * lineLength + 1, false);
+        encoder.init(stream);
+
+        encoder.doEncode(event(Level.INFO, "abc"));
+        encoder.doEncode(event(Level.INFO, "abc"));
+        assertEquals(0, stream.flushes);
+        assertEquals(2 * lineLength, stream.size());
+
+        encoder.doEncode(event(Level.INFO, "abc"));
+        assertEquals(1, stream.flushes);
+
+        //Pending bytes start again from zero after the flush
+        encoder.doEncode(event(Level.INFO, "abc"));
+        encoder.doEncode(event(Level.INFO, "abc"));
+        assertEquals(1, stream.flushes);
+        encoder.doEncode(event(Level.INFO, "abc"));
+        assertEquals(2, stream.flushes);
+    }
+
+    @Test
+    public void flushOnError() throws IOException{
+        encoder.setFlushPolicy(0, true);
+        encoder.init(stream);
+
+        encoder.doEncode(event(Level.WARN, "abc"));
+        assertEquals(0, stream.flushes);
+        encoder.doEncode(event(Level.ERROR, "abc"));
+        assertEquals(1, stream.flushes);
+    }
+
+    @Test
+    public void noFlushOnErrorIfDisabled() throws IOException{
+        encoder.setFlushPolicy(0, false);
+        encoder.init(stream);
+
+        encoder.doEncode(event(Level.ERROR, "abc"));
+        encoder.doEncode(event(Level.ERROR, "abc"));
+        assertEquals(0, stream.flushes);
+    }
+
+    @Test
+    public void explicitFlushOnlyWithPendingData() throws IOException{
+        encoder.setFlushPolicy(0, false);
+        encoder.init(stream);
+
+        encoder.flush();
+        assertEquals(0, stream.flushes);
+
+        encoder.doEncode(event(Level.INFO, "abc"));
+        encoder.flush();
+        assertEquals(1, stream.flushes);
+        assertEquals(1, encoder.getMetrics().getFlushCount());
+
+        encoder.flush();
+        assertEquals(1, stream.flushes);
+    }
+
+    private LoggingEvent event(Level level, String msg){
+        return new LoggingEvent(Logger.class.getName(), logger, level, msg, null, null);
+    }
+
+    private static class FlushCountingStream extends ByteArrayOutputStream {
+        int flushes;
+
+        @Override
+        public void flush() throws IOException {
+            flushes++;
+        }
+    }
+}
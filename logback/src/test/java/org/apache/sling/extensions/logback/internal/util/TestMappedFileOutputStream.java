@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMappedFileOutputStream {
+    private File file;
+
+    @Before
+    public void createFile() throws IOException{
+        file = File.createTempFile("mapped", ".log");
+    }
+
+    @After
+    public void deleteFile(){
+        file.delete();
+    }
+
+    @Test
+    public void growAcrossChunks() throws Exception{
+        MappedFileOutputStream out = new MappedFileOutputStream(file, false, 16);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 20; i++) {
+            //Writes of varying size straddling the chunk boundaries
+            byte[] data = bytes(i % 7 + 1, i);
+            out.write(data);
+            out.write('\n');
+            expected.write(data);
+            expected.write('\n');
+
+            assertEquals(expected.size(), out.getPosition());
+            //While open the file extends to the end of the mapped chunk
+            assertTrue(file.length() >= out.getPosition());
+            assertEquals(0, file.length() % 16);
+        }
+        out.close();
+
+        assertEquals(expected.size(), file.length());
+        assertArrayEquals(expected.toByteArray(), read(file));
+    }
+
+    @Test
+    public void positionExcludesPadding() throws Exception{
+        MappedFileOutputStream out = new MappedFileOutputStream(file, false, 1024);
+        out.write(bytes(10, 1));
+        assertEquals(10, out.getPosition());
+        assertEquals(1024, file.length());
+        out.close();
+        assertEquals(10, file.length());
+    }
+
+    @Test
+    public void appendAfterReopen() throws Exception{
+        MappedFileOutputStream out = new MappedFileOutputStream(file, false, 64);
+        out.write("hello".getBytes("UTF-8"));
+        out.close();
+
+        out = new MappedFileOutputStream(file, true, 64);
+        assertEquals(5, out.getPosition());
+        out.write(" world".getBytes("UTF-8"));
+        out.close();
+        assertEquals("hello world", new String(read(file), "UTF-8"));
+    }
+
+    @Test
+    public void appendSkipsPaddingLeftByCrash() throws Exception{
+        final int chunkSize = 32 * 1024;
+        byte[] data = bytes(100, 3);
+        MappedFileOutputStream out = new MappedFileOutputStream(file, false, chunkSize);
+        out.write(data);
+        out.close();
+
+        //Padding which spans several scan blocks as left if the process died
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(data.length + 20000);
+        raf.close();
+
+        out = new MappedFileOutputStream(file, true, chunkSize);
+        assertEquals(data.length, out.getPosition());
+        out.write('x');
+        out.close();
+
+        byte[] content = read(file);
+        assertEquals(data.length + 1, content.length);
+        assertEquals('x', content[data.length]);
+    }
+
+    @Test
+    public void truncateWithoutAppend() throws Exception{
+        MappedFileOutputStream out = new MappedFileOutputStream(file, false, 64);
+        out.write(bytes(50, 1));
+        out.close();
+
+        out = new MappedFileOutputStream(file, false, 64);
+        assertEquals(0, out.getPosition());
+        out.write('x');
+        out.close();
+        assertEquals(1, file.length());
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterClose() throws Exception{
+        MappedFileOutputStream out = new MappedFileOutputStream(file, false, 64);
+        out.close();
+        out.write('x');
+    }
+
+    /**
+     * Returns non zero bytes so that the data is not mistaken for padding
+     */
+    private static byte[] bytes(int length, int seed) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) ('a' + (seed + i) % 26);
+        }
+        return b;
+    }
+
+    private static byte[] read(File file) throws IOException{
+        InputStream in = new FileInputStream(file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRateLimiter {
+
+    @Test
+    public void burstAndRefill(){
+        long now = System.nanoTime();
+        RateLimiter limiter = new RateLimiter(10, 10, now);
+
+        assertEquals(10, acquire(limiter, now, 100));
+
+        //One permit per 100 ms
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertEquals(1, acquire(limiter, now, 100));
+
+        //Full burst available again after a quiet period
+        now += TimeUnit.SECONDS.toNanos(10);
+        assertEquals(10, acquire(limiter, now, 100));
+    }
+
+    @Test
+    public void slowRate(){
+        long now = 0;
+        RateLimiter limiter = new RateLimiter(0.5, 1, now);
+        assertTrue(limiter.tryAcquire(now));
+        assertFalse(limiter.tryAcquire(now + TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(limiter.tryAcquire(now + TimeUnit.SECONDS.toNanos(2)));
+    }
+
+    private static int acquire(RateLimiter limiter, long now, int attempts){
+        int acquired = 0;
+        for(int i = 0; i < attempts; i++){
+            if(limiter.tryAcquire(now)){
+                acquired++;
+            }
+        }
+        return acquired;
+    }
+}
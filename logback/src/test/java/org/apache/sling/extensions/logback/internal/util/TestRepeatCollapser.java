@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRepeatCollapser {
+
+    @Test
+    public void collapseRepeats(){
+        RepeatCollapser rc = new RepeatCollapser(10000);
+        assertFalse(rc.isRepeat(event("a", Level.INFO, "hello {}", null, 0)));
+        assertEquals(0, rc.remember(event("a", Level.INFO, "hello {}", null, 0)));
+
+        assertTrue(rc.isRepeat(event("a", Level.INFO, "hello {}", null, 1)));
+        assertTrue(rc.isRepeat(event("a", Level.INFO, "hello {}", null, 2)));
+
+        assertFalse(rc.isRepeat(event("b", Level.INFO, "hello {}", null, 3)));
+        assertFalse(rc.isRepeat(event("a", Level.WARN, "hello {}", null, 3)));
+        assertFalse(rc.isRepeat(event("a", Level.INFO, "bye {}", null, 3)));
+        assertFalse(rc.isRepeat(event("a", Level.INFO, "hello {}", new IllegalStateException(), 3)));
+
+        assertEquals(2, rc.remember(event("a", Level.INFO, "hello {}", new IllegalStateException(), 3)));
+        assertTrue(rc.isRepeat(event("a", Level.INFO, "hello {}", new IllegalStateException(), 4)));
+        assertFalse(rc.isRepeat(event("a", Level.INFO, "hello {}", new IllegalArgumentException(), 5)));
+        assertEquals(1, rc.take());
+        assertEquals(0, rc.take());
+    }
+
+    @Test
+    public void periodicSummary(){
+        RepeatCollapser rc = new RepeatCollapser(1000);
+        rc.remember(event("a", Level.ERROR, "failed", null, 0));
+
+        assertTrue(rc.isRepeat(event("a", Level.ERROR, "failed", null, 100)));
+        assertEquals(0, rc.takeIfDue(500));
+        assertTrue(rc.isRepeat(event("a", Level.ERROR, "failed", null, 900)));
+        assertEquals(2, rc.takeIfDue(1100));
+
+        //Interval starts again with the next repeat
+        assertTrue(rc.isRepeat(event("a", Level.ERROR, "failed", null, 1500)));
+        assertEquals(0, rc.takeIfDue(2000));
+        assertEquals(1, rc.takeIfDue(2500));
+    }
+
+    @Test
+    public void clear(){
+        RepeatCollapser rc = new RepeatCollapser(1000);
+        rc.remember(event("a", Level.INFO, "hello", null, 0));
+        assertTrue(rc.isRepeat(event("a", Level.INFO, "hello", null, 0)));
+
+        rc.clear();
+        assertEquals(0, rc.take());
+        assertFalse(rc.isRepeat(event("a", Level.INFO, "hello", null, 0)));
+    }
+
+    private static LoggingEvent event(String logger, Level level, String msg, Throwable t, long time){
+        LoggingEvent event = new LoggingEvent();
+        event.setLoggerName(logger);
+        event.setLevel(level);
+        event.setMessage(msg);
+        event.setTimeStamp(time);
+        if(t != null){
+            event.setThrowableProxy(new ThrowableProxy(t));
+        }
+        return event;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestRingBuffer {
+
+    @Test
+    public void capacityRoundedToPowerOfTwo(){
+        assertEquals(1, new RingBuffer<String>(1).capacity());
+        assertEquals(128, new RingBuffer<String>(100).capacity());
+        assertEquals(1024, new RingBuffer<String>(1024).capacity());
+    }
+
+    @Test
+    public void fifoAndFull(){
+        RingBuffer<Integer> rb = new RingBuffer<Integer>(4);
+        assertTrue(rb.isEmpty());
+        assertNull(rb.poll());
+
+        for(int i = 0; i < 4; i++){
+            assertTrue(rb.offer(i));
+        }
+        assertFalse(rb.offer(4));
+        assertEquals(4, rb.size());
+
+        //Wrap around multiple times
+        for(int i = 0; i < 10; i++){
+            assertEquals(Integer.valueOf(i), rb.poll());
+            assertTrue(rb.offer(i + 4));
+        }
+        assertEquals(4, rb.size());
+    }
+}
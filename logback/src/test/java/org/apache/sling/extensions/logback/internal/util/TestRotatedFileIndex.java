@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRotatedFileIndex {
+    private File dir;
+
+    @Before
+    public void createDir() throws IOException{
+        dir = File.createTempFile("rotated", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void deleteDir(){
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void scan() throws Exception{
+        create("error.log", 10, 5000);
+        create("error.log2", 100, 1000);
+        create("error.log1.gz", 50, 2000);
+        create("error.log1.gz.tmp", 50, 3000);
+        create("error.log.1234.pending", 50, 3000);
+        create("request.log1", 50, 3000);
+
+        RotatedFileIndex index = new RotatedFileIndex(new File(dir, "error.log"));
+        List<RotatedFileIndex.Segment> segments = index.getSegments();
+        assertEquals(2, segments.size());
+        assertEquals("error.log2", segments.get(0).getFile().getName());
+        assertEquals("error.log1.gz", segments.get(1).getFile().getName());
+        assertTrue(segments.get(1).isCompressed());
+        assertEquals(segments.get(0).getLastTimestamp(), segments.get(1).getFirstTimestamp());
+        assertEquals(150, index.getTotalSize());
+    }
+
+    @Test
+    public void rolledAndRenamed() throws Exception{
+        RotatedFileIndex index = new RotatedFileIndex(new File(dir, "error.log"));
+        assertTrue(index.getSegments().isEmpty());
+
+        File rolled = create("error.log1", 100, 1000);
+        index.rolled(rolled, 1000);
+        File shifted = new File(dir, "error.log2");
+        assertTrue(rolled.renameTo(shifted));
+        index.renamed(rolled, shifted);
+        index.rolled(create("error.log1", 20, 2000), 2000);
+
+        List<RotatedFileIndex.Segment> segments = index.getSegments();
+        assertEquals(2, segments.size());
+        assertEquals(shifted.getAbsoluteFile(), segments.get(0).getFile());
+        assertEquals(1000, segments.get(0).getLastTimestamp());
+        assertEquals(1000, segments.get(1).getFirstTimestamp());
+        assertEquals(2000, segments.get(1).getLastTimestamp());
+        assertEquals(120, index.getTotalSize());
+
+        index.removed(shifted);
+        assertEquals(1, index.getSegments().size());
+    }
+
+    @Test
+    public void maxTotalSize() throws Exception{
+        RotatedFileIndex index = new RotatedFileIndex(new File(dir, "error.log"));
+        index.setMaxTotalSize(250);
+        File f1 = create("error.log.1", 100, 1000);
+        index.rolled(f1, 1000);
+        File f2 = create("error.log.2", 100, 2000);
+        index.rolled(f2, 2000);
+        File f3 = create("error.log.3", 100, 3000);
+        index.rolled(f3, 3000);
+
+        assertFalse(f1.exists());
+        assertTrue(f2.exists());
+        assertEquals(200, index.getTotalSize());
+
+        //The newest file is kept even if it exceeds the limit
+        index.setMaxTotalSize(50);
+        index.rolled(create("error.log.4", 100, 4000), 4000);
+        assertEquals(1, index.getSegments().size());
+    }
+
+    @Test
+    public void retentionManager() throws Exception{
+        RetentionManager rm = new RetentionManager(250);
+        RotatedFileIndex error = new RotatedFileIndex(new File(dir, "error.log"));
+        RotatedFileIndex request = new RotatedFileIndex(new File(dir, "request.log"));
+        rm.register(error);
+        rm.register(request);
+
+        File e1 = create("error.log.1", 100, 1000);
+        error.rolled(e1, 1000);
+        File r1 = create("request.log.1", 100, 1500);
+        request.rolled(r1, 1500);
+        File e2 = create("error.log.2", 100, 2000);
+        error.rolled(e2, 2000);
+
+        assertFalse(e1.exists());
+        assertTrue(r1.exists());
+        assertEquals(200, rm.getTotalSize());
+    }
+
+    @Test
+    public void scanIgnoresFilesOfOtherWriters() throws Exception{
+        create("error.log1", 100, 1000);
+        create("error.log.json", 10, 2000);
+        create("error.log.json1", 10, 2000);
+        create("error.log-audit.log", 10, 2000);
+
+        RotatedFileIndex index = new RotatedFileIndex(new File(dir, "error.log"));
+        assertEquals(1, index.getSegments().size());
+        assertEquals("error.log1", index.getSegments().get(0).getFile().getName());
+
+        create("error.log.3", 10, 3000);
+        create("error.log.4.gz", 10, 4000);
+        index.setFileNamePattern(new File(dir, "error.log").getPath() + ".%i");
+        assertEquals(2, index.getSegments().size());
+        assertEquals("error.log.4.gz", index.getSegments().get(1).getFile().getName());
+    }
+
+    @Test
+    public void timeBasedNames() throws Exception{
+        Pattern p = RotatedFileIndex.compileNamePattern("logs/error.log.%d{yyyy-MM-dd}");
+        assertTrue(p.matcher("error.log.2013-05-20").matches());
+        assertTrue(p.matcher("error.log.2013-05-20.gz").matches());
+        assertFalse(p.matcher("error.log.json").matches());
+        assertFalse(p.matcher("error.log.2013-05-20.tmp").matches());
+
+        p = RotatedFileIndex.compileNamePattern("error.log%d{'.'yyyy-MMM-dd'T'HH}");
+        assertTrue(p.matcher("error.log.2013-May-20T10").matches());
+        assertFalse(p.matcher("error.log-audit.log").matches());
+    }
+
+    @Test
+    public void reRegisteredIndexReplacesOld() throws Exception{
+        RetentionManager rm = new RetentionManager(250);
+        RotatedFileIndex old = new RotatedFileIndex(new File(dir, "error.log"));
+        rm.register(old);
+        File e1 = create("error.log2", 100, 1000);
+        File e2 = create("error.log1", 100, 2000);
+        assertEquals(200, rm.getTotalSize());
+
+        //Writer recreated for the same file upon a reset
+        RotatedFileIndex current = new RotatedFileIndex(new File(dir, "error.log"));
+        rm.register(current);
+        assertEquals(200, rm.getTotalSize());
+        rm.enforce();
+        assertTrue(e1.exists());
+        assertTrue(e2.exists());
+
+        //The replaced index does not trigger a global cleanup anymore
+        File shifted = new File(dir, "error.log3");
+        assertTrue(e1.renameTo(shifted));
+        old.renamed(e1, shifted);
+        old.rolled(create("error.log1", 10, 3000), 3000);
+        assertTrue(shifted.exists());
+    }
+
+    private File create(String name, int size, long lastModified) throws IOException{
+        File f = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(new byte[size]);
+        out.close();
+        f.setLastModified(lastModified);
+        return f;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestSlingAsyncAppender {
+    private LoggerContext context;
+
+    private Logger logger;
+
+    private RecordingAppender delegate;
+
+    @Before
+    public void setUp(){
+        context = new LoggerContext();
+        logger = context.getLogger("test");
+        delegate = new RecordingAppender();
+        delegate.setName("test");
+        delegate.setContext(context);
+        delegate.start();
+    }
+
+    @After
+    public void tearDown(){
+        delegate.release.countDown();
+    }
+
+    @Test
+    public void drainOnStop() throws Exception{
+        SlingAsyncAppender appender = createAppender(256, SlingAsyncAppender.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 100; i++) {
+            appender.doAppend(event(Level.INFO, "message " + i));
+        }
+        appender.stop();
+
+        assertEquals(100, delegate.events.size());
+        assertEquals("message 99", delegate.events.get(99).getFormattedMessage());
+        assertFalse(delegate.isStarted());
+        //Closed by the worker and not by the thread calling stop
+        assertNotSame(Thread.currentThread(), delegate.stoppedBy);
+    }
+
+    @Test
+    public void delegateNotStoppedWhileWriting() throws Exception{
+        SlingAsyncAppender appender = createAppender(16, SlingAsyncAppender.OverflowPolicy.BLOCK);
+        delegate.block();
+        appender.doAppend(event(Level.INFO, "blocked"));
+        appender.doAppend(event(Level.INFO, "queued"));
+        assertTrue(delegate.appending.await(5, TimeUnit.SECONDS));
+
+        //Returns after the max flush time while the worker is still writing
+        appender.stop();
+        assertTrue(delegate.isStarted());
+
+        delegate.release.countDown();
+        assertTrue(delegate.stopped.await(5, TimeUnit.SECONDS));
+        assertEquals(2, delegate.events.size());
+    }
+
+    @Test
+    public void dropAll() throws Exception{
+        SlingAsyncAppender appender = createAppender(4, SlingAsyncAppender.OverflowPolicy.DROP_ALL);
+        delegate.block();
+        appender.doAppend(event(Level.INFO, "blocked"));
+        assertTrue(delegate.appending.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 4; i++) {
+            appender.doAppend(event(Level.ERROR, "queued"));
+        }
+        appender.doAppend(event(Level.ERROR, "dropped"));
+        appender.doAppend(event(Level.DEBUG, "dropped"));
+
+        assertEquals(1, appender.getDroppedCount());
+        assertEquals(1, appender.getDroppedDebugCount());
+
+        delegate.release.countDown();
+        appender.stop();
+        assertEquals(5, delegate.events.size());
+    }
+
+    @Test
+    public void dropDebug() throws Exception{
+        SlingAsyncAppender appender = createAppender(8, SlingAsyncAppender.OverflowPolicy.DROP_DEBUG);
+        delegate.block();
+        appender.doAppend(event(Level.INFO, "blocked"));
+        assertTrue(delegate.appending.await(5, TimeUnit.SECONDS));
+
+        //80% of 8
+        for (int i = 0; i < 6; i++) {
+            appender.doAppend(event(Level.INFO, "queued"));
+        }
+        appender.doAppend(event(Level.DEBUG, "dropped"));
+        appender.doAppend(event(Level.TRACE, "dropped"));
+        appender.doAppend(event(Level.WARN, "queued"));
+
+        assertEquals(0, appender.getDroppedCount());
+        assertEquals(2, appender.getDroppedDebugCount());
+        assertEquals(7, appender.getPendingCount());
+
+        delegate.release.countDown();
+        appender.stop();
+        assertEquals(8, delegate.events.size());
+    }
+
+    @Test
+    public void blockWaitsForSpace() throws Exception{
+        final SlingAsyncAppender appender = createAppender(2, SlingAsyncAppender.OverflowPolicy.BLOCK);
+        delegate.block();
+        appender.doAppend(event(Level.INFO, "blocked"));
+        assertTrue(delegate.appending.await(5, TimeUnit.SECONDS));
+        appender.doAppend(event(Level.DEBUG, "queued"));
+        appender.doAppend(event(Level.DEBUG, "queued"));
+
+        final CountDownLatch appended = new CountDownLatch(1);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                appender.doAppend(event(Level.DEBUG, "waiting"));
+                appended.countDown();
+            }
+        };
+        t.start();
+        assertFalse(appended.await(200, TimeUnit.MILLISECONDS));
+
+        delegate.release.countDown();
+        assertTrue(appended.await(5, TimeUnit.SECONDS));
+        appender.stop();
+        assertEquals(4, delegate.events.size());
+        assertEquals(0, appender.getDroppedDebugCount());
+    }
+
+    @Test
+    public void preparedForDeferredProcessing() throws Exception{
+        SlingAsyncAppender appender = createAppender(16, SlingAsyncAppender.OverflowPolicy.BLOCK);
+        MDC.put("user", "admin");
+        try {
+            appender.doAppend(event(Level.INFO, "hello {}", "world"));
+        } finally {
+            MDC.remove("user");
+        }
+        appender.stop();
+
+        ILoggingEvent e = delegate.events.get(0);
+        assertEquals(Thread.currentThread().getName(), e.getThreadName());
+        assertEquals("admin", e.getMDCPropertyMap().get("user"));
+        assertEquals("hello world", e.getFormattedMessage());
+    }
+
+    private SlingAsyncAppender createAppender(int queueSize, SlingAsyncAppender.OverflowPolicy policy){
+        SlingAsyncAppender appender = new SlingAsyncAppender(delegate, queueSize, policy);
+        appender.setContext(context);
+        appender.start();
+        return appender;
+    }
+
+    private ILoggingEvent event(Level level, String msg, Object... args){
+        return new LoggingEvent(Logger.class.getName(), logger, level, msg, null, args);
+    }
+
+    private static class RecordingAppender extends AppenderBase<ILoggingEvent> {
+        final List<ILoggingEvent> events = new CopyOnWriteArrayList<ILoggingEvent>();
+
+        final CountDownLatch appending = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+        volatile boolean blocking;
+
+        volatile Thread stoppedBy;
+
+        void block() {
+            blocking = true;
+        }
+
+        @Override
+        protected void append(ILoggingEvent e) {
+            appending.countDown();
+            if (blocking) {
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(e);
+        }
+
+        @Override
+        public void stop() {
+            stoppedBy = Thread.currentThread();
+            super.stop();
+            stopped.countDown();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSlingFixedWindowRollingPolicy {
+    private File dir;
+
+    private File active;
+
+    private BackgroundCompressor compressor;
+
+    @Before
+    public void setUp() throws IOException{
+        dir = File.createTempFile("fixedwindow", "");
+        dir.delete();
+        dir.mkdirs();
+        active = new File(dir, "error.log");
+        compressor = new BackgroundCompressor(1, Thread.NORM_PRIORITY);
+    }
+
+    @After
+    public void tearDown(){
+        compressor.shutdown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void compressAndShiftInBackground() throws Exception{
+        RotatedFileIndex index = new RotatedFileIndex(active);
+        SlingFixedWindowRollingPolicy policy = createPolicy(index);
+
+        for (String content : new String[]{"a", "b", "c"}) {
+            write(active, content);
+            policy.rollover();
+            assertFalse(active.exists());
+        }
+        awaitCompressor();
+
+        assertEquals("c", gunzip(new File(dir, "error.log1.gz")));
+        assertEquals("b", gunzip(new File(dir, "error.log2.gz")));
+        assertFalse(new File(dir, "error.log3.gz").exists());
+        assertEquals(0, dir.list(new PendingFilter()).length);
+
+        List<RotatedFileIndex.Segment> segments = index.getSegments();
+        assertEquals(2, segments.size());
+        assertEquals("error.log2.gz", segments.get(0).getFile().getName());
+        assertEquals("error.log1.gz", segments.get(1).getFile().getName());
+    }
+
+    @Test
+    public void pendingFilesRecoveredOnStart() throws Exception{
+        File pending = new File(dir, "error.log.1234" + SlingFixedWindowRollingPolicy.PENDING_SUFFIX);
+        File otherPending = new File(dir, "error.log.json.1234" + SlingFixedWindowRollingPolicy.PENDING_SUFFIX);
+        write(pending, "left over");
+        write(otherPending, "other writer");
+
+        createPolicy(null);
+        awaitCompressor();
+
+        assertFalse(pending.exists());
+        assertEquals("left over", gunzip(new File(dir, "error.log1.gz")));
+        assertTrue(otherPending.exists());
+    }
+
+    @Test
+    public void uncompressedIfCompressorShutDown() throws Exception{
+        RotatedFileIndex index = new RotatedFileIndex(active);
+        SlingFixedWindowRollingPolicy policy = createPolicy(index);
+        compressor.shutdown();
+
+        write(active, "a");
+        policy.rollover();
+
+        assertFalse(active.exists());
+        assertTrue(new File(dir, "error.log1").exists());
+        assertEquals(0, dir.list(new PendingFilter()).length);
+        assertEquals(1, index.getSegments().size());
+        assertFalse(index.getSegments().get(0).isCompressed());
+    }
+
+    private SlingFixedWindowRollingPolicy createPolicy(RotatedFileIndex index){
+        RollingFileAppender<Object> appender = new RollingFileAppender<Object>();
+        appender.setFile(active.getPath());
+
+        SlingFixedWindowRollingPolicy policy = new SlingFixedWindowRollingPolicy();
+        policy.setContext(new ContextBase());
+        policy.setParent(appender);
+        policy.setFileNamePattern(active.getPath() + "%i");
+        policy.setMinIndex(1);
+        policy.setMaxIndex(2);
+        policy.setCompress(true);
+        policy.setCompressor(compressor);
+        policy.setIndex(index);
+        policy.start();
+        return policy;
+    }
+
+    /**
+     * Waits till the tasks submitted so far are done. The compressor has a single thread
+     * so a task submitted now runs after them
+     */
+    private void awaitCompressor() throws InterruptedException{
+        final CountDownLatch done = new CountDownLatch(1);
+        compressor.newSerialExecutor().execute(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void write(File file, String content) throws IOException{
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String gunzip(File file) throws IOException{
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static class PendingFilter implements FilenameFilter {
+        public boolean accept(File dir, String name) {
+            return name.endsWith(SlingFixedWindowRollingPolicy.PENDING_SUFFIX);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.rolling.FixedWindowRollingPolicy;
+import ch.qos.logback.core.rolling.SizeBasedTriggeringPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSlingRollingFileAppender {
+    private final LoggerContext context = new LoggerContext();
+
+    private final Logger logger = context.getLogger("test");
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private File dir;
+
+    private File active;
+
+    @Before
+    public void createDir() throws IOException{
+        dir = File.createTempFile("rollingappender", "");
+        dir.delete();
+        dir.mkdirs();
+        active = new File(dir, "error.log");
+    }
+
+    @After
+    public void deleteDir(){
+        scheduler.shutdownNow();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void bufferedDataFlushedPeriodically() throws Exception{
+        LoggerSpecificEncoder encoder = createEncoder();
+        encoder.setFlushPolicy(0, false);
+        SlingRollingFileAppender<ILoggingEvent> appender = createAppender(encoder);
+        appender.setFlushInterval(100);
+        appender.setScheduler(scheduler);
+        appender.start();
+
+        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.ERROR, "buffered", null, null));
+        assertEquals(0, encoder.getMetrics().getFlushCount());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (encoder.getMetrics().getFlushCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, encoder.getMetrics().getFlushCount());
+        assertTrue(active.length() > 0);
+
+        //Nothing pending so later runs do not flush again
+        Thread.sleep(300);
+        assertEquals(1, encoder.getMetrics().getFlushCount());
+
+        appender.stop();
+    }
+
+    @Test
+    public void noFlushTaskWithImmediateFlush() throws Exception{
+        LoggerSpecificEncoder encoder = createEncoder();
+        SlingRollingFileAppender<ILoggingEvent> appender = createAppender(encoder);
+        appender.setScheduler(scheduler);
+        appender.start();
+
+        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "immediate", null, null));
+        assertEquals(1, encoder.getMetrics().getFlushCount());
+        assertTrue(active.length() > 0);
+
+        appender.stop();
+    }
+
+    private LoggerSpecificEncoder createEncoder(){
+        AppendablePatternLayout layout = new AppendablePatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg%n");
+        layout.start();
+        return new LoggerSpecificEncoder(layout);
+    }
+
+    private SlingRollingFileAppender<ILoggingEvent> createAppender(LoggerSpecificEncoder encoder){
+        SlingRollingFileAppender<ILoggingEvent> appender = new SlingRollingFileAppender<ILoggingEvent>();
+        appender.setContext(context);
+        appender.setFile(active.getPath());
+
+        SizeBasedTriggeringPolicy<ILoggingEvent> triggeringPolicy = new SizeBasedTriggeringPolicy<ILoggingEvent>();
+        triggeringPolicy.setContext(context);
+        triggeringPolicy.start();
+        appender.setTriggeringPolicy(triggeringPolicy);
+
+        FixedWindowRollingPolicy rollingPolicy = new FixedWindowRollingPolicy();
+        rollingPolicy.setContext(context);
+        rollingPolicy.setFileNamePattern(active.getPath() + "%i");
+        rollingPolicy.setParent(appender);
+        rollingPolicy.start();
+        appender.setRollingPolicy(rollingPolicy);
+
+        encoder.setContext(context);
+        appender.setEncoder(encoder);
+        return appender;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSlingSequenceRollingPolicy {
+    private File dir;
+
+    private File active;
+
+    private BackgroundCompressor compressor;
+
+    @Before
+    public void setUp() throws IOException{
+        dir = File.createTempFile("sequence", "");
+        dir.delete();
+        dir.mkdirs();
+        active = new File(dir, "error.log");
+        compressor = new BackgroundCompressor(1, Thread.NORM_PRIORITY);
+    }
+
+    @After
+    public void tearDown(){
+        compressor.shutdown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void continueSequence() throws Exception{
+        create("error.log.3");
+        create("error.log.7.gz");
+        //Files of another writer sharing the prefix
+        create("error.log.json.9");
+
+        SlingSequenceRollingPolicy policy = createPolicy(10, false, null);
+        create("error.log");
+        policy.rollover();
+
+        assertFalse(active.exists());
+        assertTrue(new File(dir, "error.log.8").exists());
+    }
+
+    @Test
+    public void skipExistingTarget() throws Exception{
+        SlingSequenceRollingPolicy policy = createPolicy(10, false, null);
+        //Created after the policy got started
+        create("error.log.1");
+        create("error.log.2.gz");
+
+        create("error.log");
+        policy.rollover();
+        assertTrue(new File(dir, "error.log.3").exists());
+
+        create("error.log");
+        policy.rollover();
+        assertTrue(new File(dir, "error.log.4").exists());
+    }
+
+    @Test
+    public void maxCountWithoutCompressor() throws Exception{
+        RotatedFileIndex index = new RotatedFileIndex(active);
+        SlingSequenceRollingPolicy policy = createPolicy(2, false, index);
+        for (int i = 0; i < 4; i++) {
+            create("error.log");
+            policy.rollover();
+        }
+
+        assertFalse(new File(dir, "error.log.1").exists());
+        assertFalse(new File(dir, "error.log.2").exists());
+        assertTrue(new File(dir, "error.log.3").exists());
+        assertTrue(new File(dir, "error.log.4").exists());
+        assertEquals(2, index.getSegments().size());
+    }
+
+    @Test
+    public void compressedSegments() throws Exception{
+        create("error.log.1.gz");
+        create("error.log.json.1.gz");
+
+        RotatedFileIndex index = new RotatedFileIndex(active);
+        SlingSequenceRollingPolicy policy = createPolicy(2, true, index);
+        for (int i = 0; i < 3; i++) {
+            create("error.log");
+            policy.rollover();
+        }
+        awaitCompressor();
+
+        assertFalse(new File(dir, "error.log.1.gz").exists());
+        assertFalse(new File(dir, "error.log.2.gz").exists());
+        assertTrue(new File(dir, "error.log.3.gz").exists());
+        assertTrue(new File(dir, "error.log.4.gz").exists());
+        assertFalse(new File(dir, "error.log.4").exists());
+        assertTrue(new File(dir, "error.log.json.1.gz").exists());
+
+        assertEquals(2, index.getSegments().size());
+        assertTrue(index.getSegments().get(0).isCompressed());
+    }
+
+    private SlingSequenceRollingPolicy createPolicy(int maxCount, boolean compress, RotatedFileIndex index){
+        RollingFileAppender<Object> appender = new RollingFileAppender<Object>();
+        appender.setFile(active.getPath());
+
+        SlingSequenceRollingPolicy policy = new SlingSequenceRollingPolicy();
+        policy.setContext(new ContextBase());
+        policy.setParent(appender);
+        policy.setMaxCount(maxCount);
+        policy.setCompress(compress);
+        policy.setIndex(index);
+        if (compress) {
+            policy.setCompressor(compressor);
+        }
+        policy.start();
+        return policy;
+    }
+
+    /**
+     * Waits till the tasks submitted so far are done. The compressor has a single thread
+     * so a task submitted now runs after them
+     */
+    private void awaitCompressor() throws InterruptedException{
+        final CountDownLatch done = new CountDownLatch(1);
+        compressor.newSerialExecutor().execute(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private File create(String name) throws IOException{
+        File f = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(new byte[10]);
+        out.close();
+        return f;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.rolling.FixedWindowRollingPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSlingSizeBasedTriggeringPolicy {
+    private File dir;
+
+    private File active;
+
+    @Before
+    public void createDir() throws IOException{
+        dir = File.createTempFile("sizebased", "");
+        dir.delete();
+        dir.mkdirs();
+        active = new File(dir, "error.log");
+    }
+
+    @After
+    public void deleteDir(){
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void sizeOfMappedFile() throws Exception{
+        LoggerContext context = new LoggerContext();
+        Logger logger = context.getLogger("test");
+
+        SlingRollingFileAppender<ILoggingEvent> appender = new SlingRollingFileAppender<ILoggingEvent>();
+        appender.setContext(context);
+        appender.setFile(active.getPath());
+        appender.setMemoryMapped(true);
+
+        SlingSizeBasedTriggeringPolicy<ILoggingEvent> policy =
+                new SlingSizeBasedTriggeringPolicy<ILoggingEvent>(appender, 100);
+        policy.setContext(context);
+        policy.start();
+        appender.setTriggeringPolicy(policy);
+
+        FixedWindowRollingPolicy rollingPolicy = new FixedWindowRollingPolicy();
+        rollingPolicy.setContext(context);
+        rollingPolicy.setFileNamePattern(active.getPath() + "%i");
+        rollingPolicy.setParent(appender);
+        rollingPolicy.start();
+        appender.setRollingPolicy(rollingPolicy);
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%msg%n");
+        encoder.start();
+        appender.setEncoder(encoder);
+        appender.start();
+
+        //59 chars and a new line
+        String msg = "012345678901234567890123456789012345678901234567890123456789".substring(1);
+        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.INFO, msg, null, null));
+        assertEquals(60, appender.getCurrentFileLength());
+        //The file length includes the padding of the mapped chunk
+        assertTrue(active.length() > 100);
+        assertFalse(policy.isTriggeringEvent(active, null));
+
+        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.INFO, msg, null, null));
+        assertTrue(policy.isTriggeringEvent(active, null));
+
+        //Rolls over before writing the event
+        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.INFO, msg, null, null));
+        assertEquals(120, new File(dir, "error.log1").length());
+        assertEquals(60, appender.getCurrentFileLength());
+
+        appender.stop();
+        assertEquals(60, active.length());
+    }
+}
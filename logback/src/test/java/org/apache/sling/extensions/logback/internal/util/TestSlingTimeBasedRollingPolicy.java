@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSlingTimeBasedRollingPolicy {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private File dir;
+
+    private File active;
+
+    private BackgroundCompressor compressor;
+
+    @Before
+    public void setUp() throws IOException{
+        dir = File.createTempFile("timebased", "");
+        dir.delete();
+        dir.mkdirs();
+        active = new File(dir, "error.log");
+        compressor = new BackgroundCompressor(1, Thread.NORM_PRIORITY);
+    }
+
+    @After
+    public void tearDown(){
+        compressor.shutdown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void maxHistoryOfCompressedArchives() throws Exception{
+        File a1 = create("error.log.2013-01-01.gz", 1000);
+        File a2 = create("error.log.2013-01-02.gz", 2000);
+        File a3 = create("error.log.2013-01-03.gz", 3000);
+        //Files of other writers sharing the prefix
+        File json = create("error.log.json.gz", 500);
+        File audit = create("error.log-audit.log.gz", 500);
+        create("error.log", System.currentTimeMillis());
+
+        RollingFileAppender<Object> appender = new RollingFileAppender<Object>();
+        appender.setFile(active.getPath());
+
+        SlingTimeBasedRollingPolicy<Object> policy = new SlingTimeBasedRollingPolicy<Object>();
+        policy.setContext(new ContextBase());
+        policy.setParent(appender);
+        policy.setFileNamePattern(active.getPath() + ".%d{yyyy-MM-dd}");
+        policy.setMaxHistory(2);
+        policy.setCompress(true);
+        policy.setCompressor(compressor);
+        policy.start();
+
+        String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        policy.getTimeBasedFileNamingAndTriggeringPolicy().setCurrentTime(System.currentTimeMillis() + DAY);
+        assertTrue(policy.isTriggeringEvent(active, null));
+        policy.rollover();
+        awaitCompressor();
+
+        assertTrue(new File(dir, "error.log." + today + ".gz").exists());
+        assertFalse(new File(dir, "error.log." + today).exists());
+        assertTrue(a3.exists());
+        assertFalse(a2.exists());
+        assertFalse(a1.exists());
+        assertTrue(json.exists());
+        assertTrue(audit.exists());
+    }
+
+    private void awaitCompressor() throws InterruptedException{
+        final CountDownLatch done = new CountDownLatch(1);
+        compressor.newSerialExecutor().execute(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private File create(String name, long lastModified) throws IOException{
+        File f = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(new byte[10]);
+        out.close();
+        f.setLastModified(lastModified);
+        return f;
+    }
+}
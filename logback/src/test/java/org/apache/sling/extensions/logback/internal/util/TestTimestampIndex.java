@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sling.extensions.logback.internal.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestTimestampIndex {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String DATE_PATTERN = "dd.MM.yyyy HH:mm:ss.SSS";
+
+    private final SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN);
+
+    private final TimestampIndex index = new TimestampIndex(DATE_PATTERN, UTF8, null);
+
+    private File log;
+
+    private long base;
+
+    @Before
+    public void setUp() throws Exception{
+        log = File.createTempFile("tsindex", ".log");
+        base = format.parse("01.01.2026 10:00:00.000").getTime();
+
+        //One event per 100 ms. Every 10th event has a stack trace
+        TimestampIndex.Recorder recorder = index.open(log, 0, false);
+        OutputStream out = new FileOutputStream(log);
+        for (int i = 0; i < 10000; i++) {
+            long timestamp = base + i * 100L;
+            String text = format.format(new Date(timestamp)) + " *INFO* event " + i + "\n";
+            if (i % 10 == 0) {
+                text += "\tat trace " + i + "\n";
+            }
+            byte[] bytes = text.getBytes(UTF8);
+            recorder.beforeEvent(timestamp);
+            out.write(bytes);
+            recorder.written(bytes.length);
+        }
+        out.close();
+        recorder.close();
+    }
+
+    @After
+    public void tearDown(){
+        TimestampIndex.delete(log);
+        log.delete();
+    }
+
+    @Test
+    public void datePattern() throws Exception{
+        assertEquals(DATE_PATTERN, TimestampIndex.getDatePattern("%d{" + DATE_PATTERN + "} *%level* %msg%n"));
+        assertEquals("yyyy-MM-dd HH:mm:ss,SSS", TimestampIndex.getDatePattern("%date %msg%n"));
+        assertEquals("HH:mm:ss,SSS", TimestampIndex.getDatePattern("%d{\"HH:mm:ss,SSS\", UTC} %msg%n"));
+        assertNull(TimestampIndex.getDatePattern("*%level* %d %msg%n"));
+    }
+
+    @Test
+    public void findRange() throws Exception{
+        TimestampIndex.Entries entries = index.read(log, log.length(), false);
+        assertNotNull(entries);
+
+        long start = entries.findStart(base + 500000);
+        long end = entries.findEnd(base + 501000);
+        assertTrue(start > 0);
+        assertTrue(end > start && end < log.length());
+        assertEquals(0, entries.findStart(base));
+        assertEquals(-1, entries.findEnd(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void copyTimeRange() throws Exception{
+        StringWriter sw = new StringWriter();
+        FileTailer.copyTimeRange(log, log.length(), index, false, index.newDateFormat(),
+                base + 500000, base + 501000, UTF8, sw);
+
+        //Events 5000 to 5010 along with the traces of 5000 and 5010
+        String[] lines = sw.toString().split("\n");
+        assertEquals(13, lines.length);
+        assertTrue(lines[0].endsWith("event 5000"));
+        assertEquals("\tat trace 5000", lines[1]);
+        assertEquals("\tat trace 5010", lines[12]);
+    }
+
+    @Test
+    public void rebuild() throws Exception{
+        int size = index.read(log, log.length(), false).size();
+        TimestampIndex.delete(log);
+        assertNull(index.read(log, log.length(), false));
+
+        assertTrue(index.rebuild(log));
+        assertEquals(size, index.read(log, log.length(), false).size());
+    }
+
+    @Test
+    public void staleIndex() throws IOException{
+        File other = File.createTempFile("tsindex", ".log");
+        try {
+            TimestampIndex.move(log, other);
+            assertFalse(TimestampIndex.getIndexFile(log).exists());
+            //Offsets beyond the end of the data
+            assertNull(index.read(other, other.length(), false));
+        } finally {
+            TimestampIndex.delete(other);
+            other.delete();
+        }
+    }
+}